@@ -1,5 +1,5 @@
 -- ERP 系統資料庫架構初始化腳本
--- 版本：1.1.4
+-- 版本：1.1.5
 -- 說明：在空的容器資料庫中直接建立最新版本的資料庫架構
 
 -- 使用 erp_db 數據庫
@@ -34,11 +34,12 @@ CREATE TABLE IF NOT EXISTS items
     `id`         BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '商品唯一識別碼，自增',
     `name`       VARCHAR(100) NULL COMMENT '商品名稱',
     `unit`       VARCHAR(20) NULL COMMENT '單位（例如個、箱）',
-    `created_at` DATETIME(3) NULL COMMENT '建立時間（毫秒級）',
-    `updated_at` DATETIME(3) NULL COMMENT '更新時間（毫秒級）'
+    `created_at` DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）',
+    `updated_at` DATETIME(3) NULL COMMENT '更新時間（毫秒級）',
+    INDEX        idx_items_created_at (`created_at`)
 ) COMMENT = '商品基本資料表';
 
--- 創建 stocks 表 - 商品庫存狀態表（已包含 1.1.3 版本的修改）
+-- 創建 stocks 表 - 商品庫存狀態表（已包含 1.1.3、1.1.5 版本的修改）
 CREATE TABLE IF NOT EXISTS stocks
 (
     `id`                    BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '庫存記錄唯一識別碼，自增',
@@ -46,30 +47,76 @@ CREATE TABLE IF NOT EXISTS stocks
     `warehouse_id`          BIGINT NULL COMMENT '倉庫ID',
     `storage_location_id`   BIGINT NULL COMMENT '儲位ID',
     `quantity`              DECIMAL(18,6) NULL COMMENT '現有庫存量',
-    `created_at`            DATETIME(3) NULL COMMENT '建立時間（毫秒級）',
+    `created_at`            DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）',
     `updated_at`            DATETIME(3) NULL COMMENT '更新時間（毫秒級）',
-    INDEX                   idx_stocks_item_id (`item_id`),
+    INDEX                   idx_stocks_item_id (`item_id`, `created_at`),
     INDEX                   idx_stocks_warehouse_id (`warehouse_id`),
-    INDEX                   idx_stocks_storage_location_id (`storage_location_id`)
+    INDEX                   idx_stocks_storage_location_id (`storage_location_id`, `created_at`),
+    UNIQUE INDEX            uk_stocks_item_storage_location (`item_id`, `storage_location_id`)
 ) COMMENT = '商品庫存狀態表';
 
 -- 創建 stock_movements 表 - 商品庫存異動歷史表（已包含 1.1.3 版本的修改，並移除了 1.1.4 版本刪除的 slip_id）
 CREATE TABLE IF NOT EXISTS stock_movements
 (
-    `id`                    BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '庫存異動記錄唯一識別碼，自增',
+    `id`                    BIGINT NOT NULL COMMENT '庫存異動記錄唯一識別碼，由 id_generators 分段分配',
     `item_id`               BIGINT NULL COMMENT '商品ID',
     `warehouse_id`          BIGINT NULL COMMENT '倉庫ID',
     `storage_location_id`   BIGINT NULL COMMENT '儲位ID',
     `type`                  INT NULL COMMENT '異動類型（數字代碼，如入庫=1，出庫=2）',
     `quantity_change`       DECIMAL(18,6) NULL COMMENT '異動數量',
     `note`                  TEXT NULL COMMENT '異動備註',
-    `created_at`            DATETIME(3) NULL COMMENT '異動發生時間（毫秒級）',
+    `source_slip_id`        BIGINT NULL COMMENT '來源單據ID（單據完成觸發時）',
+    `source_slip_detail_id` BIGINT NULL COMMENT '來源單據明細ID（單據完成觸發時）',
+    `created_at`            DATETIME(3) NOT NULL COMMENT '異動發生時間（毫秒級），亦為分區鍵',
     `updated_at`            DATETIME(3) NULL COMMENT '更新時間（毫秒級）',
+    PRIMARY KEY (`id`, `created_at`),
     INDEX                   idx_stock_movements_item_created (`item_id`, `created_at`),
     INDEX                   idx_stock_movements_created_at (`created_at`),
     INDEX                   idx_stock_movements_warehouse_id (`warehouse_id`),
-    INDEX                   idx_stock_movements_storage_location_id (`storage_location_id`)
-) COMMENT = '商品庫存異動歷史表';
+    INDEX                   idx_stock_movements_storage_location_id (`storage_location_id`, `created_at`),
+    INDEX                   idx_stock_movements_source_slip (`source_slip_id`, `source_slip_detail_id`)
+) COMMENT = '商品庫存異動歷史表'
+-- 依 created_at 按月 RANGE 分區，月份分區由應用程式啟動時自 pmax 切出
+PARTITION BY RANGE COLUMNS(`created_at`) (
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- 創建 stock_movements_archive 表 - 商品庫存異動歷史冷資料表（超過熱資料保留月數的分區搬移至此）
+CREATE TABLE IF NOT EXISTS stock_movements_archive
+(
+    `id`                    BIGINT NOT NULL COMMENT '庫存異動記錄唯一識別碼（同 stock_movements.id）',
+    `item_id`               BIGINT NULL COMMENT '商品ID',
+    `warehouse_id`          BIGINT NULL COMMENT '倉庫ID',
+    `storage_location_id`   BIGINT NULL COMMENT '儲位ID',
+    `type`                  INT NULL COMMENT '異動類型（數字代碼，如入庫=1，出庫=2）',
+    `quantity_change`       DECIMAL(18,6) NULL COMMENT '異動數量',
+    `note`                  TEXT NULL COMMENT '異動備註',
+    `source_slip_id`        BIGINT NULL COMMENT '來源單據ID（單據完成觸發時）',
+    `source_slip_detail_id` BIGINT NULL COMMENT '來源單據明細ID（單據完成觸發時）',
+    `created_at`            DATETIME(3) NOT NULL COMMENT '異動發生時間（毫秒級）',
+    `updated_at`            DATETIME(3) NULL COMMENT '更新時間（毫秒級）',
+    PRIMARY KEY (`id`, `created_at`),
+    INDEX                   idx_stock_movements_archive_item_created (`item_id`, `created_at`),
+    INDEX                   idx_stock_movements_archive_created_at (`created_at`),
+    INDEX                   idx_stock_movements_archive_storage_location_id (`storage_location_id`, `created_at`),
+    INDEX                   idx_stock_movements_archive_source_slip (`source_slip_id`, `source_slip_detail_id`)
+) ROW_FORMAT = COMPRESSED KEY_BLOCK_SIZE = 8 COMMENT = '商品庫存異動歷史冷資料表';
+
+-- 創建 stock_movement_daily_rollups 表 - 庫存異動每日彙總表（已結束日期的 (日期, 商品, 倉庫, 儲位, 類型) 合計）
+CREATE TABLE IF NOT EXISTS stock_movement_daily_rollups
+(
+    `id`                  BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '彙總記錄唯一識別碼，自增',
+    `movement_date`       DATE NOT NULL COMMENT '異動日期',
+    `item_id`             BIGINT NULL COMMENT '商品ID',
+    `warehouse_id`        BIGINT NULL COMMENT '倉庫ID',
+    `storage_location_id` BIGINT NULL COMMENT '儲位ID',
+    `type`                INT NULL COMMENT '異動類型（數字代碼，如入庫=1，出庫=2）',
+    `quantity_change`     DECIMAL(24,6) NOT NULL COMMENT '當日異動數量合計',
+    `movement_count`      BIGINT NOT NULL COMMENT '當日異動筆數',
+    `created_at`          DATETIME(3) NULL COMMENT '彙總時間（毫秒級）',
+    INDEX                 idx_stock_movement_daily_rollups_movement_date (`movement_date`),
+    UNIQUE INDEX          uk_stock_movement_daily_rollups_key (`item_id`, `movement_date`, `warehouse_id`, `storage_location_id`, `type`)
+) COMMENT = '庫存異動每日彙總表';
 
 -- ========================================
 -- 第三部分：人員、倉庫與單據相關表 (版本 1.1.3)
@@ -129,7 +176,7 @@ CREATE TABLE IF NOT EXISTS slips
     `slips_type` TINYINT NULL COMMENT '單據類型：1=入庫單, 2=出庫單, 3=轉倉單, 4=報廢單',
     `created_by` BIGINT NULL COMMENT '建立人（users.id）',
     `status`     TINYINT NULL COMMENT '狀態：0=草稿, 1=完成, 2=取消',
-    `created_at` DATETIME(3) NULL COMMENT '建立時間（毫秒級）',
+    `created_at` DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）',
     `updated_at` DATETIME(3) NULL COMMENT '更新時間（毫秒級）',
     INDEX        idx_slips_slips_type (`slips_type`),
     INDEX        idx_slips_created_by (`created_by`),
@@ -144,7 +191,7 @@ CREATE TABLE IF NOT EXISTS slips
 -- 創建 slip_movements 表 - 單據與庫存異動關聯表
 CREATE TABLE IF NOT EXISTS slip_movements
 (
-    `id`                 BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '關聯記錄唯一識別碼，自增',
+    `id`                 BIGINT PRIMARY KEY COMMENT '關聯記錄唯一識別碼，由 id_generators 分段分配',
     `slip_id`            BIGINT NOT NULL COMMENT '單據ID（關聯到 slips.id）',
     `stock_movement_id`  BIGINT NOT NULL COMMENT '庫存異動ID（關聯到 stock_movements.id）',
     `created_at`         DATETIME(3) NULL COMMENT '建立時間（毫秒級）',
@@ -157,7 +204,7 @@ CREATE TABLE IF NOT EXISTS slip_movements
 -- 創建 slip_details 表 - 單據明細表
 CREATE TABLE IF NOT EXISTS slip_details
 (
-    `id`                        BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '明細唯一識別碼，自增',
+    `id`                        BIGINT PRIMARY KEY COMMENT '明細唯一識別碼，由 id_generators 分段分配',
     `line_number`               INTEGER NOT NULL COMMENT '項次（在單據中的順序）',
     `slip_id`                   BIGINT NOT NULL COMMENT '單據ID（關聯到 slips.id）',
     `item_id`                   BIGINT NOT NULL COMMENT '商品ID（關聯到 items.id）',
@@ -166,12 +213,16 @@ CREATE TABLE IF NOT EXISTS slip_details
     `to_warehouse_id`           BIGINT NULL COMMENT '目標倉庫ID（關聯到 warehouses.id）',
     `to_storage_location_id`    BIGINT NULL COMMENT '目標儲位ID（關聯到 storage_locations.id）',
     `quantity_change`           DECIMAL(18,6) NOT NULL COMMENT '異動數量',
-    `status`                    TINYINT NULL COMMENT '狀態：0=待處理, 1=已處理, 2=取消',
+    `status`                    TINYINT NULL COMMENT '狀態：0=待處理, 1=已處理, 2=取消, 3=失敗（等待重試）, 4=無法處理',
+    `attempts`                  INT NOT NULL DEFAULT 0 COMMENT '處理失敗次數',
+    `next_attempt_at`           DATETIME(3) NULL COMMENT '下次重試時間',
+    `last_error`                VARCHAR(500) NULL COMMENT '最後一次處理失敗的錯誤訊息',
     `note`                      TEXT NULL COMMENT '異動備註',
     `created_at`                DATETIME(3) NULL COMMENT '建立時間（毫秒級）',
     `updated_at`                DATETIME(3) NULL COMMENT '更新時間（毫秒級）',
     INDEX                       idx_slip_details_slip_id (`slip_id`),
     INDEX                       idx_slip_details_slip_status (`slip_id`, `status`),
+    INDEX                       idx_slip_details_status_next_attempt (`status`, `next_attempt_at`),
     INDEX                       idx_slip_details_item_id (`item_id`),
     INDEX                       idx_slip_details_from_warehouse_id (`from_warehouse_id`),
     INDEX                       idx_slip_details_from_storage_location_id (`from_storage_location_id`),
@@ -179,16 +230,42 @@ CREATE TABLE IF NOT EXISTS slip_details
     INDEX                       idx_slip_details_to_storage_location_id (`to_storage_location_id`)
 ) COMMENT = '單據明細表';
 
+-- 創建 outbox_events 表 - 發件匣事件表（與業務資料同一事務寫入，由應用程式發佈至 Redis Stream）
+CREATE TABLE IF NOT EXISTS outbox_events
+(
+    `id`             BIGINT PRIMARY KEY COMMENT '事件唯一識別碼，由 id_generators 分段分配',
+    `aggregate_type` VARCHAR(50) NOT NULL COMMENT '聚合類型（slip、stock）',
+    `aggregate_id`   BIGINT NOT NULL COMMENT '聚合ID（單據ID或商品ID）',
+    `event_type`     VARCHAR(50) NOT NULL COMMENT '事件類型',
+    `payload`        TEXT NOT NULL COMMENT '事件內容（JSON）',
+    `created_at`     DATETIME(3) NULL COMMENT '建立時間（毫秒級）',
+    `published_at`   DATETIME(3) NULL COMMENT '發佈至 Redis Stream 的時間，NULL 表示尚未發佈',
+    INDEX            idx_outbox_events_published_at (`published_at`)
+) COMMENT = '發件匣事件表';
+
 -- ========================================
 -- 第五部分：初始化配置數據
 -- ========================================
 
+-- 創建 id_generators 表 - ID 分段分配表（stock_movements、slip_details、slip_movements、outbox_events 由應用程式批次取號）
+CREATE TABLE IF NOT EXISTS id_generators
+(
+    `sequence_name` VARCHAR(255) NOT NULL PRIMARY KEY COMMENT '序列名稱（資料表名稱）',
+    `next_val`      BIGINT NULL COMMENT '已分配區段的上限值'
+) COMMENT = 'ID 分段分配表';
+
+INSERT INTO id_generators (`sequence_name`, `next_val`)
+VALUES ('stock_movements', 50),
+       ('slip_details', 50),
+       ('slip_movements', 50),
+       ('outbox_events', 50);
+
 -- 插入資料庫版本記錄
 INSERT INTO key_values (`key`, `value`, `description`)
-VALUES ('DBversion', '1.1.4', '資料庫架構版本');
+VALUES ('DBversion', '1.1.5', '資料庫架構版本');
 
 -- 提交事務
 COMMIT;
 
 -- 顯示初始化完成訊息
-SELECT '資料庫架構成功初始化至版本 1.1.4' AS 結果;
+SELECT '資料庫架構成功初始化至版本 1.1.5' AS 結果;
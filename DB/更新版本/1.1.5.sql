@@ -0,0 +1,257 @@
+-- 使用 erp_db 數據庫
+USE erp_db;
+
+-- 1. 檢查並刪除已存在的存儲過程
+DROP PROCEDURE IF EXISTS updateDatabase;
+
+-- 2. 定義存儲過程
+DELIMITER $$
+
+CREATE PROCEDURE updateDatabase()
+    BEGIN
+        DECLARE canUpdate INT DEFAULT 0;
+        DECLARE EXIT HANDLER FOR SQLEXCEPTION
+            BEGIN
+                ROLLBACK;
+                RESIGNAL;
+            END;
+
+        -- 如果 DBversion = 1.1.4，則繼續執行
+        IF
+        (SELECT `value` FROM key_values WHERE `key` = 'DBversion') = '1.1.4' THEN
+            START TRANSACTION;
+
+            -- 合併 stocks 表中同一商品、同一儲位的重複記錄（保留最小ID，數量加總）
+            UPDATE stocks s
+            JOIN (
+                SELECT MIN(`id`) AS keep_id, SUM(`quantity`) AS total_quantity
+                FROM stocks
+                WHERE `item_id` IS NOT NULL AND `storage_location_id` IS NOT NULL
+                GROUP BY `item_id`, `storage_location_id`
+                HAVING COUNT(*) > 1
+            ) d ON s.`id` = d.keep_id
+            SET s.`quantity` = d.total_quantity,
+                s.`updated_at` = NOW(3);
+
+            DELETE s
+            FROM stocks s
+            JOIN stocks k
+              ON k.`item_id` = s.`item_id`
+             AND k.`storage_location_id` = s.`storage_location_id`
+             AND k.`id` < s.`id`;
+
+            -- 添加商品與儲位的複合唯一鍵，支援入庫 upsert
+            ALTER TABLE stocks
+            ADD UNIQUE INDEX uk_stocks_item_storage_location (`item_id`, `storage_location_id`);
+
+            -- 建立 ID 分段分配表，stock_movements、slip_details、slip_movements 改由應用程式批次取號（每次 50 個）
+            CREATE TABLE IF NOT EXISTS id_generators
+            (
+                `sequence_name` VARCHAR(255) NOT NULL PRIMARY KEY COMMENT '序列名稱（資料表名稱）',
+                `next_val`      BIGINT NULL COMMENT '已分配區段的上限值'
+            ) COMMENT = 'ID 分段分配表';
+
+            -- 以現有最大 ID 加上一個區段作為起始值，確保新分配的 ID 不與既有資料重複
+            INSERT INTO id_generators (`sequence_name`, `next_val`)
+            SELECT 'stock_movements', COALESCE(MAX(`id`), 0) + 50 FROM stock_movements;
+            INSERT INTO id_generators (`sequence_name`, `next_val`)
+            SELECT 'slip_details', COALESCE(MAX(`id`), 0) + 50 FROM slip_details;
+            INSERT INTO id_generators (`sequence_name`, `next_val`)
+            SELECT 'slip_movements', COALESCE(MAX(`id`), 0) + 50 FROM slip_movements;
+
+            -- 移除自增屬性，避免資料庫自動產生的 ID 與應用程式分配的區段衝突
+            ALTER TABLE stock_movements
+            MODIFY COLUMN `id` BIGINT NOT NULL COMMENT '庫存異動記錄唯一識別碼，由 id_generators 分段分配';
+            ALTER TABLE slip_details
+            MODIFY COLUMN `id` BIGINT NOT NULL COMMENT '明細唯一識別碼，由 id_generators 分段分配';
+            ALTER TABLE slip_movements
+            MODIFY COLUMN `id` BIGINT NOT NULL COMMENT '關聯記錄唯一識別碼，由 id_generators 分段分配';
+
+            -- 單據明細重試欄位：失敗次數、下次重試時間、最後錯誤訊息，超過重試上限者轉為無法處理（4）
+            ALTER TABLE slip_details
+            MODIFY COLUMN `status` TINYINT NULL COMMENT '狀態：0=待處理, 1=已處理, 2=取消, 3=失敗（等待重試）, 4=無法處理',
+            ADD COLUMN `attempts` INT NOT NULL DEFAULT 0 COMMENT '處理失敗次數' AFTER `status`,
+            ADD COLUMN `next_attempt_at` DATETIME(3) NULL COMMENT '下次重試時間' AFTER `attempts`,
+            ADD COLUMN `last_error` VARCHAR(500) NULL COMMENT '最後一次處理失敗的錯誤訊息' AFTER `next_attempt_at`,
+            ADD INDEX idx_slip_details_status_next_attempt (`status`, `next_attempt_at`);
+
+            -- 既有失敗明細立即列入重試
+            UPDATE slip_details
+            SET `next_attempt_at` = NOW(3)
+            WHERE `status` = 3;
+
+            -- 建立發件匣事件表，與業務資料同一事務寫入，由應用程式發佈至 Redis Stream
+            CREATE TABLE IF NOT EXISTS outbox_events
+            (
+                `id`             BIGINT PRIMARY KEY COMMENT '事件唯一識別碼，由 id_generators 分段分配',
+                `aggregate_type` VARCHAR(50) NOT NULL COMMENT '聚合類型（slip、stock）',
+                `aggregate_id`   BIGINT NOT NULL COMMENT '聚合ID（單據ID或商品ID）',
+                `event_type`     VARCHAR(50) NOT NULL COMMENT '事件類型',
+                `payload`        TEXT NOT NULL COMMENT '事件內容（JSON）',
+                `created_at`     DATETIME(3) NULL COMMENT '建立時間（毫秒級）',
+                `published_at`   DATETIME(3) NULL COMMENT '發佈至 Redis Stream 的時間，NULL 表示尚未發佈',
+                INDEX            idx_outbox_events_published_at (`published_at`)
+            ) COMMENT = '發件匣事件表';
+
+            INSERT INTO id_generators (`sequence_name`, `next_val`)
+            VALUES ('outbox_events', 50);
+
+            -- 庫存異動記錄的來源單據欄位，單據→異動查詢改走索引
+            ALTER TABLE stock_movements
+            ADD COLUMN `source_slip_id` BIGINT NULL COMMENT '來源單據ID（單據完成觸發時）' AFTER `note`,
+            ADD COLUMN `source_slip_detail_id` BIGINT NULL COMMENT '來源單據明細ID（單據完成觸發時）' AFTER `source_slip_id`,
+            ADD INDEX idx_stock_movements_source_slip (`source_slip_id`, `source_slip_detail_id`);
+
+            -- 既有異動記錄自 slip_movements 回填來源單據（同一異動關聯多張單據時取最小單據ID）
+            UPDATE stock_movements sm
+            JOIN (
+                SELECT `stock_movement_id`, MIN(`slip_id`) AS slip_id
+                FROM slip_movements
+                GROUP BY `stock_movement_id`
+            ) l ON l.`stock_movement_id` = sm.`id`
+            SET sm.`source_slip_id` = l.slip_id
+            WHERE sm.`source_slip_id` IS NULL;
+
+            -- 來源明細僅於唯一對應時回填：同單據、同商品、同數量，且異動儲位為明細的來源或目標儲位；
+            -- 無法唯一對應者（如凍結倉、報廢倉的入庫端，或同單據重複的明細）維持 NULL
+            UPDATE stock_movements sm
+            JOIN (
+                SELECT m.`id` AS movement_id, MIN(sd.`id`) AS detail_id
+                FROM stock_movements m
+                JOIN slip_details sd
+                  ON sd.`slip_id` = m.`source_slip_id`
+                 AND sd.`item_id` = m.`item_id`
+                 AND sd.`quantity_change` = ABS(m.`quantity_change`)
+                 AND (sd.`from_storage_location_id` = m.`storage_location_id` OR sd.`to_storage_location_id` = m.`storage_location_id`)
+                WHERE m.`source_slip_id` IS NOT NULL AND m.`source_slip_detail_id` IS NULL
+                GROUP BY m.`id`
+                HAVING COUNT(*) = 1
+            ) d ON d.movement_id = sm.`id`
+            SET sm.`source_slip_detail_id` = d.detail_id;
+
+            -- 列表查詢改為 (created_at, id) 鍵集分頁，篩選欄位後接 created_at 以免排序
+            ALTER TABLE items
+            ADD INDEX idx_items_created_at (`created_at`);
+
+            ALTER TABLE stocks
+            DROP INDEX idx_stocks_item_id,
+            ADD INDEX idx_stocks_item_id (`item_id`, `created_at`),
+            DROP INDEX idx_stocks_storage_location_id,
+            ADD INDEX idx_stocks_storage_location_id (`storage_location_id`, `created_at`);
+
+            ALTER TABLE stock_movements
+            DROP INDEX idx_stock_movements_storage_location_id,
+            ADD INDEX idx_stock_movements_storage_location_id (`storage_location_id`, `created_at`);
+
+            -- 鍵集分頁條件 (created_at, id) > 游標不會選到 created_at 為 NULL 的列，回填後改為 NOT NULL
+            UPDATE items
+            SET `created_at` = COALESCE(`updated_at`, NOW(3))
+            WHERE `created_at` IS NULL;
+            UPDATE stocks
+            SET `created_at` = COALESCE(`updated_at`, NOW(3))
+            WHERE `created_at` IS NULL;
+            UPDATE slips
+            SET `created_at` = COALESCE(`updated_at`, NOW(3))
+            WHERE `created_at` IS NULL;
+
+            ALTER TABLE items
+            MODIFY COLUMN `created_at` DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）';
+            ALTER TABLE stocks
+            MODIFY COLUMN `created_at` DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）';
+            ALTER TABLE slips
+            MODIFY COLUMN `created_at` DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）';
+
+            -- 庫存異動記錄依 created_at 按月 RANGE 分區，分區鍵必須包含於主鍵，主鍵改為 (id, created_at)
+            UPDATE stock_movements
+            SET `created_at` = COALESCE(`updated_at`, NOW(3))
+            WHERE `created_at` IS NULL;
+
+            ALTER TABLE stock_movements
+            MODIFY COLUMN `created_at` DATETIME(3) NOT NULL COMMENT '異動發生時間（毫秒級），亦為分區鍵',
+            DROP PRIMARY KEY,
+            ADD PRIMARY KEY (`id`, `created_at`);
+
+            -- 既有資料自最早異動的月份起至當月逐月建立分區（名稱 pYYYYMM，與應用程式一致），
+            -- 舊資料同樣可依月份裁剪，冷資料搬移也以月為單位；之後的月份分區由應用程式自 pmax 切出
+            SET SESSION group_concat_max_len = 1048576;
+            SELECT GROUP_CONCAT(
+                       CONCAT('PARTITION p', DATE_FORMAT(month_start, '%Y%m'),
+                              ' VALUES LESS THAN (''', DATE_FORMAT(month_start + INTERVAL 1 MONTH, '%Y-%m-%d 00:00:00'), ''')')
+                       ORDER BY month_start SEPARATOR ', ')
+            INTO @month_partitions
+            FROM (
+                WITH RECURSIVE months (month_start) AS (
+                    SELECT DATE(DATE_FORMAT(COALESCE(MIN(`created_at`), NOW()), '%Y-%m-01')) FROM stock_movements
+                    UNION ALL
+                    SELECT month_start + INTERVAL 1 MONTH FROM months
+                    WHERE month_start < DATE(DATE_FORMAT(NOW(), '%Y-%m-01'))
+                )
+                SELECT month_start FROM months
+            ) AS partition_months;
+
+            SET @partition_sql = CONCAT(
+                'ALTER TABLE stock_movements PARTITION BY RANGE COLUMNS(`created_at`) (',
+                @month_partitions, ', ',
+                'PARTITION pmax VALUES LESS THAN (MAXVALUE))');
+            PREPARE partition_stmt FROM @partition_sql;
+            EXECUTE partition_stmt;
+            DEALLOCATE PREPARE partition_stmt;
+
+            -- 庫存異動冷資料表：超過熱資料保留月數的分區搬移至此，InnoDB 壓縮列格式
+            CREATE TABLE IF NOT EXISTS stock_movements_archive
+            (
+                `id`                    BIGINT NOT NULL COMMENT '庫存異動記錄唯一識別碼（同 stock_movements.id）',
+                `item_id`               BIGINT NULL COMMENT '商品ID',
+                `warehouse_id`          BIGINT NULL COMMENT '倉庫ID',
+                `storage_location_id`   BIGINT NULL COMMENT '儲位ID',
+                `type`                  INT NULL COMMENT '異動類型（數字代碼，如入庫=1，出庫=2）',
+                `quantity_change`       DECIMAL(18,6) NULL COMMENT '異動數量',
+                `note`                  TEXT NULL COMMENT '異動備註',
+                `source_slip_id`        BIGINT NULL COMMENT '來源單據ID（單據完成觸發時）',
+                `source_slip_detail_id` BIGINT NULL COMMENT '來源單據明細ID（單據完成觸發時）',
+                `created_at`            DATETIME(3) NOT NULL COMMENT '異動發生時間（毫秒級）',
+                `updated_at`            DATETIME(3) NULL COMMENT '更新時間（毫秒級）',
+                PRIMARY KEY (`id`, `created_at`),
+                INDEX                   idx_stock_movements_archive_item_created (`item_id`, `created_at`),
+                INDEX                   idx_stock_movements_archive_created_at (`created_at`),
+                INDEX                   idx_stock_movements_archive_storage_location_id (`storage_location_id`, `created_at`),
+                INDEX                   idx_stock_movements_archive_source_slip (`source_slip_id`, `source_slip_detail_id`)
+            ) ROW_FORMAT = COMPRESSED KEY_BLOCK_SIZE = 8 COMMENT = '商品庫存異動歷史冷資料表';
+
+            -- 庫存異動每日彙總：已結束日期的 (日期, 商品, 倉庫, 儲位, 類型) 合計，由應用程式自最早的異動日期起補齊
+            CREATE TABLE IF NOT EXISTS stock_movement_daily_rollups
+            (
+                `id`                  BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '彙總記錄唯一識別碼，自增',
+                `movement_date`       DATE NOT NULL COMMENT '異動日期',
+                `item_id`             BIGINT NULL COMMENT '商品ID',
+                `warehouse_id`        BIGINT NULL COMMENT '倉庫ID',
+                `storage_location_id` BIGINT NULL COMMENT '儲位ID',
+                `type`                INT NULL COMMENT '異動類型（數字代碼，如入庫=1，出庫=2）',
+                `quantity_change`     DECIMAL(24,6) NOT NULL COMMENT '當日異動數量合計',
+                `movement_count`      BIGINT NOT NULL COMMENT '當日異動筆數',
+                `created_at`          DATETIME(3) NULL COMMENT '彙總時間（毫秒級）',
+                INDEX                 idx_stock_movement_daily_rollups_movement_date (`movement_date`),
+                UNIQUE INDEX          uk_stock_movement_daily_rollups_key (`item_id`, `movement_date`, `warehouse_id`, `storage_location_id`, `type`)
+            ) COMMENT = '庫存異動每日彙總表';
+
+            -- 更新 DBversion 記錄
+            UPDATE key_values
+            SET `value` = '1.1.5'
+            WHERE `key` = 'DBversion';
+
+            COMMIT;
+
+            SELECT '資料庫架構成功更新至版本 1.1.5' AS 結果;
+            ELSE
+            SELECT '資料庫架構版本不符合要求，跳過更新' AS 結果;
+        END IF;
+
+END$$
+
+DELIMITER ;
+
+-- 3. 執行存儲過程
+CALL updateDatabase();
+
+-- 4. 刪除存儲過程
+DROP PROCEDURE IF EXISTS updateDatabase;
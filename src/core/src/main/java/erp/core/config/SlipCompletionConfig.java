@@ -0,0 +1,58 @@
+package erp.core.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 單據完成流程設定
+ * 以固定大小、有界佇列的執行緒池處理已完成單據的明細，佇列滿時拒絕新任務，由呼叫端回報忙碌；
+ * 單據內無衝突的處理道另以處理道執行緒池並行，大小依資料庫連線池上限扣除保留連線與完成流程執行緒；
+ * 處理道佇列有界，滿時由送出處理道的完成流程執行緒自行執行（CallerRunsPolicy），
+ * 大型單據的處理道數不會無限堆積於記憶體，完成流程執行緒同時也不再送出新的處理道
+ */
+@Configuration
+public class SlipCompletionConfig {
+
+    @Bean(name = "slipCompletionExecutor")
+    public ThreadPoolTaskExecutor slipCompletionExecutor(
+            @Value("${erp.slip.completion.pool-size:4}") int poolSize,
+            @Value("${erp.slip.completion.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("slip-completion-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "slipLaneExecutor")
+    public ThreadPoolTaskExecutor slipLaneExecutor(
+            DataSource dataSource,
+            @Value("${erp.slip.completion.pool-size:4}") int completionPoolSize,
+            @Value("${erp.slip.completion.reserved-connections:2}") int reservedConnections,
+            @Value("${erp.slip.completion.lane-queue-capacity:100}") int laneQueueCapacity) {
+        // 完成流程執行緒於佇列滿時會自行執行處理道，同樣佔用連線，需一併扣除
+        int maxPoolSize = dataSource instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+        int lanes = Math.max(1, maxPoolSize - reservedConnections - completionPoolSize);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(lanes);
+        executor.setMaxPoolSize(lanes);
+        executor.setQueueCapacity(laneQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("slip-lane-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
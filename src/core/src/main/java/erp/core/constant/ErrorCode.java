@@ -30,6 +30,16 @@ public class ErrorCode {
      */
     public static final String INSUFFICIENT_STOCK = "INSUFFICIENT_STOCK";
     
+    /**
+     * 並發衝突（重試後仍失敗）
+     */
+    public static final String CONCURRENT_CONFLICT = "CONCURRENT_CONFLICT";
+    
+    /**
+     * 處理佇列已滿，請稍後重試
+     */
+    public static final String SERVICE_BUSY = "SERVICE_BUSY";
+    
     /**
      * 系統內部錯誤
      */
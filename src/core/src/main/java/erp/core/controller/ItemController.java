@@ -2,7 +2,10 @@ package erp.core.controller;
 
 import erp.core.constant.ErrorCode;
 import erp.core.dto.ApiResponse;
+import erp.core.dto.CursorPage;
+import erp.core.dto.PageCursor;
 import erp.core.entity.Item;
+import erp.core.service.ItemSearchIndex;
 import erp.core.service.WarehouseManagementService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -83,7 +86,8 @@ public class ItemController {
      * 支援三種查詢模式：
      * 1. 查詢單一商品 (提供 id 參數)
      * 2. 查詢所有商品 (不提供任何參數)
-     * 3. 按名稱模糊搜尋 (提供 name 參數)
+     * 3. 按名稱搜尋 (提供 name 參數)，依相關度排序，limit 限制筆數
+     * 查詢所有商品以 cursor、limit 參數分頁，回應中的 nextCursor 為下一頁游標
      */
     @PostMapping("/info")
     public ApiResponse<?> getItemInfo(@RequestBody(required = false) Map<String, Object> data) {
@@ -112,12 +116,12 @@ public class ItemController {
             
             // 情況3: 按名稱模糊搜尋
             if (name != null && !name.trim().isEmpty()) {
-                List<Item> items = warehouseService.searchItemsByName(name.trim());
+                CursorPage<Item> items = warehouseService.searchItemsByName(name.trim(), PageCursor.limitFromRequest(data));
                 return ApiResponse.success("搜尋成功", items);
             }
             
             // 情況2: 查詢所有商品
-            List<Item> items = warehouseService.getAllItems();
+            CursorPage<Item> items = warehouseService.getAllItems(PageCursor.fromRequest(data), PageCursor.limitFromRequest(data));
             return ApiResponse.success("查詢成功", items);
             
         } catch (IllegalArgumentException e) {
@@ -129,6 +133,28 @@ public class ItemController {
         }
     }
     
+    /**
+     * 商品名稱自動完成
+     * 依名稱前綴 (prefix) 回傳最多 limit 筆商品ID與名稱，供輸入時即時提示
+     */
+    @PostMapping("/suggest")
+    public ApiResponse<List<ItemSearchIndex.Suggestion>> suggestItems(@RequestBody(required = false) Map<String, Object> data) {
+        try {
+            String prefix = data != null ? (String) data.get("prefix") : null;
+            if (prefix == null || prefix.trim().isEmpty()) {
+                return ApiResponse.success("查詢成功", List.of());
+            }
+            
+            return ApiResponse.success("查詢成功", warehouseService.suggestItems(prefix, PageCursor.limitFromRequest(data)));
+        } catch (IllegalArgumentException e) {
+            log.warn("參數錯誤: {}", e.getMessage());
+            return ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT);
+        } catch (Exception e) {
+            log.error("商品自動完成時發生未預期錯誤", e);
+            return ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR);
+        }
+    }
+    
     /**
      * 創建商品
      */
@@ -2,12 +2,23 @@ package erp.core.controller;
 
 import erp.core.constant.ErrorCode;
 import erp.core.dto.ApiResponse;
+import erp.core.dto.CursorPage;
+import erp.core.dto.MovementTotalsDto;
+import erp.core.dto.PageCursor;
 import erp.core.entity.StockMovement;
+import erp.core.service.StockMovementExportService;
+import erp.core.service.StockMovementRollupService;
 import erp.core.service.WarehouseManagementService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 
@@ -22,12 +33,14 @@ import java.util.Map;
 public class MovementController {
     
     private final WarehouseManagementService warehouseService;
+    private final StockMovementExportService exportService;
+    private final StockMovementRollupService rollupService;
     
     /**
-     * 查詢商品異動記錄
+     * 查詢商品異動記錄（以 cursor、limit 參數分頁）
      */
     @PostMapping("/byItem")
-    public ApiResponse<List<StockMovement>> getMovementsByItem(@RequestBody Map<String, Object> data) {
+    public ApiResponse<CursorPage<StockMovement>> getMovementsByItem(@RequestBody Map<String, Object> data) {
         try {
             Long itemId = null;
             if (data != null) {
@@ -41,7 +54,8 @@ public class MovementController {
                 return ApiResponse.error("商品ID不能為空", ErrorCode.INVALID_ARGUMENT);
             }
             
-            List<StockMovement> movements = warehouseService.getStockMovements(itemId);
+            CursorPage<StockMovement> movements = warehouseService.getStockMovements(itemId,
+                    PageCursor.fromRequest(data), PageCursor.limitFromRequest(data));
             return ApiResponse.success("查詢成功", movements);
         } catch (IllegalArgumentException e) {
             log.warn("參數錯誤: {}", e.getMessage());
@@ -53,10 +67,10 @@ public class MovementController {
     }
 
     /**
-     * 查詢位置異動記錄
+     * 查詢位置異動記錄（以 cursor、limit 參數分頁）
      */
     @PostMapping("/byLocation")
-    public ApiResponse<List<StockMovement>> getMovementsByLocation(@RequestBody Map<String, Object> data) {
+    public ApiResponse<CursorPage<StockMovement>> getMovementsByLocation(@RequestBody Map<String, Object> data) {
         try {
             String location = null;
             if (data != null) {
@@ -67,7 +81,8 @@ public class MovementController {
                 return ApiResponse.error("位置不能為空", ErrorCode.INVALID_ARGUMENT);
             }
             
-            List<StockMovement> movements = warehouseService.getStockMovementsByLocation(location.trim());
+            CursorPage<StockMovement> movements = warehouseService.getStockMovementsByLocation(location.trim(),
+                    PageCursor.fromRequest(data), PageCursor.limitFromRequest(data));
             return ApiResponse.success("查詢成功", movements);
         } catch (IllegalArgumentException e) {
             log.warn("參數錯誤: {}", e.getMessage());
@@ -78,6 +93,67 @@ public class MovementController {
         }
     }
 
+    /**
+     * 查詢單據異動記錄（以 cursor、limit 參數分頁）
+     */
+    @PostMapping("/bySlip")
+    public ApiResponse<CursorPage<StockMovement>> getMovementsBySlip(@RequestBody Map<String, Object> data) {
+        try {
+            Long slipId = null;
+            if (data != null) {
+                Object slipIdObj = data.get("slipId");
+                if (slipIdObj != null) {
+                    slipId = Long.valueOf(slipIdObj.toString());
+                }
+            }
+            
+            if (slipId == null) {
+                return ApiResponse.error("單據ID不能為空", ErrorCode.INVALID_ARGUMENT);
+            }
+            
+            CursorPage<StockMovement> movements = warehouseService.getStockMovementsBySlip(slipId,
+                    PageCursor.fromRequest(data), PageCursor.limitFromRequest(data));
+            return ApiResponse.success("查詢成功", movements);
+        } catch (IllegalArgumentException e) {
+            log.warn("參數錯誤: {}", e.getMessage());
+            return ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT);
+        } catch (Exception e) {
+            log.error("查詢單據異動記錄時發生未預期錯誤", e);
+            return ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR);
+        }
+    }
+
+    /**
+     * 查詢商品入出庫合計（每日彙總加上未彙總的尾端），指定位置 (location) 時另回傳該位置的淨異動量
+     */
+    @PostMapping("/totals")
+    public ApiResponse<MovementTotalsDto> getMovementTotals(@RequestBody Map<String, Object> data) {
+        try {
+            Long itemId = null;
+            String location = null;
+            if (data != null) {
+                Object itemIdObj = data.get("itemId");
+                if (itemIdObj != null) {
+                    itemId = Long.valueOf(itemIdObj.toString());
+                }
+                location = (String) data.get("location");
+            }
+            
+            if (itemId == null) {
+                return ApiResponse.error("商品ID不能為空", ErrorCode.INVALID_ARGUMENT);
+            }
+            
+            MovementTotalsDto totals = rollupService.getMovementTotals(itemId, location);
+            return ApiResponse.success("查詢成功", totals);
+        } catch (IllegalArgumentException e) {
+            log.warn("參數錯誤: {}", e.getMessage());
+            return ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT);
+        } catch (Exception e) {
+            log.error("查詢商品異動合計時發生未預期錯誤", e);
+            return ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR);
+        }
+    }
+
     /**
      * 查詢最近異動記錄
      */
@@ -91,5 +167,53 @@ public class MovementController {
             return ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR);
         }
     }
+
+    /**
+     * 匯出異動記錄（NDJSON 串流，每行一筆）
+     * 可依商品 (itemId)、位置 (location)、時間範圍 (from 含、to 不含，ISO 格式) 組合篩選
+     * 參數錯誤時回應 ApiResponse 錯誤訊息
+     */
+    @PostMapping("/export")
+    public ResponseEntity<?> exportMovements(@RequestBody(required = false) Map<String, Object> data) {
+        try {
+            Long itemId = null;
+            String location = null;
+            LocalDateTime from = null;
+            LocalDateTime to = null;
+            if (data != null) {
+                Object itemIdObj = data.get("itemId");
+                if (itemIdObj != null) {
+                    itemId = Long.valueOf(itemIdObj.toString());
+                }
+                location = (String) data.get("location");
+                from = parseDateTime(data.get("from"));
+                to = parseDateTime(data.get("to"));
+            }
+            
+            StockMovementExportService.Criteria criteria = exportService.criteria(itemId, location, from, to);
+            StreamingResponseBody body = out -> exportService.export(criteria, out);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"stock-movements.ndjson\"")
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            log.warn("參數錯誤: {}", e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT));
+        } catch (Exception e) {
+            log.error("匯出異動記錄時發生未預期錯誤", e);
+            return ResponseEntity.ok(ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR));
+        }
+    }
+    
+    private LocalDateTime parseDateTime(Object value) {
+        if (value == null || value.toString().isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value.toString().trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("時間格式錯誤，應為 yyyy-MM-ddTHH:mm:ss: " + value);
+        }
+    }
     
 }
\ No newline at end of file
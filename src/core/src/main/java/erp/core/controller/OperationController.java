@@ -2,12 +2,16 @@ package erp.core.controller;
 
 import erp.core.constant.ErrorCode;
 import erp.core.dto.ApiResponse;
+import erp.core.dto.BatchOperationResult;
+import erp.core.dto.StockOperationLineDto;
 import erp.core.service.WarehouseManagementService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -55,6 +59,9 @@ public class OperationController {
             if (e.getMessage().contains("庫存不足")) {
                 return ApiResponse.error(e.getMessage(), ErrorCode.INSUFFICIENT_STOCK);
             }
+            if (e.getMessage().contains("並發衝突")) {
+                return ApiResponse.error(e.getMessage(), ErrorCode.CONCURRENT_CONFLICT);
+            }
             return ApiResponse.error(e.getMessage(), ErrorCode.INTERNAL_ERROR);
         } catch (Exception e) {
             log.error("處理庫存操作時發生未預期錯誤", e);
@@ -80,6 +87,9 @@ public class OperationController {
             if (e.getMessage().contains("庫存不足")) {
                 return ApiResponse.error(e.getMessage(), ErrorCode.INSUFFICIENT_STOCK);
             }
+            if (e.getMessage().contains("並發衝突")) {
+                return ApiResponse.error(e.getMessage(), ErrorCode.CONCURRENT_CONFLICT);
+            }
             return ApiResponse.error(e.getMessage(), ErrorCode.INTERNAL_ERROR);
         } catch (Exception e) {
             log.error("處理轉庫操作時發生未預期錯誤", e);
@@ -87,6 +97,84 @@ public class OperationController {
         }
     }
     
+    /**
+     * 批次庫存操作 (多筆操作於單一事務內執行)
+     * mode: ALL_OR_NOTHING（預設，任一行失敗整批回滾）或 PER_LINE（逐行回報結果）
+     */
+    @PostMapping("/batch")
+    public ApiResponse<BatchOperationResult> handleBatchOperation(@RequestBody Map<String, Object> request) {
+        try {
+            String modeValue = (String) request.get("mode");
+            Object operationsObj = request.get("operations");
+            
+            WarehouseManagementService.BatchMode mode;
+            try {
+                mode = modeValue == null ? WarehouseManagementService.BatchMode.ALL_OR_NOTHING
+                        : WarehouseManagementService.BatchMode.valueOf(modeValue);
+            } catch (IllegalArgumentException e) {
+                return ApiResponse.error("不支援的批次模式: " + modeValue, ErrorCode.INVALID_ARGUMENT);
+            }
+            
+            if (!(operationsObj instanceof List<?> operations) || operations.isEmpty()) {
+                return ApiResponse.error("批次操作明細不能為空", ErrorCode.INVALID_ARGUMENT);
+            }
+            
+            List<StockOperationLineDto> lines = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                if (!(operations.get(i) instanceof Map<?, ?> data)) {
+                    return ApiResponse.error("第 " + (i + 1) + " 行: 請求資料格式錯誤", ErrorCode.INVALID_ARGUMENT);
+                }
+                
+                StockOperationLineDto line = new StockOperationLineDto();
+                line.setAction((String) data.get("action"));
+                line.setLocation((String) data.get("location"));
+                line.setFromLocation((String) data.get("fromLocation"));
+                line.setToLocation((String) data.get("toLocation"));
+                line.setNote((String) data.get("note"));
+                
+                try {
+                    Object itemIdObj = data.get("itemId");
+                    line.setItemId(itemIdObj == null ? null : Long.valueOf(itemIdObj.toString()));
+                } catch (NumberFormatException e) {
+                    return ApiResponse.error("第 " + (i + 1) + " 行: 商品ID格式錯誤", ErrorCode.INVALID_ARGUMENT);
+                }
+                
+                try {
+                    Object quantityObj = data.get("quantity");
+                    line.setQuantity(quantityObj == null ? null : new BigDecimal(quantityObj.toString()));
+                } catch (NumberFormatException e) {
+                    return ApiResponse.error("第 " + (i + 1) + " 行: 數量格式錯誤", ErrorCode.INVALID_ARGUMENT);
+                }
+                
+                lines.add(line);
+            }
+            
+            BatchOperationResult result = warehouseService.batchOperation(lines, mode);
+            return ApiResponse.success("批次操作完成", result);
+        } catch (IllegalArgumentException e) {
+            log.warn("參數錯誤: {}", e.getMessage());
+            if (e.getMessage().contains("商品不存在")) {
+                return ApiResponse.error(e.getMessage(), ErrorCode.ITEM_NOT_FOUND);
+            }
+            if (e.getMessage().contains("不支援的操作類型")) {
+                return ApiResponse.error(e.getMessage(), ErrorCode.UNSUPPORTED_ACTION);
+            }
+            return ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT);
+        } catch (IllegalStateException e) {
+            log.warn("狀態錯誤: {}", e.getMessage());
+            if (e.getMessage().contains("庫存不足")) {
+                return ApiResponse.error(e.getMessage(), ErrorCode.INSUFFICIENT_STOCK);
+            }
+            if (e.getMessage().contains("並發衝突")) {
+                return ApiResponse.error(e.getMessage(), ErrorCode.CONCURRENT_CONFLICT);
+            }
+            return ApiResponse.error(e.getMessage(), ErrorCode.INTERNAL_ERROR);
+        } catch (Exception e) {
+            log.error("處理批次庫存操作時發生未預期錯誤", e);
+            return ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR);
+        }
+    }
+    
     /**
      * 入庫操作
      */
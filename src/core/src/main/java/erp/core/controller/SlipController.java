@@ -2,6 +2,11 @@ package erp.core.controller;
 
 import erp.core.constant.ErrorCode;
 import erp.core.dto.ApiResponse;
+import erp.core.dto.CursorPage;
+import erp.core.dto.PageCursor;
+import erp.core.dto.SlipProgressDto;
+import erp.core.dto.SlipReadDto;
+import erp.core.dto.SlipSummaryDto;
 import erp.core.entity.Slip;
 import erp.core.service.SlipService;
 import lombok.RequiredArgsConstructor;
@@ -72,16 +77,71 @@ public class SlipController {
     }
 
     /**
-     * 讀取單據
+     * 查詢單據處理進度
+     */
+    @PostMapping("/progress")
+    public ApiResponse<SlipProgressDto> getSlipProgress(@RequestBody Map<String, Object> data) {
+        try {
+            Object idObj = data.get("id");
+            if (idObj == null) {
+                return ApiResponse.error("單據ID不能為空", ErrorCode.INVALID_ARGUMENT);
+            }
+            
+            Long id;
+            try {
+                id = Long.valueOf(idObj.toString());
+            } catch (NumberFormatException e) {
+                return ApiResponse.error("單據ID格式錯誤", ErrorCode.INVALID_ARGUMENT);
+            }
+            
+            return ApiResponse.success("查詢單據進度成功", slipService.getSlipProgress(id));
+        } catch (IllegalArgumentException e) {
+            log.warn("參數錯誤: {}", e.getMessage());
+            return ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT);
+        } catch (Exception e) {
+            log.error("查詢單據進度時發生未預期錯誤", e);
+            return ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR);
+        }
+    }
+
+    /**
+     * 分頁查詢單據列表（以 cursor、limit 參數分頁，依建立時間排序）
+     */
+    @PostMapping("/list")
+    public ApiResponse<CursorPage<SlipSummaryDto>> listSlips(@RequestBody(required = false) Map<String, Object> data) {
+        try {
+            CursorPage<SlipSummaryDto> slips = slipService.getAllSlips(PageCursor.fromRequest(data), PageCursor.limitFromRequest(data));
+            return ApiResponse.success("查詢單據列表成功", slips);
+        } catch (IllegalArgumentException e) {
+            log.warn("參數錯誤: {}", e.getMessage());
+            return ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT);
+        } catch (Exception e) {
+            log.error("查詢單據列表時發生未預期錯誤", e);
+            return ApiResponse.error("系統內部錯誤", ErrorCode.UNEXPECTED_ERROR);
+        }
+    }
+
+    /**
+     * 讀取單據（含明細）
      */
     @PostMapping("/read")
-    public ApiResponse<Slip> readSlip(@RequestBody Map<String, Object> data) {
+    public ApiResponse<SlipReadDto> readSlip(@RequestBody Map<String, Object> data) {
         try {
             log.info("讀取單據請求: {}", data);
             
-            // TODO: 實現讀取單據邏輯
+            Object idObj = data.get("id");
+            if (idObj == null) {
+                return ApiResponse.error("單據ID不能為空", ErrorCode.INVALID_ARGUMENT);
+            }
+            
+            Long id;
+            try {
+                id = Long.valueOf(idObj.toString());
+            } catch (NumberFormatException e) {
+                return ApiResponse.error("單據ID格式錯誤", ErrorCode.INVALID_ARGUMENT);
+            }
             
-            return ApiResponse.success("單據讀取成功", null);
+            return ApiResponse.success("單據讀取成功", slipService.readSlip(id));
         } catch (IllegalArgumentException e) {
             log.warn("參數錯誤: {}", e.getMessage());
             return ApiResponse.error(e.getMessage(), ErrorCode.INVALID_ARGUMENT);
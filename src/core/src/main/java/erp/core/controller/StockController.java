@@ -2,6 +2,8 @@ package erp.core.controller;
 
 import erp.core.constant.ErrorCode;
 import erp.core.dto.ApiResponse;
+import erp.core.dto.CursorPage;
+import erp.core.dto.PageCursor;
 import erp.core.entity.Stock;
 import erp.core.service.WarehouseManagementService;
 import lombok.RequiredArgsConstructor;
@@ -9,7 +11,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -31,6 +32,7 @@ public class StockController {
      * 1. 查詢特定商品在特定位置的庫存 (itemId + location)
      * 2. 查詢商品所有庫存 (僅 itemId)
      * 3. 查詢位置所有庫存 (僅 location)
+     * 列表查詢以 cursor、limit 參數分頁，回應中的 nextCursor 為下一頁游標
      */
     @PostMapping("/stock")
     public ApiResponse<?> getStock(@RequestBody(required = false) Map<String, Object> data) {
@@ -59,13 +61,15 @@ public class StockController {
             
             // 情況2: 查詢商品所有庫存
             if (itemId != null) {
-                List<Stock> stocks = warehouseService.getStocksByItem(itemId);
+                CursorPage<Stock> stocks = warehouseService.getStocksByItem(itemId,
+                        PageCursor.fromRequest(data), PageCursor.limitFromRequest(data));
                 return ApiResponse.success("查詢成功", stocks);
             }
             
             // 情況3: 查詢位置所有庫存
             if (location != null && !location.trim().isEmpty()) {
-                List<Stock> stocks = warehouseService.getStocksByLocation(location.trim());
+                CursorPage<Stock> stocks = warehouseService.getStocksByLocation(location.trim(),
+                        PageCursor.fromRequest(data), PageCursor.limitFromRequest(data));
                 return ApiResponse.success("查詢成功", stocks);
             }
             
@@ -115,9 +119,10 @@ public class StockController {
      * 查詢低庫存和零庫存商品
      * 如果提供threshold參數，查詢低於該閾值的庫存
      * 如果不提供threshold參數，查詢零庫存商品
+     * 以 cursor、limit 參數分頁
      */
     @PostMapping("/lowAndZeroStocks")
-    public ApiResponse<List<Stock>> getLowAndZeroStocks(@RequestBody(required = false) Map<String, Object> data) {
+    public ApiResponse<CursorPage<Stock>> getLowAndZeroStocks(@RequestBody(required = false) Map<String, Object> data) {
         try {
             BigDecimal threshold = null;
             if (data != null) {
@@ -127,18 +132,20 @@ public class StockController {
                 }
             }
             
-            List<Stock> stocks;
+            PageCursor cursor = PageCursor.fromRequest(data);
+            Integer limit = PageCursor.limitFromRequest(data);
+            CursorPage<Stock> stocks;
             
             if (threshold != null) {
                 // 查詢低庫存商品
                 if (threshold.compareTo(BigDecimal.ZERO) < 0) {
                     return ApiResponse.error("庫存閾值不能為負數", ErrorCode.INVALID_ARGUMENT);
                 }
-                stocks = warehouseService.getLowStocks(threshold);
+                stocks = warehouseService.getLowStocks(threshold, cursor, limit);
                 return ApiResponse.success("查詢低庫存成功", stocks);
             } else {
                 // 查詢零庫存商品
-                stocks = warehouseService.getZeroStocks();
+                stocks = warehouseService.getZeroStocks(cursor, limit);
                 return ApiResponse.success("查詢零庫存成功", stocks);
             }
         } catch (IllegalArgumentException e) {
@@ -0,0 +1,70 @@
+package erp.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批次庫存操作結果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchOperationResult {
+
+    /**
+     * 執行模式（ALL_OR_NOTHING / PER_LINE）
+     */
+    private String mode;
+
+    /**
+     * 總筆數
+     */
+    private int total;
+
+    /**
+     * 成功筆數
+     */
+    private int succeeded;
+
+    /**
+     * 失敗筆數
+     */
+    private int failed;
+
+    /**
+     * 各行結果（依請求順序）
+     */
+    private List<LineResult> lines;
+
+    /**
+     * 單行結果
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LineResult {
+
+        /**
+         * 行號（從 1 開始）
+         */
+        private int lineNumber;
+
+        /**
+         * 是否成功
+         */
+        private boolean success;
+
+        /**
+         * 失敗訊息
+         */
+        private String message;
+
+        /**
+         * 失敗錯誤代碼
+         */
+        private String errorCode;
+    }
+}
@@ -0,0 +1,62 @@
+package erp.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 鍵集分頁結果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    /**
+     * 本頁資料
+     */
+    private List<T> items;
+
+    /**
+     * 下一頁游標，沒有下一頁時為 null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否還有下一頁
+     */
+    private boolean hasMore;
+
+    /**
+     * 決定每頁筆數：未指定時使用預設值，超過上限時以上限為準
+     */
+    public static int resolveLimit(Integer requested, int defaultLimit, int maxLimit) {
+        if (requested == null) {
+            return defaultLimit;
+        }
+        if (requested <= 0) {
+            throw new IllegalArgumentException("每頁筆數必須大於0");
+        }
+        return Math.min(requested, maxLimit);
+    }
+
+    /**
+     * 由多查詢一筆的結果建立分頁：超過 limit 筆時表示還有下一頁，游標取本頁最後一筆
+     * @param rows 以 limit + 1 查詢的結果
+     * @param limit 每頁筆數
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int limit,
+                                       Function<T, LocalDateTime> createdAt, Function<T, Long> id) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null, false);
+        }
+
+        List<T> items = rows.subList(0, limit);
+        T last = items.get(limit - 1);
+        return new CursorPage<>(items, new PageCursor(createdAt.apply(last), id.apply(last)).encode(), true);
+    }
+}
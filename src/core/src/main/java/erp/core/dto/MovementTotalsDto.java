@@ -0,0 +1,45 @@
+package erp.core.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 商品庫存異動合計
+ */
+@Data
+@NoArgsConstructor
+public class MovementTotalsDto {
+
+    /**
+     * 商品ID
+     */
+    private Long itemId;
+
+    /**
+     * 總入庫量
+     */
+    private BigDecimal inbound;
+
+    /**
+     * 總出庫量
+     */
+    private BigDecimal outbound;
+
+    /**
+     * 儲位ID，未指定儲位時為 null
+     */
+    private Long storageLocationId;
+
+    /**
+     * 指定儲位的淨異動量（入庫 - 出庫），未指定儲位時為 null
+     */
+    private BigDecimal locationNet;
+
+    /**
+     * 每日彙總涵蓋至此日期之前（不含），之後的異動直接自異動記錄加總；尚未彙總時為 null
+     */
+    private LocalDate rolledUpUntil;
+}
@@ -0,0 +1,68 @@
+package erp.core.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * 鍵集分頁游標
+ * 記錄上一頁最後一筆的 (created_at, id)，下一頁查詢條件為 (created_at, id) > 游標，
+ * 對外以 Base64 編碼的不透明字串傳遞
+ * @param createdAt 上一頁最後一筆的建立時間
+ * @param id 上一頁最後一筆的ID
+ */
+public record PageCursor(LocalDateTime createdAt, Long id) {
+
+    /**
+     * 第一頁：早於所有資料的游標
+     */
+    public static final PageCursor FIRST = new PageCursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0L);
+
+    /**
+     * 解析游標字串，空白時回傳第一頁
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("分頁游標格式錯誤");
+            }
+            return new PageCursor(LocalDateTime.parse(decoded.substring(0, separator)),
+                    Long.valueOf(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("分頁游標格式錯誤", e);
+        }
+    }
+
+    /**
+     * 由請求參數 cursor 取得游標，未提供時回傳第一頁
+     * 非字串的參數值以 toString() 解析，格式不符時拋出 IllegalArgumentException
+     */
+    public static PageCursor fromRequest(Map<String, Object> data) {
+        Object cursorObj = data == null ? null : data.get("cursor");
+        return decode(cursorObj == null ? null : cursorObj.toString());
+    }
+
+    /**
+     * 由請求參數 limit 取得每頁筆數，未提供時回傳 null（使用預設值）
+     */
+    public static Integer limitFromRequest(Map<String, Object> data) {
+        Object limitObj = data == null ? null : data.get("limit");
+        return limitObj == null ? null : Integer.valueOf(limitObj.toString());
+    }
+
+    /**
+     * 編碼為游標字串
+     */
+    public String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,60 @@
+package erp.core.dto;
+
+import erp.core.entity.SlipDetail;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * 單據明細（讀取用投影）
+ * 商品名稱、倉庫名稱、儲位編號於同一查詢中以關聯 JOIN 取得，不載入明細實體
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlipLineDto {
+
+    private Long id;
+
+    private Integer lineNumber;
+
+    private Long itemId;
+
+    private String itemName;
+
+    private String itemUnit;
+
+    private Long fromWarehouseId;
+
+    private String fromWarehouseName;
+
+    private Long fromStorageLocationId;
+
+    private String fromStorageLocationCode;
+
+    private Long toWarehouseId;
+
+    private String toWarehouseName;
+
+    private Long toStorageLocationId;
+
+    private String toStorageLocationCode;
+
+    private BigDecimal quantityChange;
+
+    private SlipDetail.Status status;
+
+    /**
+     * 處理失敗次數
+     */
+    private Integer attempts;
+
+    /**
+     * 最後一次處理失敗的錯誤訊息
+     */
+    private String lastError;
+
+    private String note;
+}
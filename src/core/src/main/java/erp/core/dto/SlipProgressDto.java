@@ -0,0 +1,57 @@
+package erp.core.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 單據處理進度
+ */
+@Data
+@NoArgsConstructor
+public class SlipProgressDto {
+
+    /**
+     * 單據ID
+     */
+    private Long slipId;
+
+    /**
+     * 單據狀態（DRAFT / COMPLETED / CANCELLED）
+     */
+    private String slipStatus;
+
+    /**
+     * 明細總數
+     */
+    private long total;
+
+    /**
+     * 待處理明細數
+     */
+    private long pending;
+
+    /**
+     * 已處理明細數
+     */
+    private long processed;
+
+    /**
+     * 處理失敗、等待重試的明細數
+     */
+    private long failed;
+
+    /**
+     * 重試次數達上限、無法處理的明細數
+     */
+    private long deadLetter;
+
+    /**
+     * 已取消明細數
+     */
+    private long cancelled;
+
+    /**
+     * 單據已完成且所有明細皆已處理完畢（成功或無法處理），不再有待處理或等待重試的明細
+     */
+    private boolean finished;
+}
@@ -0,0 +1,20 @@
+package erp.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 單據讀取結果：單據摘要與依項次排序的明細
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlipReadDto {
+
+    private SlipSummaryDto slip;
+
+    private List<SlipLineDto> lines;
+}
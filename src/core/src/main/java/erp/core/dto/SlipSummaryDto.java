@@ -0,0 +1,34 @@
+package erp.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 單據摘要（讀取用投影，不含延遲載入的關聯）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlipSummaryDto {
+
+    private Long id;
+
+    /**
+     * 單據類型：1=入庫單, 2=出庫單, 3=轉倉單, 4=凍結單, 5=報廢單
+     */
+    private Byte slipsType;
+
+    private Long createdBy;
+
+    /**
+     * 狀態：0=草稿, 1=完成, 2=取消
+     */
+    private Byte status;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
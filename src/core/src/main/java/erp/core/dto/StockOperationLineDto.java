@@ -0,0 +1,40 @@
+package erp.core.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import java.math.BigDecimal;
+
+/**
+ * 批次庫存操作明細資料傳輸物件
+ * action 對應單筆操作 API 的操作類型（inbound、outbound、transfer、freeze、scrap、unfreeze），
+ * 入庫/出庫使用 location，其餘操作依需要使用 fromLocation / toLocation
+ * sourceSlipId / sourceSlipDetailId 僅供單據完成流程內部使用，寫入異動記錄的來源欄位
+ */
+@Setter
+@Getter
+public class StockOperationLineDto {
+    private String action;
+    private Long itemId;
+    private String location;
+    private String fromLocation;
+    private String toLocation;
+    private BigDecimal quantity;
+    private String note;
+    private Long sourceSlipId;
+    private Long sourceSlipDetailId;
+
+    // Constructors
+    public StockOperationLineDto() {}
+
+    public StockOperationLineDto(String action, Long itemId, String location,
+                                 String fromLocation, String toLocation,
+                                 BigDecimal quantity, String note) {
+        this.action = action;
+        this.itemId = itemId;
+        this.location = location;
+        this.fromLocation = fromLocation;
+        this.toLocation = toLocation;
+        this.quantity = quantity;
+        this.note = note;
+    }
+}
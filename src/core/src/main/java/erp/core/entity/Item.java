@@ -4,16 +4,24 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "items")
+@Table(name = "items",
+       indexes = {
+           @Index(name = "idx_items_created_at", columnList = "created_at")
+       })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "item")
+@EntityListeners(ItemEntityListener.class)
 public class Item {
     
     @Id
@@ -28,7 +36,7 @@ public class Item {
     private String unit;
     
     @CreationTimestamp
-    @Column(name = "created_at", updatable = false, nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '建立時間（毫秒級）'")
+    @Column(name = "created_at", updatable = false, nullable = false, columnDefinition = "DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）'")
     private LocalDateTime createdAt;
     
     @UpdateTimestamp
@@ -0,0 +1,68 @@
+package erp.core.entity;
+
+import erp.core.service.ItemSearchIndex;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 商品異動監聽器
+ * 商品新增、修改、刪除時即時更新 ItemSearchIndex；
+ * 在事務中時於提交後再套用一次（期間若有重建則補上），回滾時自資料庫重新讀取該商品，避免殘留未提交的名稱
+ */
+@Component
+public class ItemEntityListener {
+
+    // 以 ObjectProvider 延遲取得，避免 EntityManagerFactory 與索引之間的循環依賴
+    private final ObjectProvider<ItemSearchIndex> indexProvider;
+
+    public ItemEntityListener(ObjectProvider<ItemSearchIndex> indexProvider) {
+        this.indexProvider = indexProvider;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Item item) {
+        ItemSearchIndex index = indexProvider.getIfAvailable();
+        if (index == null) {
+            return;
+        }
+
+        Long itemId = item.getId();
+        String name = item.getName();
+        index.upsert(itemId, name);
+        afterCompletion(() -> index.upsert(itemId, name), () -> index.refresh(itemId));
+    }
+
+    @PostRemove
+    public void onRemove(Item item) {
+        ItemSearchIndex index = indexProvider.getIfAvailable();
+        if (index == null) {
+            return;
+        }
+
+        Long itemId = item.getId();
+        index.remove(itemId);
+        afterCompletion(() -> index.remove(itemId), () -> index.refresh(itemId));
+    }
+
+    private void afterCompletion(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    onCommit.run();
+                } else {
+                    onRollback.run();
+                }
+            }
+        });
+    }
+}
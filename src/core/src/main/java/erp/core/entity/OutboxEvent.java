@@ -0,0 +1,65 @@
+package erp.core.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_events",
+       indexes = {
+           @Index(name = "idx_outbox_events_published_at", columnList = "published_at")
+       })
+@Data
+@NoArgsConstructor
+public class OutboxEvent {
+    
+    /**
+     * 事件類型枚舉
+     */
+    @Getter
+    public enum EventType {
+        SLIP_COMPLETED("單據完成"),
+        /**
+         * 已停止寫入（沒有訂閱者），保留以解析既有的事件記錄
+         */
+        STOCK_CHANGED("庫存異動");
+        
+        private final String description;
+        
+        EventType(String description) {
+            this.description = description;
+        }
+    }
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "outbox_events_id")
+    @TableGenerator(name = "outbox_events_id", table = "id_generators",
+                    pkColumnName = "sequence_name", valueColumnName = "next_val",
+                    pkColumnValue = "outbox_events", allocationSize = 50)
+    @Column(columnDefinition = "BIGINT PRIMARY KEY COMMENT '事件唯一識別碼，由 id_generators 分段分配'")
+    private Long id;
+    
+    @Column(name = "aggregate_type", nullable = false, length = 50, columnDefinition = "VARCHAR(50) NOT NULL COMMENT '聚合類型（slip、stock）'")
+    private String aggregateType;
+    
+    @Column(name = "aggregate_id", nullable = false, columnDefinition = "BIGINT NOT NULL COMMENT '聚合ID（單據ID或商品ID）'")
+    private Long aggregateId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 50, columnDefinition = "VARCHAR(50) NOT NULL COMMENT '事件類型'")
+    private EventType eventType;
+    
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT NOT NULL COMMENT '事件內容（JSON）'")
+    private String payload;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false, nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '建立時間（毫秒級）'")
+    private LocalDateTime createdAt;
+    
+    @Column(name = "published_at", nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '發佈至 Redis Stream 的時間，NULL 表示尚未發佈'")
+    private LocalDateTime publishedAt;
+}
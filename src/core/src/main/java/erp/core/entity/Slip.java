@@ -8,7 +8,6 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 @Entity
 @Table(name = "slips",
@@ -38,19 +37,10 @@ public class Slip {
     private Byte status;
     
     @CreationTimestamp
-    @Column(name = "created_at", updatable = false, nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '建立時間（毫秒級）'")
+    @Column(name = "created_at", updatable = false, nullable = false, columnDefinition = "DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）'")
     private LocalDateTime createdAt;
     
     @UpdateTimestamp
     @Column(name = "updated_at", nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '更新時間（毫秒級）'")
     private LocalDateTime updatedAt;
-    
-    // Many-to-many relationship with StockMovement through SlipMovement join table
-    @ManyToMany(fetch = FetchType.LAZY)
-    @JoinTable(
-        name = "slip_movements",
-        joinColumns = @JoinColumn(name = "slip_id"),
-        inverseJoinColumns = @JoinColumn(name = "stock_movement_id")
-    )
-    private List<StockMovement> stockMovements;
 }
\ No newline at end of file
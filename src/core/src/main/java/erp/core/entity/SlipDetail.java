@@ -1,10 +1,13 @@
 package erp.core.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -16,6 +19,7 @@ import java.time.LocalDateTime;
        indexes = {
            @Index(name = "idx_slip_details_slip_id", columnList = "slip_id"),
            @Index(name = "idx_slip_details_slip_status", columnList = "slip_id, status"),
+           @Index(name = "idx_slip_details_status_next_attempt", columnList = "status, next_attempt_at"),
            @Index(name = "idx_slip_details_item_id", columnList = "item_id"),
            @Index(name = "idx_slip_details_from_warehouse_id", columnList = "from_warehouse_id"),
            @Index(name = "idx_slip_details_from_storage_location_id", columnList = "from_storage_location_id"),
@@ -35,7 +39,8 @@ public class SlipDetail {
         PENDING(0, "待處理"),
         PROCESSED(1, "已處理"),
         CANCELLED(2, "取消"),
-        FAILED(3, "失敗"),;
+        FAILED(3, "失敗"),
+        DEAD_LETTER(4, "無法處理"),;
         
         private final int code;
         private final String description;
@@ -82,8 +87,11 @@ public class SlipDetail {
     }
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(columnDefinition = "BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '明細唯一識別碼，自增'")
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "slip_details_id")
+    @TableGenerator(name = "slip_details_id", table = "id_generators",
+                    pkColumnName = "sequence_name", valueColumnName = "next_val",
+                    pkColumnValue = "slip_details", allocationSize = 50)
+    @Column(columnDefinition = "BIGINT PRIMARY KEY COMMENT '明細唯一識別碼，由 id_generators 分段分配'")
     private Long id;
     
     @Column(name = "line_number", nullable = false, columnDefinition = "INTEGER NOT NULL COMMENT '項次（在單據中的順序）'")
@@ -110,10 +118,19 @@ public class SlipDetail {
     @Column(name = "quantity_change", precision = 18, scale = 6, nullable = false, columnDefinition = "DECIMAL(18,6) NOT NULL COMMENT '異動數量'")
     private BigDecimal quantityChange;
     
-    @Column(nullable = true, columnDefinition = "TINYINT NULL COMMENT '狀態：0=待處理, 1=已處理, 2=取消'")
+    @Column(nullable = true, columnDefinition = "TINYINT NULL COMMENT '狀態：0=待處理, 1=已處理, 2=取消, 3=失敗（等待重試）, 4=無法處理'")
     @Convert(converter = StatusConverter.class)
     private Status status;
     
+    @Column(name = "attempts", nullable = false, columnDefinition = "INT NOT NULL DEFAULT 0 COMMENT '處理失敗次數'")
+    private Integer attempts = 0;
+    
+    @Column(name = "next_attempt_at", nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '下次重試時間'")
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(name = "last_error", nullable = true, columnDefinition = "VARCHAR(500) NULL COMMENT '最後一次處理失敗的錯誤訊息'")
+    private String lastError;
+    
     @Column(columnDefinition = "TEXT NULL COMMENT '異動備註'", nullable = true)
     private String note;
     
@@ -125,27 +142,45 @@ public class SlipDetail {
     @Column(name = "updated_at", nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '更新時間（毫秒級）'")
     private LocalDateTime updatedAt;
     
-    // JPA relationships for easier querying
+    // JPA relationships for easier querying（僅供查詢關聯，不序列化、不納入 toString/equals，避免觸發延遲載入）
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "slip_id", insertable = false, updatable = false)
     private Slip slip;
     
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "item_id", insertable = false, updatable = false)
     private Item item;
     
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "from_warehouse_id", insertable = false, updatable = false)
     private Warehouse fromWarehouse;
     
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "from_storage_location_id", insertable = false, updatable = false)
     private StorageLocation fromStorageLocation;
     
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "to_warehouse_id", insertable = false, updatable = false)
     private Warehouse toWarehouse;
     
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "to_storage_location_id", insertable = false, updatable = false)
     private StorageLocation toStorageLocation;
@@ -1,9 +1,12 @@
 package erp.core.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -24,8 +27,11 @@ import java.time.LocalDateTime;
 public class SlipMovement {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(columnDefinition = "BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '關聯記錄唯一識別碼，自增'")
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "slip_movements_id")
+    @TableGenerator(name = "slip_movements_id", table = "id_generators",
+                    pkColumnName = "sequence_name", valueColumnName = "next_val",
+                    pkColumnValue = "slip_movements", allocationSize = 50)
+    @Column(columnDefinition = "BIGINT PRIMARY KEY COMMENT '關聯記錄唯一識別碼，由 id_generators 分段分配'")
     private Long id;
     
     @Column(name = "slip_id", nullable = false, columnDefinition = "BIGINT NOT NULL COMMENT '單據ID（關聯到 slips.id）'")
@@ -43,10 +49,16 @@ public class SlipMovement {
     private LocalDateTime updatedAt;
     
     // JPA relationships for easier querying
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "slip_id", insertable = false, updatable = false)
     private Slip slip;
     
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "stock_movement_id", insertable = false, updatable = false)
     private StockMovement stockMovement;
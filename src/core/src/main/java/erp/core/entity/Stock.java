@@ -13,9 +13,12 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "stocks",
        indexes = {
-           @Index(name = "idx_stocks_item_id", columnList = "item_id"),
+           @Index(name = "idx_stocks_item_id", columnList = "item_id, created_at"),
            @Index(name = "idx_stocks_warehouse_id", columnList = "warehouse_id"),
-           @Index(name = "idx_stocks_storage_location_id", columnList = "storage_location_id")
+           @Index(name = "idx_stocks_storage_location_id", columnList = "storage_location_id, created_at")
+       },
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_stocks_item_storage_location", columnNames = {"item_id", "storage_location_id"})
        })
 @Data
 @NoArgsConstructor
@@ -40,7 +43,7 @@ public class Stock {
     private BigDecimal quantity;
     
     @CreationTimestamp
-    @Column(name = "created_at", updatable = false, nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '建立時間（毫秒級）'")
+    @Column(name = "created_at", updatable = false, nullable = false, columnDefinition = "DATETIME(3) NOT NULL COMMENT '建立時間（毫秒級）'")
     private LocalDateTime createdAt;
     
     @UpdateTimestamp
@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
            @Index(name = "idx_stock_movements_item_created", columnList = "item_id, created_at"),
            @Index(name = "idx_stock_movements_created_at", columnList = "created_at"),
            @Index(name = "idx_stock_movements_warehouse_id", columnList = "warehouse_id"),
-           @Index(name = "idx_stock_movements_storage_location_id", columnList = "storage_location_id")
+           @Index(name = "idx_stock_movements_storage_location_id", columnList = "storage_location_id, created_at"),
+           @Index(name = "idx_stock_movements_source_slip", columnList = "source_slip_id, source_slip_detail_id")
        })
 @Data
 @NoArgsConstructor
@@ -77,8 +78,11 @@ public class StockMovement {
     }
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(columnDefinition = "BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '庫存異動記錄唯一識別碼，自增'")
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "stock_movements_id")
+    @TableGenerator(name = "stock_movements_id", table = "id_generators",
+                    pkColumnName = "sequence_name", valueColumnName = "next_val",
+                    pkColumnValue = "stock_movements", allocationSize = 50)
+    @Column(columnDefinition = "BIGINT PRIMARY KEY COMMENT '庫存異動記錄唯一識別碼，由 id_generators 分段分配'")
     private Long id;
     
     @Column(name = "item_id", nullable = true, columnDefinition = "BIGINT NULL COMMENT '商品ID'")
@@ -100,8 +104,15 @@ public class StockMovement {
     @Column(columnDefinition = "TEXT NULL COMMENT '異動備註'", nullable = true)
     private String note;
     
+    @Column(name = "source_slip_id", nullable = true, columnDefinition = "BIGINT NULL COMMENT '來源單據ID（單據完成觸發時）'")
+    private Long sourceSlipId;
+    
+    @Column(name = "source_slip_detail_id", nullable = true, columnDefinition = "BIGINT NULL COMMENT '來源單據明細ID（單據完成觸發時）'")
+    private Long sourceSlipDetailId;
+    
+    // 分區鍵：stock_movements 依 created_at 按月分區，主鍵為 (id, created_at)
     @CreationTimestamp
-    @Column(name = "created_at", updatable = false, nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '異動發生時間（毫秒級）'")
+    @Column(name = "created_at", updatable = false, nullable = false, columnDefinition = "DATETIME(3) NOT NULL COMMENT '異動發生時間（毫秒級），亦為分區鍵'")
     private LocalDateTime createdAt;
 
     @UpdateTimestamp
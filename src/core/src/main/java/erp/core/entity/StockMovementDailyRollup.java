@@ -0,0 +1,62 @@
+package erp.core.entity;
+
+import erp.core.entity.StockMovement.MovementType;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 庫存異動每日彙總
+ * 每個 (異動日期, 商品, 倉庫, 儲位, 異動類型) 一筆，由 StockMovementRollupService 以整日為單位自 stock_movements 彙總寫入
+ */
+@Entity
+@Table(name = "stock_movement_daily_rollups",
+       indexes = {
+           @Index(name = "idx_stock_movement_daily_rollups_movement_date", columnList = "movement_date")
+       },
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_stock_movement_daily_rollups_key",
+                             columnNames = {"item_id", "movement_date", "warehouse_id", "storage_location_id", "type"})
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockMovementDailyRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(columnDefinition = "BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '彙總記錄唯一識別碼，自增'")
+    private Long id;
+
+    @Column(name = "movement_date", nullable = false, columnDefinition = "DATE NOT NULL COMMENT '異動日期'")
+    private LocalDate movementDate;
+
+    @Column(name = "item_id", nullable = true, columnDefinition = "BIGINT NULL COMMENT '商品ID'")
+    private Long itemId;
+
+    @Column(name = "warehouse_id", nullable = true, columnDefinition = "BIGINT NULL COMMENT '倉庫ID'")
+    private Long warehouseId;
+
+    @Column(name = "storage_location_id", nullable = true, columnDefinition = "BIGINT NULL COMMENT '儲位ID'")
+    private Long storageLocationId;
+
+    @Column(nullable = true, columnDefinition = "INT NULL COMMENT '異動類型（數字代碼，如入庫=1，出庫=2）'")
+    @Convert(converter = StockMovement.MovementTypeConverter.class)
+    private MovementType type;
+
+    @Column(name = "quantity_change", precision = 24, scale = 6, nullable = false, columnDefinition = "DECIMAL(24,6) NOT NULL COMMENT '當日異動數量合計'")
+    private BigDecimal quantityChange;
+
+    @Column(name = "movement_count", nullable = false, columnDefinition = "BIGINT NOT NULL COMMENT '當日異動筆數'")
+    private Long movementCount;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false, nullable = true, columnDefinition = "DATETIME(3) NULL COMMENT '彙總時間（毫秒級）'")
+    private LocalDateTime createdAt;
+}
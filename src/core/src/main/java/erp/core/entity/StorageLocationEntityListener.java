@@ -0,0 +1,46 @@
+package erp.core.entity;
+
+import erp.core.service.StorageLocationResolver;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 儲位異動監聽器
+ * 儲位新增、修改、刪除時通知 StorageLocationResolver 失效；
+ * 在事務中時於事務結束後再失效一次，避免其他執行緒在提交前載入舊資料，或回滾後殘留未提交的資料
+ */
+@Component
+public class StorageLocationEntityListener {
+
+    // 以 ObjectProvider 延遲取得，避免 EntityManagerFactory 與解析器之間的循環依賴
+    private final ObjectProvider<StorageLocationResolver> resolverProvider;
+
+    public StorageLocationEntityListener(ObjectProvider<StorageLocationResolver> resolverProvider) {
+        this.resolverProvider = resolverProvider;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(StorageLocation storageLocation) {
+        StorageLocationResolver resolver = resolverProvider.getIfAvailable();
+        if (resolver == null) {
+            return;
+        }
+
+        resolver.invalidate();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    resolver.invalidate();
+                }
+            });
+        }
+    }
+}
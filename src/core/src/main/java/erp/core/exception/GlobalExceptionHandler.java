@@ -3,6 +3,7 @@ package erp.core.exception;
 import erp.core.constant.ErrorCode;
 import erp.core.dto.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -66,6 +67,11 @@ public class GlobalExceptionHandler {
         
         if (e.getMessage().contains("庫存不足")) {
             errorCode = ErrorCode.INSUFFICIENT_STOCK;
+        } else if (e.getMessage().contains("並發衝突")) {
+            errorCode = ErrorCode.CONCURRENT_CONFLICT;
+        } else if (e.getMessage().contains("佇列已滿")) {
+            errorCode = ErrorCode.SERVICE_BUSY;
+            httpStatus = HttpStatus.SERVICE_UNAVAILABLE;
         } else if (e.getMessage().contains("庫存不存在")) {
             errorCode = ErrorCode.STOCK_NOT_FOUND;
             httpStatus = HttpStatus.NOT_FOUND;
@@ -75,6 +81,16 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(httpStatus).body(response);
     }
     
+    /**
+     * 處理並發衝突異常（死鎖、鎖等待逾時）
+     */
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity<ApiResponse<Void>> handleConcurrencyFailure(ConcurrencyFailureException e) {
+        log.warn("並發衝突: {}", e.getMessage());
+        ApiResponse<Void> response = ApiResponse.error("資料並發衝突，請稍後重試", ErrorCode.CONCURRENT_CONFLICT);
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+    
     /**
      * 處理運行時異常
      */
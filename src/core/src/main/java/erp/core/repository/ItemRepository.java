@@ -1,17 +1,32 @@
 package erp.core.repository;
 
 import erp.core.entity.Item;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ItemRepository extends JpaRepository<Item, Long> {
     
+    /**
+     * 查詢所有商品（使用查詢快取）
+     */
+    @Override
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "reference-query")
+    })
+    List<Item> findAll();
+    
     /**
      * 根據名稱查找商品
      */
@@ -22,6 +37,12 @@ public interface ItemRepository extends JpaRepository<Item, Long> {
      */
     List<Item> findByNameContainingIgnoreCase(String name);
     
+    /**
+     * 鍵集分頁查詢商品：取 (created_at, id) 大於游標的下一批（利用索引 idx_items_created_at）
+     */
+    @Query("SELECT i FROM Item i WHERE (i.createdAt > :createdAt OR (i.createdAt = :createdAt AND i.id > :id)) ORDER BY i.createdAt, i.id")
+    List<Item> findPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
+    
     /**
      * 根據單位查找商品
      */
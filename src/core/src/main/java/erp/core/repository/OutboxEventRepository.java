@@ -0,0 +1,50 @@
+package erp.core.repository;
+
+import erp.core.entity.OutboxEvent;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    
+    /**
+     * 鎖定一批尚未發佈的事件，依ID排列
+     * 事件ID由各實例分段配置，跨實例時不代表寫入或提交順序，投遞順序不保證
+     * 以 FOR UPDATE SKIP LOCKED 略過其他實例正在發佈的事件，需在事務中呼叫
+     */
+    @Query(value = "SELECT * FROM outbox_events WHERE published_at IS NULL ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<OutboxEvent> lockUnpublished(@Param("limit") int limit);
+    
+    /**
+     * 標記事件已發佈
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE OutboxEvent e SET e.publishedAt = :publishedAt WHERE e.id IN :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") LocalDateTime publishedAt);
+    
+    /**
+     * 刪除一批發佈時間早於指定時間的事件
+     * 以 native spaces 提示宣告只影響 outbox_events，避免 Hibernate 因原生語句清空整個二級快取
+     * @return 刪除筆數，小於 limit 表示已清除完畢
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "outbox_events"))
+    @Query(value = "DELETE FROM outbox_events WHERE published_at < :before LIMIT :limit", nativeQuery = true)
+    int deletePublishedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+    
+    /**
+     * 根據聚合類型與ID查找事件
+     */
+    List<OutboxEvent> findByAggregateTypeAndAggregateIdOrderById(String aggregateType, Long aggregateId);
+}
@@ -1,11 +1,15 @@
 package erp.core.repository;
 
+import erp.core.dto.SlipLineDto;
 import erp.core.entity.SlipDetail;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -51,6 +55,22 @@ public interface SlipDetailRepository extends JpaRepository<SlipDetail, Long> {
      */
     List<SlipDetail> findBySlipIdOrderByLineNumber(Long slipId);
     
+    /**
+     * 查詢單據明細投影，商品名稱、倉庫名稱、儲位編號以 LEFT JOIN 同一查詢取得
+     */
+    @Query("SELECT new erp.core.dto.SlipLineDto(sd.id, sd.lineNumber, sd.itemId, i.name, i.unit, " +
+           "sd.fromWarehouseId, fw.name, sd.fromStorageLocationId, fl.code, " +
+           "sd.toWarehouseId, tw.name, sd.toStorageLocationId, tl.code, " +
+           "sd.quantityChange, sd.status, sd.attempts, sd.lastError, sd.note) " +
+           "FROM SlipDetail sd " +
+           "LEFT JOIN sd.item i " +
+           "LEFT JOIN sd.fromWarehouse fw " +
+           "LEFT JOIN sd.fromStorageLocation fl " +
+           "LEFT JOIN sd.toWarehouse tw " +
+           "LEFT JOIN sd.toStorageLocation tl " +
+           "WHERE sd.slipId = :slipId ORDER BY sd.lineNumber")
+    List<SlipLineDto> findLinesBySlipId(@Param("slipId") Long slipId);
+    
     /**
      * 根據單據ID和商品ID查找明細
      */
@@ -116,4 +136,94 @@ public interface SlipDetailRepository extends JpaRepository<SlipDetail, Long> {
      * 檢查指定單據是否有指定狀態的明細
      */
     boolean existsBySlipIdAndStatus(Long slipId, SlipDetail.Status status);
-}
\ No newline at end of file
+    
+    /**
+     * 條件式更新明細狀態：僅在目前狀態符合時更新，用於處理前搶佔明細，避免重複處理
+     * @return 受影響筆數，0 表示狀態已被其他流程變更
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SlipDetail sd SET sd.status = :newStatus, sd.updatedAt = LOCAL DATETIME " +
+           "WHERE sd.id = :id AND sd.status = :expectedStatus")
+    int compareAndSetStatus(@Param("id") Long id,
+                            @Param("expectedStatus") SlipDetail.Status expectedStatus,
+                            @Param("newStatus") SlipDetail.Status newStatus);
+    
+    /**
+     * 依狀態分組統計指定單據的明細數量
+     * @return 每列為 [SlipDetail.Status, Long]
+     */
+    @Query("SELECT sd.status, COUNT(sd) FROM SlipDetail sd WHERE sd.slipId = :slipId GROUP BY sd.status")
+    List<Object[]> countGroupByStatusBySlipId(@Param("slipId") Long slipId);
+    
+    /**
+     * 統計已完成單據中仍待處理的明細數量（完成流程佇列長度）
+     */
+    @Query("SELECT COUNT(sd) FROM SlipDetail sd, Slip s " +
+           "WHERE s.id = sd.slipId AND s.status = :slipStatus AND sd.status = :status")
+    Long countBySlipStatusAndStatus(@Param("slipStatus") Byte slipStatus, @Param("status") SlipDetail.Status status);
+    
+    /**
+     * 查找仍有待處理明細的已完成單據ID
+     */
+    @Query("SELECT DISTINCT sd.slipId FROM SlipDetail sd, Slip s " +
+           "WHERE s.id = sd.slipId AND s.status = :slipStatus AND sd.status = :status")
+    List<Long> findSlipIdsBySlipStatusAndStatus(@Param("slipStatus") Byte slipStatus, @Param("status") SlipDetail.Status status);
+    
+    /**
+     * 單據出庫前檢查：依 (商品, 來源儲位) 加總指定狀態明細的需求量，與庫存一次比對
+     * 只回傳需求量大於現有庫存者
+     * @return 每列為 [商品ID, 來源儲位ID, 需求量, 現有庫存]
+     */
+    @Query("SELECT sd.itemId, sd.fromStorageLocationId, SUM(sd.quantityChange), COALESCE(MAX(st.quantity), 0) " +
+           "FROM SlipDetail sd LEFT JOIN Stock st " +
+           "ON st.itemId = sd.itemId AND st.storageLocationId = sd.fromStorageLocationId " +
+           "WHERE sd.slipId = :slipId AND sd.status = :status AND sd.fromStorageLocationId IS NOT NULL " +
+           "GROUP BY sd.itemId, sd.fromStorageLocationId " +
+           "HAVING SUM(sd.quantityChange) > COALESCE(MAX(st.quantity), 0)")
+    List<Object[]> findShortagesBySlipIdAndStatus(@Param("slipId") Long slipId, @Param("status") SlipDetail.Status status);
+    
+    /**
+     * 記錄處理失敗：條件式更新狀態並累加失敗次數、設定下次重試時間與錯誤訊息
+     * @return 受影響筆數，0 表示狀態已被其他流程變更
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SlipDetail sd SET sd.status = :newStatus, sd.attempts = sd.attempts + 1, " +
+           "sd.nextAttemptAt = :nextAttemptAt, sd.lastError = :lastError, sd.updatedAt = LOCAL DATETIME " +
+           "WHERE sd.id = :id AND sd.status = :expectedStatus")
+    int recordFailure(@Param("id") Long id,
+                      @Param("expectedStatus") SlipDetail.Status expectedStatus,
+                      @Param("newStatus") SlipDetail.Status newStatus,
+                      @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                      @Param("lastError") String lastError);
+    
+    /**
+     * 鎖定一批待重試的明細（已完成單據中到期的失敗明細，及長時間未更新的待處理明細）
+     * 以 FOR UPDATE SKIP LOCKED 略過其他實例或完成流程已鎖定的列，多個實例可同時輪詢而不互相等待
+     * 需在事務中呼叫，鎖定持續至事務結束
+     * @return 每列為 [明細ID, 單據類型]
+     */
+    @Query(value = "SELECT sd.id, s.slips_type FROM slip_details sd JOIN slips s ON s.id = sd.slip_id " +
+                   "WHERE s.status = :slipStatus " +
+                   "AND ((sd.status = :failedStatus AND sd.next_attempt_at <= :now) " +
+                   "OR (sd.status = :pendingStatus AND sd.updated_at < :staleBefore AND s.updated_at < :staleBefore)) " +
+                   "ORDER BY sd.id LIMIT :limit " +
+                   "FOR UPDATE OF sd SKIP LOCKED",
+           nativeQuery = true)
+    List<Object[]> lockRetryCandidates(@Param("slipStatus") byte slipStatus,
+                                       @Param("failedStatus") int failedStatus,
+                                       @Param("pendingStatus") int pendingStatus,
+                                       @Param("now") LocalDateTime now,
+                                       @Param("staleBefore") LocalDateTime staleBefore,
+                                       @Param("limit") int limit);
+    
+    /**
+     * 將已鎖定的重試明細轉回待處理並更新時間，作為處理租約：
+     * 處理中斷時明細於逾時後再次被視為滯留的待處理明細重新領取
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SlipDetail sd SET sd.status = :pendingStatus, sd.updatedAt = LOCAL DATETIME " +
+           "WHERE sd.id IN :ids AND sd.status IN :claimableStatuses")
+    int leaseForRetry(@Param("ids") Collection<Long> ids,
+                      @Param("claimableStatuses") Collection<SlipDetail.Status> claimableStatuses,
+                      @Param("pendingStatus") SlipDetail.Status pendingStatus);
+}
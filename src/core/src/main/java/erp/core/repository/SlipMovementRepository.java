@@ -1,7 +1,6 @@
 package erp.core.repository;
 
 import erp.core.entity.SlipMovement;
-import erp.core.entity.StockMovement;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -22,13 +21,6 @@ public interface SlipMovementRepository extends JpaRepository<SlipMovement, Long
      */
     List<SlipMovement> findByStockMovementId(Long stockMovementId);
     
-    /**
-     * 根據單據ID查找所有關聯的庫存異動記錄
-     * 這個方法替代了原來 StockMovementRepository.findBySlipId 的功能
-     */
-    @Query("SELECT sm.stockMovement FROM SlipMovement sm WHERE sm.slipId = :slipId")
-    List<StockMovement> findStockMovementsBySlipId(@Param("slipId") Long slipId);
-    
     /**
      * 根據庫存異動ID查找所有關聯的單據ID
      */
@@ -1,13 +1,17 @@
 package erp.core.repository;
 
+import erp.core.dto.SlipSummaryDto;
 import erp.core.entity.Slip;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface SlipRepository extends JpaRepository<Slip, Long> {
@@ -47,6 +51,22 @@ public interface SlipRepository extends JpaRepository<Slip, Long> {
      */
     List<Slip> findByCreatedByAndCreatedAtBetween(Long createdBy, LocalDateTime startDate, LocalDateTime endDate);
     
+    /**
+     * 鍵集分頁查詢單據摘要：取 (created_at, id) 大於游標的下一批（利用索引 idx_slips_created_at）
+     * 以投影回傳，不載入實體與關聯
+     */
+    @Query("SELECT new erp.core.dto.SlipSummaryDto(s.id, s.slipsType, s.createdBy, s.status, s.createdAt, s.updatedAt) " +
+           "FROM Slip s WHERE (s.createdAt > :createdAt OR (s.createdAt = :createdAt AND s.id > :id)) " +
+           "ORDER BY s.createdAt, s.id")
+    List<SlipSummaryDto> findSummaryPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
+    
+    /**
+     * 查詢單據摘要（投影）
+     */
+    @Query("SELECT new erp.core.dto.SlipSummaryDto(s.id, s.slipsType, s.createdBy, s.status, s.createdAt, s.updatedAt) " +
+           "FROM Slip s WHERE s.id = :id")
+    Optional<SlipSummaryDto> findSummaryById(@Param("id") Long id);
+    
     /**
      * 檢查指定建立人是否有未完成的單據
      */
@@ -79,4 +99,15 @@ public interface SlipRepository extends JpaRepository<Slip, Long> {
      */
     @Query("SELECT DISTINCT s.slipsType FROM Slip s WHERE s.slipsType IS NOT NULL ORDER BY s.slipsType")
     List<Byte> findAllDistinctSlipsTypes();
-}
\ No newline at end of file
+    
+    /**
+     * 條件式更新單據狀態：僅在目前狀態符合時更新，並發的狀態轉換只有一個呼叫端會成功
+     * @return 受影響筆數，0 表示單據不存在或狀態已被變更
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Slip s SET s.status = :newStatus, s.updatedAt = LOCAL DATETIME " +
+           "WHERE s.id = :id AND s.status = :expectedStatus")
+    int compareAndSetStatus(@Param("id") Long id,
+                            @Param("expectedStatus") Byte expectedStatus,
+                            @Param("newStatus") Byte newStatus);
+}
@@ -0,0 +1,76 @@
+package erp.core.repository;
+
+import erp.core.entity.StockMovement.MovementType;
+import erp.core.entity.StockMovementDailyRollup;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockMovementDailyRollupRepository extends JpaRepository<StockMovementDailyRollup, Long> {
+
+    /**
+     * 最後已彙總的異動日期（利用索引 idx_stock_movement_daily_rollups_movement_date）
+     */
+    @Query("SELECT MAX(r.movementDate) FROM StockMovementDailyRollup r")
+    LocalDate findLastMovementDate();
+
+    /**
+     * 刪除日期範圍 [from, to) 的彙總，重新彙總前呼叫
+     */
+    @Modifying
+    @Query("DELETE FROM StockMovementDailyRollup r WHERE r.movementDate >= :from AND r.movementDate < :to")
+    int deleteByMovementDateRange(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    /**
+     * 自 stock_movements 彙總時間範圍 [from, to) 的異動，每個 (日期, 商品, 倉庫, 儲位, 類型) 寫入一筆
+     * @return 寫入筆數
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stock_movement_daily_rollups"))
+    @Query(value = "INSERT INTO stock_movement_daily_rollups " +
+                   "(movement_date, item_id, warehouse_id, storage_location_id, type, quantity_change, movement_count, created_at) " +
+                   "SELECT DATE(created_at), item_id, warehouse_id, storage_location_id, type, " +
+                   "COALESCE(SUM(quantity_change), 0), COUNT(*), NOW(3) " +
+                   "FROM stock_movements WHERE created_at >= :from AND created_at < :to " +
+                   "GROUP BY DATE(created_at), item_id, warehouse_id, storage_location_id, type",
+           nativeQuery = true)
+    int insertFromMovements(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * 計算指定商品、異動類型的彙總數量合計（利用唯一索引 uk_stock_movement_daily_rollups_key 的 item_id 前綴）
+     */
+    @Query("SELECT COALESCE(SUM(r.quantityChange), 0) FROM StockMovementDailyRollup r WHERE r.itemId = :itemId AND r.type = :type")
+    BigDecimal sumQuantityByItemIdAndType(@Param("itemId") Long itemId, @Param("type") MovementType type);
+
+    /**
+     * 根據商品ID和倉庫ID計算彙總的淨異動量
+     */
+    @Query("SELECT COALESCE(SUM(CASE WHEN r.type = :inboundType THEN r.quantityChange ELSE -r.quantityChange END), 0) " +
+           "FROM StockMovementDailyRollup r WHERE r.itemId = :itemId AND r.warehouseId = :warehouseId")
+    BigDecimal getNetMovementByItemIdAndWarehouseId(@Param("itemId") Long itemId, @Param("warehouseId") Long warehouseId,
+                                                   @Param("inboundType") MovementType inboundType);
+
+    /**
+     * 根據商品ID和儲位ID計算彙總的淨異動量
+     */
+    @Query("SELECT COALESCE(SUM(CASE WHEN r.type = :inboundType THEN r.quantityChange ELSE -r.quantityChange END), 0) " +
+           "FROM StockMovementDailyRollup r WHERE r.itemId = :itemId AND r.storageLocationId = :storageLocationId")
+    BigDecimal getNetMovementByItemIdAndStorageLocationId(@Param("itemId") Long itemId, @Param("storageLocationId") Long storageLocationId,
+                                                         @Param("inboundType") MovementType inboundType);
+
+    /**
+     * 根據商品ID查找彙總記錄，依日期排序
+     */
+    List<StockMovementDailyRollup> findByItemIdOrderByMovementDate(Long itemId);
+}
@@ -2,132 +2,256 @@ package erp.core.repository;
 
 import erp.core.entity.StockMovement;
 import erp.core.entity.StockMovement.MovementType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
     
     /**
-     * 根據商品ID查找庫存異動記錄
+     * MySQL Connector/J 以 Integer.MIN_VALUE 作為 fetch size 時逐列串流結果集，不將整個結果載入記憶體
      */
-    List<StockMovement> findByItemId(Long itemId);
+    String STREAMING_FETCH_SIZE = "-2147483648";
     
+    // 歷史異動查詢一律經由 StockMovementArchive：早於冷熱分界時間的異動已搬移至 stock_movements_archive，
+    // 下列 findPage*/stream* 僅讀取熱資料表，直接呼叫會遺漏已歸檔的記錄
     /**
-     * 根據倉庫ID查找庫存異動記錄
+     * 鍵集分頁查詢指定商品的異動記錄：取 (created_at, id) 大於游標的下一批（利用索引 idx_stock_movements_item_created）
      */
-    List<StockMovement> findByWarehouseId(Long warehouseId);
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.itemId = :itemId AND (sm.createdAt > :createdAt OR (sm.createdAt = :createdAt AND sm.id > :id)) ORDER BY sm.createdAt, sm.id")
+    List<StockMovement> findPageByItemIdAfter(@Param("itemId") Long itemId,
+                                              @Param("createdAt") LocalDateTime createdAt,
+                                              @Param("id") Long id,
+                                              Limit limit);
     
     /**
-     * 根據儲位ID查找庫存異動記錄
+     * 鍵集分頁查詢指定儲位的異動記錄（利用索引 idx_stock_movements_storage_location_id）
      */
-    List<StockMovement> findByStorageLocationId(Long storageLocationId);
-    
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.storageLocationId = :storageLocationId AND (sm.createdAt > :createdAt OR (sm.createdAt = :createdAt AND sm.id > :id)) " +
+           "ORDER BY sm.createdAt, sm.id")
+    List<StockMovement> findPageByStorageLocationIdAfter(@Param("storageLocationId") Long storageLocationId,
+                                                         @Param("createdAt") LocalDateTime createdAt,
+                                                         @Param("id") Long id,
+                                                         Limit limit);
     
     /**
-     * 根據異動類型查找記錄 (INBOUND=入庫, OUTBOUND=出庫)
+     * 鍵集分頁查詢指定單據產生的異動記錄
      */
-    List<StockMovement> findByType(MovementType type);
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.sourceSlipId = :sourceSlipId AND (sm.createdAt > :createdAt OR (sm.createdAt = :createdAt AND sm.id > :id)) ORDER BY sm.createdAt, sm.id")
+    List<StockMovement> findPageBySourceSlipIdAfter(@Param("sourceSlipId") Long sourceSlipId,
+                                                    @Param("createdAt") LocalDateTime createdAt,
+                                                    @Param("id") Long id,
+                                                    Limit limit);
     
+    // 匯出用串流查詢：逐列讀取、唯讀且不使用查詢快取，呼叫端須在事務中以 try-with-resources 關閉串流
     /**
-     * 根據商品ID和倉庫ID查找庫存異動記錄
+     * 串流查詢時間範圍內 [from, to) 的異動記錄（利用索引 idx_stock_movements_created_at）
      */
-    List<StockMovement> findByItemIdAndWarehouseId(Long itemId, Long warehouseId);
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.createdAt >= :from AND sm.createdAt < :to ORDER BY sm.createdAt, sm.id")
+    Stream<StockMovement> streamByCreatedAtRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
     
     /**
-     * 根據商品ID和儲位ID查找庫存異動記錄
+     * 串流查詢指定商品在時間範圍內的異動記錄（利用索引 idx_stock_movements_item_created）
      */
-    List<StockMovement> findByItemIdAndStorageLocationId(Long itemId, Long storageLocationId);
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.itemId = :itemId " +
+           "AND sm.createdAt >= :from AND sm.createdAt < :to ORDER BY sm.createdAt, sm.id")
+    Stream<StockMovement> streamByItemIdAndCreatedAtRange(@Param("itemId") Long itemId,
+                                                          @Param("from") LocalDateTime from,
+                                                          @Param("to") LocalDateTime to);
     
     /**
-     * 根據商品ID和異動類型查找記錄
+     * 串流查詢指定儲位在時間範圍內的異動記錄（利用索引 idx_stock_movements_storage_location_id）
      */
-    List<StockMovement> findByItemIdAndType(Long itemId, MovementType type);
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.storageLocationId = :storageLocationId " +
+           "AND sm.createdAt >= :from AND sm.createdAt < :to ORDER BY sm.createdAt, sm.id")
+    Stream<StockMovement> streamByStorageLocationIdAndCreatedAtRange(@Param("storageLocationId") Long storageLocationId,
+                                                                     @Param("from") LocalDateTime from,
+                                                                     @Param("to") LocalDateTime to);
     
     /**
-     * 根據時間範圍查找庫存異動記錄
+     * 串流查詢指定商品在指定儲位、時間範圍內的異動記錄
      */
-    List<StockMovement> findByCreatedAtBetween(LocalDateTime startDate, LocalDateTime endDate);
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.storageLocationId = :storageLocationId " +
+           "AND sm.createdAt >= :from AND sm.createdAt < :to ORDER BY sm.createdAt, sm.id")
+    Stream<StockMovement> streamByItemIdAndStorageLocationIdAndCreatedAtRange(@Param("itemId") Long itemId,
+                                                                              @Param("storageLocationId") Long storageLocationId,
+                                                                              @Param("from") LocalDateTime from,
+                                                                              @Param("to") LocalDateTime to);
     
+    // 冷資料表 stock_movements_archive 查詢：僅在查詢範圍早於冷熱分界時間時由 StockMovementArchive 呼叫，
+    // 結果對應為唯讀的 StockMovement，查詢條件皆限定 created_at < 分界時間
     /**
-     * 根據商品ID和時間範圍查找記錄
+     * 鍵集分頁查詢冷資料表中指定商品的異動記錄（利用索引 idx_stock_movements_archive_item_created）
      */
-    List<StockMovement> findByItemIdAndCreatedAtBetween(Long itemId, LocalDateTime startDate, LocalDateTime endDate);
-    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(value = "SELECT * FROM stock_movements_archive WHERE item_id = :itemId AND created_at < :before " +
+                   "AND (created_at > :createdAt OR (created_at = :createdAt AND id > :id)) ORDER BY created_at, id LIMIT :limit",
+           nativeQuery = true)
+    List<StockMovement> findArchivedPageByItemIdAfter(@Param("itemId") Long itemId,
+                                                      @Param("createdAt") LocalDateTime createdAt,
+                                                      @Param("id") Long id,
+                                                      @Param("before") LocalDateTime before,
+                                                      @Param("limit") int limit);
+
     /**
-     * 查找指定商品的入庫記錄
+     * 鍵集分頁查詢冷資料表中指定儲位的異動記錄（利用索引 idx_stock_movements_archive_storage_location_id）
      */
-    @Query("SELECT sm FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.type = :inboundType ORDER BY sm.createdAt DESC")
-    List<StockMovement> findInboundMovementsByItemId(@Param("itemId") Long itemId, @Param("inboundType") MovementType inboundType);
-    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(value = "SELECT * FROM stock_movements_archive WHERE storage_location_id = :storageLocationId AND created_at < :before " +
+                   "AND (created_at > :createdAt OR (created_at = :createdAt AND id > :id)) ORDER BY created_at, id LIMIT :limit",
+           nativeQuery = true)
+    List<StockMovement> findArchivedPageByStorageLocationIdAfter(@Param("storageLocationId") Long storageLocationId,
+                                                                 @Param("createdAt") LocalDateTime createdAt,
+                                                                 @Param("id") Long id,
+                                                                 @Param("before") LocalDateTime before,
+                                                                 @Param("limit") int limit);
+
     /**
-     * 查找指定商品的出庫記錄
+     * 鍵集分頁查詢冷資料表中指定單據產生的異動記錄（利用索引 idx_stock_movements_archive_source_slip）
      */
-    @Query("SELECT sm FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.type = :outboundType ORDER BY sm.createdAt DESC")
-    List<StockMovement> findOutboundMovementsByItemId(@Param("itemId") Long itemId, @Param("outboundType") MovementType outboundType);
-    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(value = "SELECT * FROM stock_movements_archive WHERE source_slip_id = :sourceSlipId AND created_at < :before " +
+                   "AND (created_at > :createdAt OR (created_at = :createdAt AND id > :id)) ORDER BY created_at, id LIMIT :limit",
+           nativeQuery = true)
+    List<StockMovement> findArchivedPageBySourceSlipIdAfter(@Param("sourceSlipId") Long sourceSlipId,
+                                                            @Param("createdAt") LocalDateTime createdAt,
+                                                            @Param("id") Long id,
+                                                            @Param("before") LocalDateTime before,
+                                                            @Param("limit") int limit);
+
     /**
-     * 計算指定商品的總入庫量
+     * 串流查詢冷資料表中時間範圍內 [from, to) 的異動記錄（利用索引 idx_stock_movements_archive_created_at）
      */
-    @Query("SELECT COALESCE(SUM(sm.quantityChange), 0) FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.type = :inboundType")
-    BigDecimal getTotalInboundQuantityByItemId(@Param("itemId") Long itemId, @Param("inboundType") MovementType inboundType);
-    
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = "SELECT * FROM stock_movements_archive WHERE created_at >= :from AND created_at < :to ORDER BY created_at, id",
+           nativeQuery = true)
+    Stream<StockMovement> streamArchivedByCreatedAtRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
     /**
-     * 計算指定商品的總出庫量
+     * 串流查詢冷資料表中指定商品在時間範圍內的異動記錄
      */
-    @Query("SELECT COALESCE(SUM(sm.quantityChange), 0) FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.type = :outboundType")
-    BigDecimal getTotalOutboundQuantityByItemId(@Param("itemId") Long itemId, @Param("outboundType") MovementType outboundType);
-    
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = "SELECT * FROM stock_movements_archive WHERE item_id = :itemId " +
+                   "AND created_at >= :from AND created_at < :to ORDER BY created_at, id",
+           nativeQuery = true)
+    Stream<StockMovement> streamArchivedByItemIdAndCreatedAtRange(@Param("itemId") Long itemId,
+                                                                  @Param("from") LocalDateTime from,
+                                                                  @Param("to") LocalDateTime to);
+
     /**
-     * 根據商品ID和倉庫ID計算淨異動量
+     * 串流查詢冷資料表中指定儲位在時間範圍內的異動記錄
      */
-    @Query("SELECT COALESCE(SUM(CASE WHEN sm.type = :inboundType THEN sm.quantityChange ELSE -sm.quantityChange END), 0) " +
-           "FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.warehouseId = :warehouseId")
-    BigDecimal getNetMovementByItemIdAndWarehouseId(@Param("itemId") Long itemId, @Param("warehouseId") Long warehouseId, @Param("inboundType") MovementType inboundType);
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = "SELECT * FROM stock_movements_archive WHERE storage_location_id = :storageLocationId " +
+                   "AND created_at >= :from AND created_at < :to ORDER BY created_at, id",
+           nativeQuery = true)
+    Stream<StockMovement> streamArchivedByStorageLocationIdAndCreatedAtRange(@Param("storageLocationId") Long storageLocationId,
+                                                                             @Param("from") LocalDateTime from,
+                                                                             @Param("to") LocalDateTime to);
+
+    /**
+     * 串流查詢冷資料表中指定商品在指定儲位、時間範圍內的異動記錄
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = "SELECT * FROM stock_movements_archive WHERE item_id = :itemId AND storage_location_id = :storageLocationId " +
+                   "AND created_at >= :from AND created_at < :to ORDER BY created_at, id",
+           nativeQuery = true)
+    Stream<StockMovement> streamArchivedByItemIdAndStorageLocationIdAndCreatedAtRange(@Param("itemId") Long itemId,
+                                                                                      @Param("storageLocationId") Long storageLocationId,
+                                                                                      @Param("from") LocalDateTime from,
+                                                                                      @Param("to") LocalDateTime to);
+
+    // 合計查詢只讀取尚未彙總的尾端（created_at >= :from），之前的日期由 stock_movement_daily_rollups 提供，
+    // 見 StockMovementRollupService（利用索引 idx_stock_movements_item_created）
+    /**
+     * 計算指定商品自指定時間起的總入庫量
+     */
+    @Query("SELECT COALESCE(SUM(sm.quantityChange), 0) FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.type = :inboundType " +
+           "AND sm.createdAt >= :from")
+    BigDecimal getTotalInboundQuantityByItemIdSince(@Param("itemId") Long itemId, @Param("inboundType") MovementType inboundType,
+                                                    @Param("from") LocalDateTime from);
     
     /**
-     * 根據商品ID和儲位ID計算淨異動量
+     * 計算指定商品自指定時間起的總出庫量
      */
-    @Query("SELECT COALESCE(SUM(CASE WHEN sm.type = :inboundType THEN sm.quantityChange ELSE -sm.quantityChange END), 0) " +
-           "FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.storageLocationId = :storageLocationId")
-    BigDecimal getNetMovementByItemIdAndStorageLocationId(@Param("itemId") Long itemId, @Param("storageLocationId") Long storageLocationId, @Param("inboundType") MovementType inboundType);
+    @Query("SELECT COALESCE(SUM(sm.quantityChange), 0) FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.type = :outboundType " +
+           "AND sm.createdAt >= :from")
+    BigDecimal getTotalOutboundQuantityByItemIdSince(@Param("itemId") Long itemId, @Param("outboundType") MovementType outboundType,
+                                                     @Param("from") LocalDateTime from);
     
     /**
-     * 查找最近的N筆異動記錄
+     * 根據商品ID和倉庫ID計算自指定時間起的淨異動量
      */
-    List<StockMovement> findTop10ByOrderByCreatedAtDesc();
+    @Query("SELECT COALESCE(SUM(CASE WHEN sm.type = :inboundType THEN sm.quantityChange ELSE -sm.quantityChange END), 0) " +
+           "FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.warehouseId = :warehouseId AND sm.createdAt >= :from")
+    BigDecimal getNetMovementByItemIdAndWarehouseIdSince(@Param("itemId") Long itemId, @Param("warehouseId") Long warehouseId,
+                                                         @Param("inboundType") MovementType inboundType, @Param("from") LocalDateTime from);
     
     /**
-     * 根據商品ID查找最近的N筆異動記錄
+     * 根據商品ID和儲位ID計算自指定時間起的淨異動量
      */
-    List<StockMovement> findTop10ByItemIdOrderByCreatedAtDesc(Long itemId);
+    @Query("SELECT COALESCE(SUM(CASE WHEN sm.type = :inboundType THEN sm.quantityChange ELSE -sm.quantityChange END), 0) " +
+           "FROM StockMovement sm WHERE sm.itemId = :itemId AND sm.storageLocationId = :storageLocationId AND sm.createdAt >= :from")
+    BigDecimal getNetMovementByItemIdAndStorageLocationIdSince(@Param("itemId") Long itemId, @Param("storageLocationId") Long storageLocationId,
+                                                               @Param("inboundType") MovementType inboundType, @Param("from") LocalDateTime from);
     
     /**
-     * 查找所有不同的倉庫ID
+     * 最早的異動時間（利用索引 idx_stock_movements_created_at）
      */
-    @Query("SELECT DISTINCT sm.warehouseId FROM StockMovement sm WHERE sm.warehouseId IS NOT NULL ORDER BY sm.warehouseId")
-    List<Long> findAllDistinctWarehouseIds();
+    @Query("SELECT MIN(sm.createdAt) FROM StockMovement sm")
+    LocalDateTime findEarliestCreatedAt();
     
+    // 最近的異動必定位於熱資料表（歸檔只搬移早於冷熱分界時間的分區），可直接查詢
     /**
-     * 查找所有不同的儲位ID
+     * 查找最近的N筆異動記錄
      */
-    @Query("SELECT DISTINCT sm.storageLocationId FROM StockMovement sm WHERE sm.storageLocationId IS NOT NULL ORDER BY sm.storageLocationId")
-    List<Long> findAllDistinctStorageLocationIds();
+    List<StockMovement> findTop10ByOrderByCreatedAtDesc();
     
-    // 向後兼容方法 - 為了支持現有的 WarehouseManagementService
     /**
-     * @deprecated 使用 findByWarehouseId 或 findByStorageLocationId 替代
+     * 根據商品ID查找最近的N筆異動記錄
      */
-    @Deprecated
-    default List<StockMovement> findByLocation(String location) {
-        // 這個方法為了向後兼容而保留，實際上應該根據業務邏輯決定如何處理
-        // 暫時返回空列表，避免編譯錯誤
-        return java.util.Collections.emptyList();
-    }
-}
\ No newline at end of file
+    List<StockMovement> findTop10ByItemIdOrderByCreatedAtDesc(Long itemId);
+}
@@ -1,12 +1,21 @@
 package erp.core.repository;
 
 import erp.core.entity.Stock;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,6 +47,59 @@ public interface StockRepository extends JpaRepository<Stock, Long> {
      */
     Optional<Stock> findByItemIdAndStorageLocationId(Long itemId, Long storageLocationId);
     
+    /**
+     * 以 SELECT ... FOR UPDATE 一次鎖定同一商品在多個儲位的庫存
+     * 依 storage_location_id 排序取得行鎖，所有呼叫者以相同順序加鎖，避免互相等待造成死鎖
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Stock s WHERE s.itemId = :itemId AND s.storageLocationId IN :storageLocationIds " +
+           "ORDER BY s.storageLocationId")
+    List<Stock> lockByItemIdAndStorageLocationIds(@Param("itemId") Long itemId,
+                                                 @Param("storageLocationIds") Collection<Long> storageLocationIds);
+    
+    /**
+     * 條件式扣減庫存：僅在庫存足夠時以單一 UPDATE 扣減
+     * @return 受影響筆數，0 表示庫存記錄不存在或庫存不足
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Stock s SET s.quantity = s.quantity - :quantity, s.updatedAt = LOCAL DATETIME " +
+           "WHERE s.itemId = :itemId AND s.storageLocationId = :storageLocationId AND s.quantity >= :quantity")
+    int decreaseQuantityIfSufficient(@Param("itemId") Long itemId,
+                                     @Param("storageLocationId") Long storageLocationId,
+                                     @Param("quantity") BigDecimal quantity);
+    
+    /**
+     * 增加庫存：以 INSERT ... ON DUPLICATE KEY UPDATE 單一語句完成，
+     * 記錄不存在時新增，存在時累加（依賴 uk_stocks_item_storage_location 唯一鍵）
+     * 以 native spaces 提示宣告只影響 stocks，避免 Hibernate 因原生語句清空整個二級快取
+     * @return MySQL 回傳的受影響筆數（新增=1，更新=2）
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stocks"))
+    @Query(value = "INSERT INTO stocks (item_id, warehouse_id, storage_location_id, quantity, created_at, updated_at) " +
+                   "VALUES (:itemId, :warehouseId, :storageLocationId, :quantity, NOW(3), NOW(3)) " +
+                   "ON DUPLICATE KEY UPDATE quantity = quantity + :quantity, updated_at = NOW(3)",
+           nativeQuery = true)
+    int increaseQuantityOrInsert(@Param("itemId") Long itemId,
+                                 @Param("warehouseId") Long warehouseId,
+                                 @Param("storageLocationId") Long storageLocationId,
+                                 @Param("quantity") BigDecimal quantity);
+    
+    /**
+     * 庫存記錄不存在時以零數量建立，存在時不變更（ON DUPLICATE KEY UPDATE id = id）
+     * 轉庫與批次操作於 SELECT ... FOR UPDATE 之前依序呼叫，使鎖定讀取只落在既有記錄上，
+     * 避免兩個事務各自持有間隙鎖後再插入而互相等待插入意向鎖
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stocks"))
+    @Query(value = "INSERT INTO stocks (item_id, warehouse_id, storage_location_id, quantity, created_at, updated_at) " +
+                   "VALUES (:itemId, :warehouseId, :storageLocationId, 0, NOW(3), NOW(3)) " +
+                   "ON DUPLICATE KEY UPDATE id = id",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("itemId") Long itemId,
+                       @Param("warehouseId") Long warehouseId,
+                       @Param("storageLocationId") Long storageLocationId);
+    
     /**
      * 檢查指定商品和儲位的庫存是否存在
      */
@@ -59,6 +121,41 @@ public interface StockRepository extends JpaRepository<Stock, Long> {
     @Query("SELECT s FROM Stock s WHERE s.quantity = 0")
     List<Stock> findZeroStocks();
     
+    /**
+     * 鍵集分頁查詢指定商品的庫存：取 (created_at, id) 大於游標的下一批
+     */
+    @Query("SELECT s FROM Stock s WHERE s.itemId = :itemId AND (s.createdAt > :createdAt OR (s.createdAt = :createdAt AND s.id > :id)) ORDER BY s.createdAt, s.id")
+    List<Stock> findPageByItemIdAfter(@Param("itemId") Long itemId,
+                                      @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("id") Long id,
+                                      Limit limit);
+    
+    /**
+     * 鍵集分頁查詢指定儲位的庫存
+     */
+    @Query("SELECT s FROM Stock s WHERE s.storageLocationId = :storageLocationId AND (s.createdAt > :createdAt OR (s.createdAt = :createdAt AND s.id > :id)) ORDER BY s.createdAt, s.id")
+    List<Stock> findPageByStorageLocationIdAfter(@Param("storageLocationId") Long storageLocationId,
+                                                 @Param("createdAt") LocalDateTime createdAt,
+                                                 @Param("id") Long id,
+                                                 Limit limit);
+    
+    /**
+     * 鍵集分頁查詢庫存數量小於指定值的記錄
+     */
+    @Query("SELECT s FROM Stock s WHERE s.quantity < :quantity AND (s.createdAt > :createdAt OR (s.createdAt = :createdAt AND s.id > :id)) ORDER BY s.createdAt, s.id")
+    List<Stock> findPageByQuantityLessThanAfter(@Param("quantity") BigDecimal quantity,
+                                                @Param("createdAt") LocalDateTime createdAt,
+                                                @Param("id") Long id,
+                                                Limit limit);
+    
+    /**
+     * 鍵集分頁查詢庫存為零的記錄
+     */
+    @Query("SELECT s FROM Stock s WHERE s.quantity = 0 AND (s.createdAt > :createdAt OR (s.createdAt = :createdAt AND s.id > :id)) ORDER BY s.createdAt, s.id")
+    List<Stock> findZeroStocksPageAfter(@Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") Long id,
+                                        Limit limit);
+    
     /**
      * 根據商品ID計算總庫存量
      */
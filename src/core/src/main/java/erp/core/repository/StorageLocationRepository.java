@@ -1,8 +1,11 @@
 package erp.core.repository;
 
 import erp.core.entity.StorageLocation;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -21,6 +24,10 @@ public interface StorageLocationRepository extends JpaRepository<StorageLocation
     /**
      * 根據儲位編號查找儲位
      */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "reference-query")
+    })
     Optional<StorageLocation> findByCode(String code);
     
     /**
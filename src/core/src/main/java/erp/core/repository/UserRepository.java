@@ -1,8 +1,11 @@
 package erp.core.repository;
 
 import erp.core.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -57,6 +60,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * 查找啟用狀態的使用者
      */
     @Query("SELECT u FROM User u WHERE u.status = 1 ORDER BY u.name")
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "reference-query")
+    })
     List<User> findActiveUsers();
     
     /**
@@ -1,8 +1,11 @@
 package erp.core.repository;
 
 import erp.core.entity.Warehouse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -78,6 +81,10 @@ public interface WarehouseRepository extends JpaRepository<Warehouse, Long> {
      * 查找啟用狀態的倉庫
      */
     @Query("SELECT w FROM Warehouse w WHERE w.status = 1 ORDER BY w.name")
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "reference-query")
+    })
     List<Warehouse> findActiveWarehouses();
     
     /**
@@ -0,0 +1,202 @@
+package erp.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import erp.core.entity.OutboxEvent.EventType;
+import erp.core.service.SlipService.SlipType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.stream.StreamListener;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 庫存事件消費者
+ * 以 Redis Stream 消費者群組讀取發件匣事件，多個實例加入同一群組時各自分得不同訊息；
+ * 處理成功才 XACK，處理失敗的訊息留在群組的待確認清單中。
+ * 單據完成事件送入本機的單據完成流程，本機處理佇列已滿時不確認，由接收事件的節點自行判斷容量；
+ * 待確認清單中閒置超過時限的訊息（處理失敗、被拒或原消費者已停止）由任一實例以 XCLAIM 接手重新處理，
+ * 重送次數超過上限時記錄錯誤並確認，單據明細仍為待處理，由 SlipDetailRetryWorker 領取滯留明細處理。
+ * 明細處理以條件式搶佔保證重複事件不會重複異動庫存
+ */
+@Component
+@ConditionalOnProperty(name = {"erp.outbox.enabled", "erp.outbox.relay.enabled"}, havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class InventoryEventConsumer implements StreamListener<String, MapRecord<String, String, String>> {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final SlipCompletionPipeline slipCompletionPipeline;
+    private final ObjectMapper objectMapper;
+    private final String streamKey;
+    private final String consumerGroup;
+    private final String consumerName;
+    private final Duration reclaimMinIdle;
+    private final int reclaimBatchSize;
+    private final long maxDeliveries;
+
+    private StreamMessageListenerContainer<String, MapRecord<String, String, String>> container;
+
+    public InventoryEventConsumer(StringRedisTemplate redisTemplate,
+                                  RedisConnectionFactory connectionFactory,
+                                  SlipCompletionPipeline slipCompletionPipeline,
+                                  ObjectMapper objectMapper,
+                                  @Value("${erp.outbox.stream-key:erp:inventory-events}") String streamKey,
+                                  @Value("${erp.outbox.consumer-group:erp-core}") String consumerGroup,
+                                  @Value("${erp.outbox.consumer-name:}") String consumerName,
+                                  @Value("${erp.outbox.reclaim.min-idle-ms:60000}") long reclaimMinIdleMs,
+                                  @Value("${erp.outbox.reclaim.batch-size:100}") int reclaimBatchSize,
+                                  @Value("${erp.outbox.reclaim.max-deliveries:20}") long maxDeliveries) {
+        this.redisTemplate = redisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.slipCompletionPipeline = slipCompletionPipeline;
+        this.objectMapper = objectMapper;
+        this.streamKey = streamKey;
+        this.consumerGroup = consumerGroup;
+        // 未指定時以主機名稱區分同一群組內的實例，重啟後沿用同一名稱，不會留下無人認領的待確認訊息
+        this.consumerName = consumerName.isBlank() ? defaultConsumerName() : consumerName;
+        this.reclaimMinIdle = Duration.ofMillis(reclaimMinIdleMs);
+        this.reclaimBatchSize = reclaimBatchSize;
+        this.maxDeliveries = maxDeliveries;
+    }
+
+    private static String defaultConsumerName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            String hostname = System.getenv("HOSTNAME");
+            return hostname != null && !hostname.isBlank() ? hostname : "erp-core";
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            redisTemplate.opsForStream().createGroup(streamKey, ReadOffset.from("0"), consumerGroup);
+        } catch (RuntimeException e) {
+            // 群組已存在（BUSYGROUP）時沿用
+            log.debug("消費者群組已存在 - 串流: {}, 群組: {}", streamKey, consumerGroup);
+        }
+
+        StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainerOptions.builder()
+                        .pollTimeout(Duration.ofSeconds(2))
+                        .batchSize(50)
+                        .build();
+        container = StreamMessageListenerContainer.create(connectionFactory, options);
+        container.register(StreamReadRequest.builder(StreamOffset.create(streamKey, ReadOffset.lastConsumed()))
+                .consumer(Consumer.from(consumerGroup, consumerName))
+                .autoAcknowledge(false)
+                .cancelOnError(e -> false)
+                .build(), this);
+        container.start();
+
+        log.info("庫存事件消費者已啟動 - 串流: {}, 群組: {}, 消費者: {}", streamKey, consumerGroup, consumerName);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Override
+    public void onMessage(MapRecord<String, String, String> message) {
+        handle(message.getId(), message.getValue());
+    }
+
+    /**
+     * 處理事件，成功才確認；失敗或被拒時保留於待確認清單
+     */
+    private void handle(RecordId recordId, Map<String, String> values) {
+        String eventId = values.get("eventId");
+        try {
+            EventType eventType = EventType.valueOf(values.get("eventType"));
+            JsonNode payload = objectMapper.readTree(values.get("payload"));
+
+            switch (eventType) {
+                case SLIP_COMPLETED -> handleSlipCompleted(payload);
+                // 已停止寫入，僅確認先前寫入、仍在串流中的事件
+                case STOCK_CHANGED -> log.debug("略過庫存異動事件 - 事件ID: {}", eventId);
+            }
+
+            redisTemplate.opsForStream().acknowledge(streamKey, consumerGroup, recordId);
+        } catch (Exception e) {
+            log.error("處理庫存事件失敗，保留待確認 - 事件ID: {}, 錯誤: {}", eventId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 定期接手待確認清單中閒置超過時限的訊息並重新處理
+     * XCLAIM 僅在訊息仍閒置超過時限時轉移，多個實例同時接手同一訊息只有一個會成功
+     */
+    @Scheduled(fixedDelayString = "${erp.outbox.reclaim.interval-ms:30000}",
+               initialDelayString = "${erp.outbox.reclaim.interval-ms:30000}")
+    public void reclaimPending() {
+        try {
+            PendingMessages pendingMessages = redisTemplate.opsForStream()
+                    .pending(streamKey, consumerGroup, Range.unbounded(), reclaimBatchSize);
+            int reclaimed = 0;
+            for (PendingMessage pending : pendingMessages) {
+                if (pending.getElapsedTimeSinceLastDelivery().compareTo(reclaimMinIdle) < 0) {
+                    continue;
+                }
+                if (pending.getTotalDeliveryCount() > maxDeliveries) {
+                    redisTemplate.opsForStream().acknowledge(streamKey, consumerGroup, pending.getId());
+                    log.error("庫存事件重送次數超過上限，放棄並確認 - 訊息ID: {}, 重送次數: {}",
+                            pending.getIdAsString(), pending.getTotalDeliveryCount());
+                    continue;
+                }
+
+                List<MapRecord<String, Object, Object>> claimed = redisTemplate.opsForStream()
+                        .claim(streamKey, consumerGroup, consumerName, reclaimMinIdle, pending.getId());
+                for (MapRecord<String, Object, Object> record : claimed) {
+                    Map<String, String> values = new HashMap<>();
+                    record.getValue().forEach((field, value) -> values.put(String.valueOf(field), String.valueOf(value)));
+                    handle(record.getId(), values);
+                    reclaimed++;
+                }
+            }
+
+            if (reclaimed > 0) {
+                log.info("已接手閒置的待確認庫存事件 - 數量: {}, 消費者: {}", reclaimed, consumerName);
+            }
+        } catch (RuntimeException e) {
+            log.error("接手待確認庫存事件失敗 - 錯誤: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 單據完成：有待處理明細時送入本機單據完成流程，佇列已滿時拋出例外，訊息不確認
+     */
+    private void handleSlipCompleted(JsonNode payload) {
+        if (payload.path("pendingDetails").asLong() <= 0) {
+            return;
+        }
+        slipCompletionPipeline.submitNow(payload.path("slipId").asLong(), SlipType.valueOf(payload.path("slipType").asText()));
+    }
+}
@@ -0,0 +1,420 @@
+package erp.core.service;
+
+import erp.core.entity.Item;
+import erp.core.repository.ItemRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 商品名稱搜尋索引
+ * 商品名稱以中文為主，MySQL 預設斷詞無效，LIKE '%x%' 又必須全表掃描；
+ * 此元件在記憶體中以單字與相鄰二字（bigram）建立倒排索引，搜尋時只讀取查詢字串各 gram 的
+ * 倒排清單並計分排序，耗時取決於命中的候選數而非商品總數。
+ * 商品新增、修改、刪除時由 ItemEntityListener 即時更新，事務回滾時自資料庫重新讀取該商品；
+ * 另以 TTL 定期重建，涵蓋其他實例或直接修改資料庫的情況。
+ * 重建於背景執行緒以獨立唯讀事務載入，完成後整體替換，期間搜尋沿用目前索引，不阻塞請求執行緒；
+ * 重建期間的異動同時記錄，於替換前套用在新索引上。
+ * 同一索引另以依正規化名稱排序的跳表提供前綴自動完成，以 ceiling 定位後依序取前 K 筆，不查詢資料庫
+ */
+@Component
+@Slf4j
+public class ItemSearchIndex {
+
+    /**
+     * 搜尋結果
+     * @param itemId 商品ID
+     * @param score 相關度，越大越相關
+     */
+    public record Hit(Long itemId, int score) {
+    }
+
+    /**
+     * 自動完成結果
+     * @param itemId 商品ID
+     * @param name 商品名稱（原始名稱）
+     */
+    public record Suggestion(Long itemId, String name) {
+    }
+
+    /**
+     * 索引內容：gram → 商品ID、商品ID → 正規化名稱，及 (正規化名稱, 商品ID) 排序的自動完成表
+     */
+    private record Segment(Map<String, Set<Long>> postings, Map<Long, String> names,
+                           NavigableMap<String, Suggestion> prefixes, long loadedAtMillis) {
+    }
+
+    private record Candidate(Long itemId, int score, int nameLength) {
+    }
+
+    // 自動完成鍵：正規化名稱 + 分隔字元 + 商品ID，分隔字元小於任何字元，名稱完全相同者排在最前
+    private static final char PREFIX_KEY_SEPARATOR = '\u0000';
+
+    // 相關度權重：完全相同 > 開頭相符 > 包含查詢字串 > 命中的 gram 數
+    private static final int EXACT_BONUS = 1_000_000;
+    private static final int PREFIX_BONUS = 100_000;
+    private static final int CONTAINS_BONUS = 10_000;
+
+    private final ItemRepository itemRepository;
+    private final TransactionTemplate loadTransactionTemplate;
+    private final ThreadPoolTaskExecutor rebuildExecutor;
+    private final long ttlMillis;
+
+    private volatile Segment segment = emptySegment(0L);
+    private volatile boolean invalidated = true;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    /**
+     * 重建期間的異動，重建完成前套用於新索引；未重建時為 null（由 this 保護）
+     */
+    private List<Consumer<Segment>> changesDuringRebuild;
+
+    public ItemSearchIndex(ItemRepository itemRepository,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${erp.item-search.ttl-seconds:600}") long ttlSeconds) {
+        this.itemRepository = itemRepository;
+        this.loadTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.loadTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.loadTransactionTemplate.setReadOnly(true);
+        this.ttlMillis = ttlSeconds * 1000;
+
+        this.rebuildExecutor = new ThreadPoolTaskExecutor();
+        this.rebuildExecutor.setCorePoolSize(1);
+        this.rebuildExecutor.setMaxPoolSize(1);
+        this.rebuildExecutor.setQueueCapacity(1);
+        this.rebuildExecutor.setThreadNamePrefix("item-search-rebuild-");
+        this.rebuildExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdown();
+    }
+
+    //region 搜尋
+    /**
+     * 依相關度搜尋商品
+     * 查詢字串完整包含於名稱者必定列入；否則需命中至少一半的 gram
+     * @param query 查詢字串
+     * @param limit 最多回傳筆數
+     * @return 依相關度排序的結果，同分時名稱較短、ID 較小者在前
+     */
+    public List<Hit> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        Segment current = current();
+        Set<String> queryGrams = queryGrams(normalized);
+        Map<Long, Integer> matchedGrams = new HashMap<>();
+        for (String gram : queryGrams) {
+            Set<Long> ids = current.postings().get(gram);
+            if (ids != null) {
+                for (Long id : ids) {
+                    matchedGrams.merge(id, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : matchedGrams.entrySet()) {
+            String name = current.names().get(entry.getKey());
+            if (name == null) {
+                continue;
+            }
+            int matched = entry.getValue();
+            boolean contains = name.contains(normalized);
+            if (!contains && matched * 2 < queryGrams.size()) {
+                continue;
+            }
+
+            int score = matched;
+            if (name.equals(normalized)) {
+                score += EXACT_BONUS;
+            } else if (name.startsWith(normalized)) {
+                score += PREFIX_BONUS;
+            } else if (contains) {
+                score += CONTAINS_BONUS;
+            }
+            candidates.add(new Candidate(entry.getKey(), score, name.length()));
+        }
+
+        return candidates.stream()
+                .sorted(Comparator.comparingInt(Candidate::score).reversed()
+                        .thenComparingInt(Candidate::nameLength)
+                        .thenComparing(Candidate::itemId))
+                .limit(limit)
+                .map(candidate -> new Hit(candidate.itemId(), candidate.score()))
+                .toList();
+    }
+
+    /**
+     * 前綴自動完成
+     * 只讀取目前索引，不查詢資料庫也不等待重建；索引失效或逾期時沿用目前索引，重建於背景排程
+     * @param prefix 名稱前綴
+     * @param limit 最多回傳筆數
+     * @return 名稱以前綴開頭的商品，依正規化名稱排序
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(limit, 16));
+        for (Map.Entry<String, Suggestion> entry : current().prefixes().tailMap(normalized, true).entrySet()) {
+            if (!entry.getKey().startsWith(normalized)) {
+                break;
+            }
+            suggestions.add(entry.getValue());
+            if (suggestions.size() >= limit) {
+                break;
+            }
+        }
+        return suggestions;
+    }
+    //endregion
+
+    //region 索引維護
+    /**
+     * 啟動時於啟動執行緒建立索引，之後的重建皆於背景執行
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (rebuilding.compareAndSet(false, true)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 新增或更新商品名稱
+     */
+    public synchronized void upsert(Long itemId, String name) {
+        if (itemId != null) {
+            apply(target -> upsertInto(target, itemId, name));
+        }
+    }
+
+    /**
+     * 移除商品
+     */
+    public synchronized void remove(Long itemId) {
+        if (itemId != null) {
+            apply(target -> removeFrom(target, itemId));
+        }
+    }
+
+    /**
+     * 自資料庫重新讀取單一商品（已提交的狀態）並更新索引，用於事務回滾後撤銷未提交的名稱
+     * 以獨立事務讀取，可於事務完成回呼中呼叫
+     */
+    public void refresh(Long itemId) {
+        if (itemId == null) {
+            return;
+        }
+        try {
+            Item item = loadTransactionTemplate.execute(status -> itemRepository.findById(itemId).orElse(null));
+            if (item != null) {
+                upsert(itemId, item.getName());
+            } else {
+                remove(itemId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("重新讀取商品失敗，索引改為重建 - 商品ID: {}, 錯誤: {}", itemId, e.getMessage());
+            invalidate();
+        }
+    }
+
+    /**
+     * 使索引失效，下次搜尋時於背景自資料庫重建
+     */
+    public void invalidate() {
+        invalidated = true;
+        log.debug("商品搜尋索引已失效");
+    }
+
+    /**
+     * 套用異動至目前索引，重建中時另記錄以套用至新索引（需持有 this 鎖）
+     */
+    private void apply(Consumer<Segment> change) {
+        change.accept(segment);
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(change);
+        }
+    }
+
+    private void upsertInto(Segment target, Long itemId, String name) {
+        removeFrom(target, itemId);
+        String normalized = normalize(name);
+        if (!normalized.isEmpty()) {
+            addTo(target, itemId, name, normalized);
+        }
+    }
+
+    private void removeFrom(Segment current, Long itemId) {
+        String previous = current.names().remove(itemId);
+        if (previous == null) {
+            return;
+        }
+        current.prefixes().remove(prefixKey(previous, itemId));
+        for (String gram : indexGrams(previous)) {
+            Set<Long> ids = current.postings().get(gram);
+            if (ids != null) {
+                ids.remove(itemId);
+            }
+        }
+    }
+
+    /**
+     * 取得目前索引；失效或逾期時於背景排程重建，本次仍回傳目前索引
+     */
+    private Segment current() {
+        Segment current = segment;
+        if (invalidated || System.currentTimeMillis() - current.loadedAtMillis() >= ttlMillis) {
+            scheduleRebuild();
+        }
+        return current;
+    }
+
+    private void scheduleRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(this::rebuild);
+        } catch (TaskRejectedException e) {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 自資料庫重建索引（呼叫前需已取得 rebuilding）
+     * 以獨立唯讀事務載入，不持有 this 鎖；重建期間的異動於替換前套用在新索引上，不會遺失
+     */
+    private void rebuild() {
+        try {
+            // 先清除失效旗標再載入，載入期間若有失效通知，下次搜尋會再重建
+            synchronized (this) {
+                invalidated = false;
+                changesDuringRebuild = new ArrayList<>();
+            }
+
+            Segment loaded = emptySegment(System.currentTimeMillis());
+            List<Item> items = loadTransactionTemplate.execute(status -> itemRepository.findAll());
+            for (Item item : items) {
+                String normalized = normalize(item.getName());
+                if (item.getId() == null || normalized.isEmpty()) {
+                    continue;
+                }
+                addTo(loaded, item.getId(), item.getName(), normalized);
+            }
+
+            synchronized (this) {
+                for (Consumer<Segment> change : changesDuringRebuild) {
+                    change.accept(loaded);
+                }
+                changesDuringRebuild = null;
+                segment = loaded;
+            }
+            log.debug("商品搜尋索引已重建 - 商品數: {}, gram 數: {}", loaded.names().size(), loaded.postings().size());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changesDuringRebuild = null;
+                invalidated = true;
+            }
+            log.error("商品搜尋索引重建失敗，沿用目前索引 - 錯誤: {}", e.getMessage(), e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private static Segment emptySegment(long loadedAtMillis) {
+        return new Segment(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(),
+                new ConcurrentSkipListMap<>(), loadedAtMillis);
+    }
+
+    private void addTo(Segment target, Long itemId, String name, String normalized) {
+        target.names().put(itemId, normalized);
+        target.prefixes().put(prefixKey(normalized, itemId), new Suggestion(itemId, name));
+        for (String gram : indexGrams(normalized)) {
+            target.postings().computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(itemId);
+        }
+    }
+
+    private static String prefixKey(String normalized, Long itemId) {
+        return normalized + PREFIX_KEY_SEPARATOR + itemId;
+    }
+    //endregion
+
+    //region 斷詞
+    /**
+     * 正規化：全形轉半形（NFKC）、轉小寫、移除空白
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder builder = new StringBuilder(normalized.length());
+        normalized.codePoints()
+                .filter(codePoint -> !Character.isWhitespace(codePoint))
+                .forEach(builder::appendCodePoint);
+        return builder.toString();
+    }
+
+    /**
+     * 索引用 gram：每個單字與每組相鄰二字
+     */
+    private static Set<String> indexGrams(String normalized) {
+        int[] codePoints = normalized.codePoints().toArray();
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 1));
+            if (i + 1 < codePoints.length) {
+                grams.add(new String(codePoints, i, 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 查詢用 gram：單字查詢使用單字，否則使用相鄰二字
+     */
+    private static Set<String> queryGrams(String normalized) {
+        int[] codePoints = normalized.codePoints().toArray();
+        Set<String> grams = new LinkedHashSet<>();
+        if (codePoints.length == 1) {
+            grams.add(normalized);
+            return grams;
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 2));
+        }
+        return grams;
+    }
+    //endregion
+}
@@ -0,0 +1,119 @@
+package erp.core.service;
+
+import erp.core.entity.OutboxEvent;
+import erp.core.repository.OutboxEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 發件匣轉發器
+ * 定期以 FOR UPDATE SKIP LOCKED 鎖定一批未發佈事件，依ID順序 XADD 至 Redis Stream 後標記已發佈；
+ * 多個實例可同時執行，各自發佈不同事件。Redis 寫入成功但事務未提交時事件會再次發佈（至少一次），
+ * 消費端以 eventId 辨識重複。
+ * 事件ID由各實例以 TableGenerator 分段配置，跨實例時ID順序不等於寫入或提交順序，
+ * 加上多實例並行發佈與失敗重送，不保證事件的投遞順序，消費端不可依賴順序
+ */
+@Component
+@ConditionalOnProperty(name = {"erp.outbox.enabled", "erp.outbox.relay.enabled"}, havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String streamKey;
+    private final int batchSize;
+    private final long streamMaxLength;
+    private final int retentionDays;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       StringRedisTemplate redisTemplate,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${erp.outbox.stream-key:erp:inventory-events}") String streamKey,
+                       @Value("${erp.outbox.relay.batch-size:200}") int batchSize,
+                       @Value("${erp.outbox.stream-max-length:100000}") long streamMaxLength,
+                       @Value("${erp.outbox.retention-days:7}") int retentionDays) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.redisTemplate = redisTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.streamKey = streamKey;
+        this.batchSize = batchSize;
+        this.streamMaxLength = streamMaxLength;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * 發佈所有未發佈事件，每批一個事務
+     */
+    @Scheduled(fixedDelayString = "${erp.outbox.relay.poll-interval-ms:1000}")
+    public void relay() {
+        int total = 0;
+        try {
+            Integer published;
+            do {
+                published = transactionTemplate.execute(status -> publishBatch());
+                total += published != null ? published : 0;
+            } while (published != null && published == batchSize);
+        } catch (RuntimeException e) {
+            log.error("發佈發件匣事件失敗，下次輪詢重試 - 錯誤: {}", e.getMessage());
+            return;
+        }
+
+        if (total > 0) {
+            // 近似裁剪，避免串流無限成長
+            redisTemplate.opsForStream().trim(streamKey, streamMaxLength, true);
+            log.debug("發件匣事件已發佈 - 筆數: {}", total);
+        }
+    }
+
+    private int publishBatch() {
+        List<OutboxEvent> events = outboxEventRepository.lockUnpublished(batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> ids = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("eventId", String.valueOf(event.getId()));
+            fields.put("aggregateType", event.getAggregateType());
+            fields.put("aggregateId", String.valueOf(event.getAggregateId()));
+            fields.put("eventType", event.getEventType().name());
+            fields.put("payload", event.getPayload());
+            redisTemplate.opsForStream().add(StreamRecords.newRecord().in(streamKey).ofMap(fields));
+            ids.add(event.getId());
+        }
+
+        outboxEventRepository.markPublished(ids, LocalDateTime.now());
+        return events.size();
+    }
+
+    /**
+     * 清除超過保留天數的已發佈事件，每批一個事務
+     */
+    @Scheduled(cron = "${erp.outbox.cleanup-cron:0 30 3 * * *}")
+    public void cleanup() {
+        LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+        int total = 0;
+        Integer deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> outboxEventRepository.deletePublishedBefore(before, 1000));
+            total += deleted != null ? deleted : 0;
+        } while (deleted != null && deleted == 1000);
+
+        log.info("清除已發佈的發件匣事件 - 筆數: {}", total);
+    }
+}
@@ -0,0 +1,77 @@
+package erp.core.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import erp.core.entity.OutboxEvent;
+import erp.core.entity.OutboxEvent.EventType;
+import erp.core.repository.OutboxEventRepository;
+import erp.core.service.SlipService.SlipType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 交易式發件匣（Transactional Outbox）
+ * 事件與業務資料於同一事務寫入 outbox_events，事務提交後才對外可見，
+ * 由 OutboxRelay 發佈至 Redis Stream，再由 InventoryEventConsumer 以消費者群組處理。
+ * 只寫入有消費者處理的事件；庫存異動目前沒有訂閱者，不寫入事件
+ */
+@Service
+@Slf4j
+public class OutboxService {
+
+    public static final String AGGREGATE_SLIP = "slip";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    public OutboxService(OutboxEventRepository outboxEventRepository,
+                         ObjectMapper objectMapper,
+                         @Value("${erp.outbox.enabled:true}") boolean enabled) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+    /**
+     * 是否啟用發件匣，停用時不寫入事件，單據完成改由本機直接送入完成流程
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 記錄單據完成事件
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordSlipCompleted(Long slipId, SlipType slipType, long pendingDetails) {
+        if (!enabled) {
+            return;
+        }
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("slipId", slipId);
+        payload.put("slipType", slipType.name());
+        payload.put("pendingDetails", pendingDetails);
+        outboxEventRepository.save(newEvent(AGGREGATE_SLIP, slipId, EventType.SLIP_COMPLETED, payload));
+    }
+
+    private OutboxEvent newEvent(String aggregateType, Long aggregateId, EventType eventType, Map<String, Object> payload) {
+        OutboxEvent event = new OutboxEvent();
+        event.setAggregateType(aggregateType);
+        event.setAggregateId(aggregateId);
+        event.setEventType(eventType);
+        try {
+            event.setPayload(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("事件內容序列化失敗: " + eventType, e);
+        }
+        return event;
+    }
+}
@@ -0,0 +1,249 @@
+package erp.core.service;
+
+import erp.core.entity.Slip;
+import erp.core.entity.SlipDetail;
+import erp.core.repository.SlipDetailRepository;
+import erp.core.repository.SlipRepository;
+import erp.core.service.SlipService.SlipStatus;
+import erp.core.service.SlipService.SlipType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 單據完成流程
+ * 已完成單據中狀態為待處理的 SlipDetail 即為持久化的工作佇列：
+ * 單據完成的事務提交後才將單據送入有界執行緒池，明細依 (商品, 儲位) 分道後並行，
+ * 由 SlipDetailProcessor 逐筆以獨立事務處理；
+ * 佇列已滿或待處理明細超過上限時拒絕完成新單據（背壓）；
+ * 提交後送出仍被拒時單據記入延後清單，由定期工作重新送出，
+ * 服務重啟時留在資料庫中的待處理明細於啟動時重新送出
+ */
+@Component
+@Slf4j
+public class SlipCompletionPipeline {
+
+    private final SlipRepository slipRepository;
+    private final SlipDetailRepository slipDetailRepository;
+    private final SlipDetailProcessor slipDetailProcessor;
+    private final StorageLocationResolver storageLocationResolver;
+    private final ThreadPoolTaskExecutor executor;
+    private final ThreadPoolTaskExecutor laneExecutor;
+    private final long maxPendingDetails;
+    private final int nettingChunkSize;
+    private final boolean resumeOnStartup;
+
+    /**
+     * 送出被拒、等待重新送出的單據（單據ID → 類型）
+     */
+    private final Map<Long, SlipType> deferredSlips = new ConcurrentHashMap<>();
+
+    public SlipCompletionPipeline(SlipRepository slipRepository,
+                                  SlipDetailRepository slipDetailRepository,
+                                  SlipDetailProcessor slipDetailProcessor,
+                                  StorageLocationResolver storageLocationResolver,
+                                  @Qualifier("slipCompletionExecutor") ThreadPoolTaskExecutor executor,
+                                  @Qualifier("slipLaneExecutor") ThreadPoolTaskExecutor laneExecutor,
+                                  @Value("${erp.slip.completion.max-pending-details:50000}") long maxPendingDetails,
+                                  @Value("${erp.slip.completion.netting-chunk-size:500}") int nettingChunkSize,
+                                  @Value("${erp.stock.batch.max-lines:1000}") int batchMaxLines,
+                                  @Value("${erp.slip.completion.resume-on-startup:true}") boolean resumeOnStartup) {
+        this.slipRepository = slipRepository;
+        this.slipDetailRepository = slipDetailRepository;
+        this.slipDetailProcessor = slipDetailProcessor;
+        this.storageLocationResolver = storageLocationResolver;
+        this.executor = executor;
+        this.laneExecutor = laneExecutor;
+        this.maxPendingDetails = maxPendingDetails;
+        // 合併處理經由批次庫存操作執行，超過批次行數上限的區段會整段被拒，故以上限為準
+        if (nettingChunkSize > batchMaxLines) {
+            log.warn("netting-chunk-size ({}) 超過 erp.stock.batch.max-lines ({})，改用上限", nettingChunkSize, batchMaxLines);
+        }
+        this.nettingChunkSize = Math.max(1, Math.min(nettingChunkSize, batchMaxLines));
+        this.resumeOnStartup = resumeOnStartup;
+    }
+
+    /**
+     * 背壓檢查：執行緒池佇列已滿或待處理明細將超過上限時拒絕
+     * 應在變更單據狀態前呼叫
+     * @param incomingDetails 即將加入的明細數量
+     * @param processLocally 是否由本機處理；經由事件交由其他節點處理時不檢查本機佇列，
+     *                       由消費節點於 submitNow 判斷自身容量
+     */
+    public void checkCapacity(long incomingDetails, boolean processLocally) {
+        if (processLocally && executor.getThreadPoolExecutor().getQueue().remainingCapacity() == 0) {
+            throw new IllegalStateException("單據處理佇列已滿，請稍後重試");
+        }
+
+        long queuedDetails = slipDetailRepository.countBySlipStatusAndStatus(
+                SlipStatus.COMPLETED.getCode(), SlipDetail.Status.PENDING);
+        if (queuedDetails + incomingDetails > maxPendingDetails) {
+            throw new IllegalStateException("單據處理佇列已滿，請稍後重試（待處理明細: " + queuedDetails + "）");
+        }
+    }
+
+    /**
+     * 送出單據處理
+     * 在事務中時於提交後才送出，確保背景執行緒看得到已完成的單據狀態
+     */
+    public void submit(Long slipId, SlipType slipType) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueueOrDefer(slipId, slipType);
+                }
+            });
+        } else {
+            enqueueOrDefer(slipId, slipType);
+        }
+    }
+
+    /**
+     * 立即送出單據（不在事務中呼叫，供事件消費者使用）
+     * 以本機執行緒池的佇列判斷容量，被拒時拋出例外由呼叫端保留事件稍後重送
+     * @throws IllegalStateException 本機處理佇列已滿
+     */
+    public void submitNow(Long slipId, SlipType slipType) {
+        try {
+            enqueue(slipId, slipType);
+        } catch (TaskRejectedException e) {
+            throw new IllegalStateException("單據處理佇列已滿，請稍後重試 - 單據ID: " + slipId, e);
+        }
+    }
+
+    /**
+     * 送出單據，被拒時記入延後清單等待重新送出（單據已完成，無法再拒絕呼叫端）
+     */
+    private void enqueueOrDefer(Long slipId, SlipType slipType) {
+        try {
+            enqueue(slipId, slipType);
+        } catch (TaskRejectedException e) {
+            deferredSlips.put(slipId, slipType);
+            log.warn("單據完成流程佇列已滿，延後重新送出 - 單據ID: {}", slipId);
+        }
+    }
+
+    /**
+     * 送入執行緒池
+     * @throws TaskRejectedException 佇列已滿
+     */
+    private void enqueue(Long slipId, SlipType slipType) {
+        executor.execute(() -> drain(slipId, slipType));
+        log.info("單據已送入完成流程 - 單據ID: {}, 類型: {}", slipId, slipType.getDescription());
+    }
+
+    /**
+     * 定期重新送出延後清單中的單據，佇列仍滿時保留至下一輪
+     * 服務停止時延後清單中的單據由啟動時的重新送出及重試工作者的滯留明細領取涵蓋
+     */
+    @Scheduled(fixedDelayString = "${erp.slip.completion.resubmit-interval-ms:1000}")
+    public void resubmitDeferred() {
+        for (Map.Entry<Long, SlipType> entry : deferredSlips.entrySet()) {
+            try {
+                enqueue(entry.getKey(), entry.getValue());
+                deferredSlips.remove(entry.getKey(), entry.getValue());
+            } catch (TaskRejectedException e) {
+                log.debug("單據完成流程佇列仍滿，延後單據數: {}", deferredSlips.size());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 處理單據的待處理明細
+     * 依 (商品, 儲位) 分道，同一道逐筆處理，不同道於處理道執行緒池並行
+     */
+    private void drain(Long slipId, SlipType slipType) {
+        List<SlipDetail> details = slipDetailRepository.findBySlipIdAndStatusOrderByLineNumber(slipId, SlipDetail.Status.PENDING);
+        List<List<SlipDetail>> lanes = SlipLanePartitioner.partition(details, detail -> touchedLocationIds(detail, slipType));
+        log.info("開始處理單據庫存操作 - 單據ID: {}, 類型: {}, 待處理明細: {}, 處理道: {}",
+                slipId, slipType.getDescription(), details.size(), lanes.size());
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(lanes.size());
+        for (List<SlipDetail> lane : lanes) {
+            futures.add(CompletableFuture.supplyAsync(() -> processLane(lane, slipType), laneExecutor));
+        }
+
+        int succeeded = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            succeeded += future.join();
+        }
+
+        log.info("完成單據庫存操作處理 - 單據ID: {}, 成功: {}, 未成功: {}",
+                slipId, succeeded, details.size() - succeeded);
+    }
+
+    /**
+     * 依序處理同一道的明細
+     * 每次取最多 nettingChunkSize 筆合併處理，同一 (商品, 儲位) 的異動沖銷後只寫回一次庫存
+     */
+    private int processLane(List<SlipDetail> lane, SlipType slipType) {
+        int succeeded = 0;
+        for (int start = 0; start < lane.size(); start += nettingChunkSize) {
+            List<SlipDetail> chunk = lane.subList(start, Math.min(start + nettingChunkSize, lane.size()));
+            succeeded += slipDetailProcessor.processNetted(chunk, slipType);
+        }
+        return succeeded;
+    }
+
+    /**
+     * 明細會異動的儲位ID（凍結、報廢的目標為凍結倉、報廢倉）
+     */
+    private List<Long> touchedLocationIds(SlipDetail detail, SlipType slipType) {
+        List<Long> storageLocationIds = new ArrayList<>(2);
+        switch (slipType) {
+            case INBOUND -> storageLocationIds.add(detail.getToStorageLocationId());
+            case OUTBOUND -> storageLocationIds.add(detail.getFromStorageLocationId());
+            case TRANSFER -> {
+                storageLocationIds.add(detail.getFromStorageLocationId());
+                storageLocationIds.add(detail.getToStorageLocationId());
+            }
+            case FREEZE -> {
+                storageLocationIds.add(detail.getFromStorageLocationId());
+                storageLocationResolver.findByCode(WarehouseManagementService.FREEZE_WAREHOUSE)
+                        .ifPresent(ref -> storageLocationIds.add(ref.id()));
+            }
+            case SCRAP -> {
+                storageLocationIds.add(detail.getFromStorageLocationId());
+                storageLocationResolver.findByCode(WarehouseManagementService.SCRAP_WAREHOUSE)
+                        .ifPresent(ref -> storageLocationIds.add(ref.id()));
+            }
+        }
+        return storageLocationIds;
+    }
+
+    /**
+     * 啟動時重新送出仍有待處理明細的已完成單據
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingSlips() {
+        if (!resumeOnStartup) {
+            return;
+        }
+
+        List<Long> slipIds = slipDetailRepository.findSlipIdsBySlipStatusAndStatus(
+                SlipStatus.COMPLETED.getCode(), SlipDetail.Status.PENDING);
+        for (Slip slip : slipRepository.findAllById(slipIds)) {
+            enqueueOrDefer(slip.getId(), SlipType.fromCode(slip.getSlipsType()));
+        }
+
+        if (!slipIds.isEmpty()) {
+            log.info("重新送出未完成處理的單據 - 數量: {}", slipIds.size());
+        }
+    }
+}
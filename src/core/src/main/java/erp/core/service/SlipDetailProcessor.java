@@ -0,0 +1,240 @@
+package erp.core.service;
+
+import erp.core.dto.StockOperationLineDto;
+import erp.core.entity.SlipDetail;
+import erp.core.repository.SlipDetailRepository;
+import erp.core.service.SlipService.SlipType;
+import erp.core.service.StorageLocationResolver.LocationRef;
+import erp.core.service.WarehouseManagementService.BatchMode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 單據明細處理器
+ * 每筆明細以獨立事務處理：先以條件式更新將明細由待處理搶佔為已處理，再執行庫存操作，
+ * 兩者同時提交或回滾；庫存操作失敗時另以新事務標記為失敗，並依失敗次數以指數退避排定重試時間，
+ * 達重試上限者轉為無法處理，由 SlipDetailRetryWorker 負責重試。
+ * 同一明細被重複提交時只有第一個搶佔成功者會執行，不會重複異動庫存。
+ * 多筆明細可合併處理：同一 (商品, 儲位) 的異動於記憶體中沖銷後只寫回一次庫存，
+ * 異動記錄仍逐筆寫入；合併處理失敗時退回逐筆處理，由逐筆結果決定各明細狀態
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SlipDetailProcessor {
+
+    private final SlipDetailRepository slipDetailRepository;
+    private final StorageLocationResolver storageLocationResolver;
+    private final WarehouseManagementService warehouseManagementService;
+    private final StockOperationRetryExecutor stockOperationRetryExecutor;
+    private final PlatformTransactionManager transactionManager;
+    
+    @Value("${erp.slip.retry.max-attempts:5}")
+    private int maxAttempts;
+    
+    @Value("${erp.slip.retry.base-backoff-seconds:30}")
+    private long baseBackoffSeconds;
+    
+    @Value("${erp.slip.retry.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    /**
+     * 處理單筆明細
+     * @return true 表示處理成功，false 表示已被其他流程處理或處理失敗
+     */
+    public boolean process(Long slipDetailId, SlipType slipType) {
+        try {
+            Boolean processed = stockOperationRetryExecutor.execute("單據明細", () -> {
+                SlipDetail slipDetail = slipDetailRepository.findById(slipDetailId).orElse(null);
+                if (slipDetail == null) {
+                    return false;
+                }
+
+                // 搶佔明細：僅待處理狀態可轉為已處理，失敗時整個事務回滾
+                int claimed = slipDetailRepository.compareAndSetStatus(
+                        slipDetailId, SlipDetail.Status.PENDING, SlipDetail.Status.PROCESSED);
+                if (claimed == 0) {
+                    log.debug("明細已被處理，跳過 - 明細ID: {}", slipDetailId);
+                    return false;
+                }
+
+                applyStockOperation(slipDetail, slipType);
+                return true;
+            });
+
+            if (Boolean.TRUE.equals(processed)) {
+                log.debug("成功處理單據明細 - 明細ID: {}", slipDetailId);
+            }
+            return Boolean.TRUE.equals(processed);
+        } catch (RuntimeException e) {
+            log.error("處理單據明細失敗 - 明細ID: {}, 錯誤: {}", slipDetailId, e.getMessage(), e);
+            markFailed(slipDetailId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 合併處理多筆明細
+     * 於單一事務內以整批模式的批次庫存操作套用所有待處理明細：涉及的庫存一次鎖定、
+     * 依項次順序於記憶體中套用後每筆庫存只寫回一次，任一明細失敗時不會寫入任何異動；
+     * 庫存套用後再逐筆搶佔明細，任一明細已被其他流程處理則整批回滾。
+     * 合併處理失敗時改為逐筆處理
+     * @return 處理成功的明細數
+     */
+    public int processNetted(List<SlipDetail> slipDetails, SlipType slipType) {
+        if (slipDetails.size() == 1) {
+            return process(slipDetails.get(0).getId(), slipType) ? 1 : 0;
+        }
+
+        try {
+            Integer processed = stockOperationRetryExecutor.execute("單據明細合併", () -> {
+                List<Long> slipDetailIds = new ArrayList<>(slipDetails.size());
+                for (SlipDetail slipDetail : slipDetails) {
+                    slipDetailIds.add(slipDetail.getId());
+                }
+
+                List<SlipDetail> pendingDetails = new ArrayList<>(slipDetails.size());
+                List<StockOperationLineDto> lines = new ArrayList<>(slipDetails.size());
+                for (SlipDetail slipDetail : slipDetailRepository.findAllById(slipDetailIds)) {
+                    if (slipDetail.getStatus() == SlipDetail.Status.PENDING) {
+                        pendingDetails.add(slipDetail);
+                    }
+                }
+                pendingDetails.sort(Comparator.comparing(SlipDetail::getLineNumber));
+                for (SlipDetail slipDetail : pendingDetails) {
+                    lines.add(toOperationLine(slipDetail, slipType));
+                }
+                if (lines.isEmpty()) {
+                    return 0;
+                }
+
+                warehouseManagementService.batchOperation(lines, BatchMode.ALL_OR_NOTHING);
+
+                // 搶佔明細：僅待處理狀態可轉為已處理，任一失敗時整個事務回滾
+                for (SlipDetail slipDetail : pendingDetails) {
+                    int claimed = slipDetailRepository.compareAndSetStatus(
+                            slipDetail.getId(), SlipDetail.Status.PENDING, SlipDetail.Status.PROCESSED);
+                    if (claimed == 0) {
+                        throw new IllegalStateException("明細已被其他流程處理 - 明細ID: " + slipDetail.getId());
+                    }
+                }
+                return pendingDetails.size();
+            });
+
+            log.debug("合併處理單據明細完成 - 明細數: {}, 處理: {}", slipDetails.size(), processed);
+            return processed;
+        } catch (RuntimeException e) {
+            log.warn("合併處理單據明細失敗，改為逐筆處理 - 明細數: {}, 錯誤: {}", slipDetails.size(), e.getMessage());
+            int succeeded = 0;
+            for (SlipDetail slipDetail : slipDetails) {
+                if (process(slipDetail.getId(), slipType)) {
+                    succeeded++;
+                }
+            }
+            return succeeded;
+        }
+    }
+
+    /**
+     * 將明細轉為批次庫存操作明細
+     * 來源單據與明細ID寫入異動記錄的來源欄位，不另組合備註
+     */
+    private StockOperationLineDto toOperationLine(SlipDetail slipDetail, SlipType slipType) {
+        StockOperationLineDto line = switch (slipType) {
+            case INBOUND -> new StockOperationLineDto("inbound", slipDetail.getItemId(),
+                    getLocationCodeById(slipDetail.getToStorageLocationId()), null, null, slipDetail.getQuantityChange(), slipDetail.getNote());
+            case OUTBOUND -> new StockOperationLineDto("outbound", slipDetail.getItemId(),
+                    getLocationCodeById(slipDetail.getFromStorageLocationId()), null, null, slipDetail.getQuantityChange(), slipDetail.getNote());
+            case TRANSFER -> new StockOperationLineDto("transfer", slipDetail.getItemId(), null,
+                    getLocationCodeById(slipDetail.getFromStorageLocationId()),
+                    getLocationCodeById(slipDetail.getToStorageLocationId()), slipDetail.getQuantityChange(), slipDetail.getNote());
+            case FREEZE -> new StockOperationLineDto("freeze", slipDetail.getItemId(), null,
+                    getLocationCodeById(slipDetail.getFromStorageLocationId()), null, slipDetail.getQuantityChange(), slipDetail.getNote());
+            case SCRAP -> new StockOperationLineDto("scrap", slipDetail.getItemId(), null,
+                    getLocationCodeById(slipDetail.getFromStorageLocationId()), null, slipDetail.getQuantityChange(), slipDetail.getNote());
+        };
+        line.setSourceSlipId(slipDetail.getSlipId());
+        line.setSourceSlipDetailId(slipDetail.getId());
+        return line;
+    }
+
+    /**
+     * 以新事務將明細標記為失敗
+     */
+    private void markFailed(Long slipDetailId, RuntimeException cause) {
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            transactionTemplate.executeWithoutResult(status -> recordFailedAttempt(slipDetailId, cause));
+        } catch (RuntimeException e) {
+            log.error("更新明細狀態失敗 - 明細ID: {}, 錯誤: {}", slipDetailId, e.getMessage());
+        }
+    }
+
+    /**
+     * 於目前事務記錄一次處理失敗
+     * 第 n 次失敗後於 base * 2^(n-1) 秒後重試（不超過上限），失敗次數達上限時轉為無法處理
+     */
+    void recordFailedAttempt(Long slipDetailId, RuntimeException cause) {
+        SlipDetail slipDetail = slipDetailRepository.findById(slipDetailId).orElse(null);
+        if (slipDetail == null) {
+            return;
+        }
+
+        int attempts = (slipDetail.getAttempts() != null ? slipDetail.getAttempts() : 0) + 1;
+        String lastError = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        if (lastError.length() > 500) {
+            lastError = lastError.substring(0, 500);
+        }
+
+        if (attempts >= maxAttempts) {
+            slipDetailRepository.recordFailure(slipDetailId, SlipDetail.Status.PENDING,
+                    SlipDetail.Status.DEAD_LETTER, null, lastError);
+            log.warn("明細處理失敗次數達上限，轉為無法處理 - 明細ID: {}, 失敗次數: {}", slipDetailId, attempts);
+        } else {
+            slipDetailRepository.recordFailure(slipDetailId, SlipDetail.Status.PENDING,
+                    SlipDetail.Status.FAILED, LocalDateTime.now().plusSeconds(backoffSeconds(attempts)), lastError);
+        }
+    }
+
+    /**
+     * 第 n 次失敗後的重試間隔（秒）：base * 2^(n-1)，不超過上限
+     */
+    long backoffSeconds(int attempts) {
+        return Math.min(maxBackoffSeconds, baseBackoffSeconds << Math.min(attempts - 1, 30));
+    }
+
+    /**
+     * 依單據類型執行庫存操作（單筆批次，已在呼叫端事務中）
+     */
+    private void applyStockOperation(SlipDetail slipDetail, SlipType slipType) {
+        warehouseManagementService.batchOperation(List.of(toOperationLine(slipDetail, slipType)), BatchMode.ALL_OR_NOTHING);
+    }
+
+    /**
+     * 根據儲位ID獲取位置編號
+     */
+    private String getLocationCodeById(Long storageLocationId) {
+        if (storageLocationId == null) {
+            throw new IllegalArgumentException("儲位ID不能為空");
+        }
+
+        LocationRef storageLocation = storageLocationResolver.requireById(storageLocationId);
+
+        if (storageLocation.code() == null || storageLocation.code().trim().isEmpty()) {
+            throw new IllegalArgumentException("儲位編號不能為空 - 儲位ID: " + storageLocationId);
+        }
+
+        return storageLocation.code();
+    }
+}
@@ -0,0 +1,105 @@
+package erp.core.service;
+
+import erp.core.entity.SlipDetail;
+import erp.core.repository.SlipDetailRepository;
+import erp.core.service.SlipService.SlipStatus;
+import erp.core.service.SlipService.SlipType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 單據明細重試工作者
+ * 定期以 SELECT ... FOR UPDATE SKIP LOCKED 領取一批到期的失敗明細及滯留的待處理明細，
+ * 於短事務內轉回待處理並更新時間（處理租約）後立即提交，再逐筆交由 SlipDetailProcessor 處理；
+ * 多個實例可同時輪詢，各自領取不同明細，領取時不會等待完成流程或其他實例已鎖定的列
+ */
+@Component
+@ConditionalOnProperty(name = "erp.slip.retry.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class SlipDetailRetryWorker {
+
+    private final SlipDetailRepository slipDetailRepository;
+    private final SlipDetailProcessor slipDetailProcessor;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long stalePendingSeconds;
+
+    public SlipDetailRetryWorker(SlipDetailRepository slipDetailRepository,
+                                 SlipDetailProcessor slipDetailProcessor,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${erp.slip.retry.batch-size:100}") int batchSize,
+                                 @Value("${erp.slip.retry.stale-pending-seconds:600}") long stalePendingSeconds) {
+        this.slipDetailRepository = slipDetailRepository;
+        this.slipDetailProcessor = slipDetailProcessor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.stalePendingSeconds = stalePendingSeconds;
+    }
+
+    /**
+     * 輪詢並處理一批待重試明細
+     */
+    @Scheduled(fixedDelayString = "${erp.slip.retry.poll-interval-ms:30000}",
+               initialDelayString = "${erp.slip.retry.initial-delay-ms:60000}")
+    public void poll() {
+        Map<Long, SlipType> claimed;
+        try {
+            claimed = claimBatch();
+        } catch (RuntimeException e) {
+            log.error("領取待重試明細失敗 - 錯誤: {}", e.getMessage(), e);
+            return;
+        }
+
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        int succeeded = 0;
+        for (Map.Entry<Long, SlipType> entry : claimed.entrySet()) {
+            if (slipDetailProcessor.process(entry.getKey(), entry.getValue())) {
+                succeeded++;
+            }
+        }
+
+        log.info("單據明細重試完成 - 領取: {}, 成功: {}", claimed.size(), succeeded);
+    }
+
+    /**
+     * 於短事務內鎖定並租用一批明細
+     * @return 明細ID與單據類型
+     */
+    private Map<Long, SlipType> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<Object[]> rows = slipDetailRepository.lockRetryCandidates(
+                    SlipStatus.COMPLETED.getCode(),
+                    SlipDetail.Status.FAILED.getCode(),
+                    SlipDetail.Status.PENDING.getCode(),
+                    now,
+                    now.minusSeconds(stalePendingSeconds),
+                    batchSize);
+
+            Map<Long, SlipType> claimed = new LinkedHashMap<>();
+            for (Object[] row : rows) {
+                claimed.put(((Number) row[0]).longValue(), SlipType.fromCode(((Number) row[1]).byteValue()));
+            }
+
+            if (!claimed.isEmpty()) {
+                slipDetailRepository.leaseForRetry(new ArrayList<>(claimed.keySet()),
+                        List.of(SlipDetail.Status.FAILED, SlipDetail.Status.PENDING), SlipDetail.Status.PENDING);
+            }
+            return claimed;
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package erp.core.service;
+
+import erp.core.entity.SlipDetail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 單據明細分道器
+ * 以 (商品ID, 儲位ID) 為衝突鍵，用併查集將共用任一鍵的明細歸入同一條處理道（連通分量），
+ * 同一道內依原順序逐筆處理，不同道之間沒有共用的庫存記錄，可安全並行而不互相等待行鎖
+ */
+final class SlipLanePartitioner {
+
+    private record StockKey(Long itemId, Long storageLocationId) {
+    }
+
+    private SlipLanePartitioner() {
+    }
+
+    /**
+     * 分道
+     * @param details 明細（已依處理順序排列）
+     * @param touchedLocationIds 取得明細會異動的儲位ID
+     * @return 各處理道的明細，道內維持輸入順序
+     */
+    static List<List<SlipDetail>> partition(List<SlipDetail> details,
+                                            Function<SlipDetail, Collection<Long>> touchedLocationIds) {
+        int[] parent = new int[details.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+
+        // 同一衝突鍵的明細合併到同一集合
+        Map<StockKey, Integer> keyOwners = new HashMap<>();
+        for (int i = 0; i < details.size(); i++) {
+            SlipDetail detail = details.get(i);
+            for (Long storageLocationId : touchedLocationIds.apply(detail)) {
+                if (storageLocationId == null) {
+                    continue;
+                }
+                Integer owner = keyOwners.putIfAbsent(new StockKey(detail.getItemId(), storageLocationId), i);
+                if (owner != null) {
+                    union(parent, owner, i);
+                }
+            }
+        }
+
+        // 依第一筆明細出現的順序輸出各道
+        Map<Integer, List<SlipDetail>> lanes = new LinkedHashMap<>();
+        for (int i = 0; i < details.size(); i++) {
+            lanes.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(details.get(i));
+        }
+        return new ArrayList<>(lanes.values());
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+}
@@ -1,22 +1,32 @@
 package erp.core.service;
 
+import erp.core.dto.CursorPage;
+import erp.core.dto.PageCursor;
 import erp.core.dto.SlipDetailDto;
+import erp.core.dto.SlipReadDto;
+import erp.core.dto.SlipSummaryDto;
+import erp.core.dto.SlipProgressDto;
+import erp.core.entity.Item;
 import erp.core.entity.Slip;
 import erp.core.entity.SlipDetail;
-import erp.core.entity.StorageLocation;
+import erp.core.repository.ItemRepository;
 import erp.core.repository.SlipRepository;
 import erp.core.repository.SlipDetailRepository;
-import erp.core.repository.StorageLocationRepository;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * 單據服務類
@@ -30,9 +40,16 @@ public class SlipService {
 
     private final SlipRepository slipRepository;
     private final SlipDetailRepository slipDetailRepository;
-    private final StorageLocationRepository storageLocationRepository;
-    private final WarehouseManagementService warehouseManagementService;
+    private final ItemRepository itemRepository;
+    private final StorageLocationResolver storageLocationResolver;
+    private final SlipCompletionPipeline slipCompletionPipeline;
+    private final OutboxService outboxService;
 
+    @Value("${erp.pagination.default-limit:100}")
+    private int defaultPageLimit;
+
+    @Value("${erp.pagination.max-limit:1000}")
+    private int maxPageLimit;
 
     /**
      * 單據類型枚舉
@@ -135,23 +152,66 @@ public class SlipService {
 
     /**
      * 解析單據資料到單據資料表
+     * 先整批驗證所有明細（商品以一次 IN 查詢、儲位由 StorageLocationResolver 批次解析），
+     * 全部通過後以 saveAll 寫入，配合分段分配 ID 與 JDBC 批次設定送出多列 INSERT
      */
     private void parseAndSaveSlipDetails(Long slipId, List<SlipDetailDto> slipDetails) {
         log.info("開始解析單據資料到單據資料表 - 單據ID: {}, 明細數量: {}", slipId, slipDetails.size());
         
-        for (SlipDetailDto detailData : slipDetails) {
-            // 驗證必要欄位
+        // 1. 驗證必要欄位並收集商品與儲位ID
+        Set<Long> itemIds = new HashSet<>();
+        Set<Long> storageLocationIds = new HashSet<>();
+        Set<Integer> lineNumbers = new HashSet<>();
+        for (int i = 0; i < slipDetails.size(); i++) {
+            SlipDetailDto detailData = slipDetails.get(i);
+            if (detailData == null) {
+                throw new IllegalArgumentException("第 " + (i + 1) + " 筆明細不能為空");
+            }
             if (detailData.getItemId() == null) {
                 throw new IllegalArgumentException("商品ID不能為空");
             }
             if (detailData.getQuantityChange() == null) {
                 throw new IllegalArgumentException("異動數量不能為空");
             }
+            if (detailData.getQuantityChange().compareTo(BigDecimal.ZERO) <= 0) {
+                throw new IllegalArgumentException("異動數量必須大於0 - 商品ID: " + detailData.getItemId());
+            }
+            
+            // 未指定項次時依明細順序編號
+            int lineNumber = detailData.getLineNumber() != null ? detailData.getLineNumber() : i + 1;
+            if (!lineNumbers.add(lineNumber)) {
+                throw new IllegalArgumentException("單據明細項次重複: " + lineNumber);
+            }
+            
+            itemIds.add(detailData.getItemId());
+            if (detailData.getFromStorageLocationId() != null) {
+                storageLocationIds.add(detailData.getFromStorageLocationId());
+            }
+            if (detailData.getToStorageLocationId() != null) {
+                storageLocationIds.add(detailData.getToStorageLocationId());
+            }
+        }
+        
+        // 2. 批次檢查商品與儲位是否存在
+        Set<Long> existingItemIds = new HashSet<>();
+        for (Item item : itemRepository.findAllById(itemIds)) {
+            existingItemIds.add(item.getId());
+        }
+        for (Long itemId : itemIds) {
+            if (!existingItemIds.contains(itemId)) {
+                throw new IllegalArgumentException("商品不存在: " + itemId);
+            }
+        }
+        storageLocationResolver.requireAllById(storageLocationIds);
+        
+        // 3. 建立明細實體並批次寫入
+        List<SlipDetail> details = new ArrayList<>(slipDetails.size());
+        for (int i = 0; i < slipDetails.size(); i++) {
+            SlipDetailDto detailData = slipDetails.get(i);
             
-            // 創建SlipDetail實體
             SlipDetail slipDetail = new SlipDetail();
             slipDetail.setSlipId(slipId);
-            slipDetail.setLineNumber(detailData.getLineNumber());
+            slipDetail.setLineNumber(detailData.getLineNumber() != null ? detailData.getLineNumber() : i + 1);
             slipDetail.setItemId(detailData.getItemId());
             slipDetail.setFromWarehouseId(detailData.getFromWarehouseId());
             slipDetail.setFromStorageLocationId(detailData.getFromStorageLocationId());
@@ -160,15 +220,12 @@ public class SlipService {
             slipDetail.setQuantityChange(detailData.getQuantityChange());
             slipDetail.setStatus(SlipDetail.Status.PENDING);
             slipDetail.setNote(detailData.getNote());
-            
-            // 保存到資料庫
-            SlipDetail savedDetail = slipDetailRepository.save(slipDetail);
-            log.debug("成功保存單據明細 - 明細ID: {}, 項次: {}, 商品ID: {}, 數量: {}", 
-                    savedDetail.getId(), savedDetail.getLineNumber(), 
-                    savedDetail.getItemId(), savedDetail.getQuantityChange());
+            details.add(slipDetail);
         }
         
-        log.info("完成解析單據資料到單據資料表 - 單據ID: {}, 已保存明細數量: {}", slipId, slipDetails.size());
+        slipDetailRepository.saveAll(details);
+        
+        log.info("完成解析單據資料到單據資料表 - 單據ID: {}, 已保存明細數量: {}", slipId, details.size());
     }
 
     /**
@@ -181,12 +238,27 @@ public class SlipService {
     }
 
     /**
-     * 查詢所有單據
+     * 分頁查詢單據摘要
+     * @param cursor 上一頁回傳的游標，第一頁傳 PageCursor.FIRST
+     * @param limit 每頁筆數，null 時使用預設值
      */
     @Transactional(readOnly = true)
-    public List<Slip> getAllSlips() {
-        log.debug("查詢所有單據");
-        return slipRepository.findAll();
+    public CursorPage<SlipSummaryDto> getAllSlips(PageCursor cursor, Integer limit) {
+        log.debug("分頁查詢單據 - 游標: {}", cursor);
+        int pageSize = CursorPage.resolveLimit(limit, defaultPageLimit, maxPageLimit);
+        List<SlipSummaryDto> rows = slipRepository.findSummaryPageAfter(cursor.createdAt(), cursor.id(), Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, SlipSummaryDto::getCreatedAt, SlipSummaryDto::getId);
+    }
+
+    /**
+     * 讀取單據與明細
+     * 以兩個投影查詢取得（單據摘要、明細含商品與儲位資訊），查詢數不隨明細筆數增加
+     */
+    @Transactional(readOnly = true)
+    public SlipReadDto readSlip(Long id) {
+        SlipSummaryDto slip = slipRepository.findSummaryById(id)
+                .orElseThrow(() -> new IllegalArgumentException("找不到指定的單據: " + id));
+        return new SlipReadDto(slip, slipDetailRepository.findLinesBySlipId(id));
     }
 
     /**
@@ -304,7 +376,8 @@ public class SlipService {
 
     /**
      * 完成單據
-     * 改為成功狀態，並調用庫存服務，使用事務和異步處理
+     * 改為成功狀態後立即返回，明細的庫存操作於事務提交後經由發件匣事件（停用時直接）交由 SlipCompletionPipeline 在背景處理，
+     * 處理進度可透過 getSlipProgress 查詢
      */
     @Transactional
     public Slip completeSlip(Long id) {
@@ -312,200 +385,138 @@ public class SlipService {
         
         Slip slip = slipRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("找不到指定的單據: " + id));
+        requireDraft(slip);
+        SlipType type = SlipType.fromCode(slip.getSlipsType());
         
-        if (slip.getStatus() == SlipStatus.COMPLETED.getCode()) {
-            throw new IllegalStateException("單據已經是完成狀態");
+        // 背壓檢查：處理佇列已滿時拒絕完成，單據維持原狀態
+        long pendingDetails = slipDetailRepository.countBySlipIdAndStatus(id, SlipDetail.Status.PENDING);
+        slipCompletionPipeline.checkCapacity(pendingDetails, !outboxService.isEnabled());
+        
+        // 出庫前檢查：來源庫存不足時於轉換狀態前拋出例外，單據維持草稿，避免部分明細處理後才失敗
+        if (pendingDetails > 0 && type != SlipType.INBOUND) {
+            checkStockSufficiency(id);
         }
         
-        if (slip.getStatus() == SlipStatus.CANCELLED.getCode()) {
-            throw new IllegalStateException("已取消的單據無法完成");
+        // 以條件式更新轉換狀態，並發完成同一單據時只有一個呼叫端會成功並處理庫存
+        int updated = slipRepository.compareAndSetStatus(id, SlipStatus.DRAFT.getCode(), SlipStatus.COMPLETED.getCode());
+        if (updated == 0) {
+            Slip current = slipRepository.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("找不到指定的單據: " + id));
+            requireDraft(current);
+            throw new IllegalStateException("單據狀態已變更，請重新操作");
         }
         
-        // 先更新單據狀態為完成
+        // 條件式更新成功即代表狀態已由草稿轉為完成，沿用先前讀取的單據，不再重新查詢
         slip.setStatus(SlipStatus.COMPLETED.getCode());
-        Slip completedSlip = slipRepository.save(slip);
+        slip.setUpdatedAt(LocalDateTime.now());
         
-        // 根據單據類型異步調用相應的庫存服務
-        SlipType slipType = SlipType.fromCode(completedSlip.getSlipsType());
-        processInventoryOperationAsync(completedSlip, slipType);
+        // 啟用發件匣時寫入單據完成事件，由事件消費者送入完成流程；否則於事務提交後直接送入本機完成流程
+        if (outboxService.isEnabled()) {
+            outboxService.recordSlipCompleted(slip.getId(), type, pendingDetails);
+        } else if (pendingDetails > 0) {
+            slipCompletionPipeline.submit(slip.getId(), type);
+        }
         
-        log.info("成功完成單據 - ID: {}, 類型: {}", completedSlip.getId(), slipType.getDescription());
-        return completedSlip;
+        log.info("成功完成單據 - ID: {}, 類型: {}, 待處理明細: {}", slip.getId(), type.getDescription(), pendingDetails);
+        return slip;
     }
     
     /**
-     * 根據單據類型異步處理庫存操作
-     * 逐一處理 SlipDetail 記錄到 StockMovement，並更新 SlipDetail 的狀態
+     * 檢查單據仍為草稿狀態，已取消或已完成時拋出例外
      */
-    private void processInventoryOperationAsync(Slip slip, SlipType slipType) {
-        log.info("開始處理單據庫存操作 - 單據ID: {}, 類型: {}", slip.getId(), slipType.getDescription());
-        
-        // 獲取待處理的單據明細
-        List<SlipDetail> slipDetails = slipDetailRepository.findBySlipIdAndStatus(slip.getId(), SlipDetail.Status.PENDING);
-        
-        if (slipDetails.isEmpty()) {
-            log.info("單據沒有待處理的明細 - 單據ID: {}", slip.getId());
-            return;
+    private void requireDraft(Slip slip) {
+        if (slip.getStatus() == SlipStatus.CANCELLED.getCode()) {
+            throw new IllegalStateException("已取消的單據無法完成");
         }
-        
-        log.info("找到 {} 筆待處理明細 - 單據ID: {}", slipDetails.size(), slip.getId());
-        
-        // 逐一處理每個 SlipDetail
-        for (SlipDetail slipDetail : slipDetails) {
-            processSlipDetailAsync(slipDetail, slipType);
+        if (slip.getStatus() != SlipStatus.DRAFT.getCode()) {
+            throw new IllegalStateException("單據已經是完成狀態");
         }
-        
-        log.info("完成單據庫存操作處理 - 單據ID: {}, 處理明細數: {}", slip.getId(), slipDetails.size());
     }
     
     /**
-     * 異步處理單個 SlipDetail 記錄
+     * 檢查單據待處理明細的來源庫存是否足夠
+     * 以單一彙總查詢依 (商品, 來源儲位) 加總需求量並與庫存比對，不足時拋出例外並列出前幾筆短缺
      */
-    @Async
-    public void processSlipDetailAsync(SlipDetail slipDetail, SlipType slipType) {
-        log.info("開始處理單據明細 - 明細ID: {}, 項次: {}, 類型: {}", 
-                slipDetail.getId(), slipDetail.getLineNumber(), slipType.getDescription());
-        
-        try {
-            // 更新狀態為處理中（可選，用於追蹤）
-            // slipDetail.setStatus(SlipDetail.Status.PROCESSING);
-            // slipDetailRepository.save(slipDetail);
-            
-            String note = String.format("單據完成觸發 - 單據ID: %d, 明細ID: %d, 項次: %d", 
-                    slipDetail.getSlipId(), slipDetail.getId(), slipDetail.getLineNumber());
-            
-            switch (slipType) {
-                case INBOUND:
-                    processInboundSlipDetail(slipDetail, note);
-                    break;
-                case OUTBOUND:
-                    processOutboundSlipDetail(slipDetail, note);
-                    break;
-                case TRANSFER:
-                    processTransferSlipDetail(slipDetail, note);
-                    break;
-                case FREEZE:
-                    processFreezeSlipDetail(slipDetail, note);
-                    break;
-                case SCRAP:
-                    processScrapSlipDetail(slipDetail, note);
-                    break;
-                default:
-                    log.warn("未知的單據類型，跳過處理 - 明細ID: {}, 類型: {}", slipDetail.getId(), slipType);
-                    return;
-            }
-            
-            // 更新 SlipDetail 狀態為已處理
-            slipDetail.setStatus(SlipDetail.Status.PROCESSED);
-            slipDetailRepository.save(slipDetail);
-            
-            log.info("成功處理單據明細 - 明細ID: {}, 項次: {}", slipDetail.getId(), slipDetail.getLineNumber());
-            
-        } catch (Exception e) {
-            log.error("處理單據明細失敗 - 明細ID: {}, 項次: {}, 錯誤: {}", 
-                    slipDetail.getId(), slipDetail.getLineNumber(), e.getMessage(), e);
-            
-            // 更新 SlipDetail 狀態為失敗
-            try {
-                slipDetail.setStatus(SlipDetail.Status.FAILED);
-                slipDetailRepository.save(slipDetail);
-            } catch (Exception saveException) {
-                log.error("更新明細狀態失敗 - 明細ID: {}, 錯誤: {}", slipDetail.getId(), saveException.getMessage());
-            }
+    private void checkStockSufficiency(Long slipId) {
+        List<Object[]> shortages = slipDetailRepository.findShortagesBySlipIdAndStatus(slipId, SlipDetail.Status.PENDING);
+        if (shortages.isEmpty()) {
+            return;
         }
+        
+        StringBuilder message = new StringBuilder("庫存不足，無法完成單據 - 單據ID: ").append(slipId);
+        for (int i = 0; i < Math.min(shortages.size(), 5); i++) {
+            Object[] row = shortages.get(i);
+            String locationCode = storageLocationResolver.findById((Long) row[1])
+                    .map(StorageLocationResolver.LocationRef::code)
+                    .orElse(String.valueOf(row[1]));
+            message.append("; 商品ID: ").append(row[0])
+                    .append(", 儲位: ").append(locationCode)
+                    .append(", 需求: ").append(row[2])
+                    .append(", 庫存: ").append(row[3]);
+        }
+        if (shortages.size() > 5) {
+            message.append("; 其餘 ").append(shortages.size() - 5).append(" 筆略");
+        }
+        
+        log.warn("單據出庫前檢查未通過 - 單據ID: {}, 短缺筆數: {}", slipId, shortages.size());
+        throw new IllegalStateException(message.toString());
     }
     
     /**
-     * 處理入庫類型的 SlipDetail
-     */
-    private void processInboundSlipDetail(SlipDetail slipDetail, String note) {
-        String toLocation = getLocationCodeById(slipDetail.getToStorageLocationId());
-        warehouseManagementService.inbound(slipDetail.getItemId(), toLocation, slipDetail.getQuantityChange(), note);
-        log.debug("入庫操作完成 - 明細ID: {}, 商品ID: {}, 位置: {}, 數量: {}", 
-                slipDetail.getId(), slipDetail.getItemId(), toLocation, slipDetail.getQuantityChange());
-    }
-    
-    /**
-     * 處理出庫類型的 SlipDetail
-     */
-    private void processOutboundSlipDetail(SlipDetail slipDetail, String note) {
-        String fromLocation = getLocationCodeById(slipDetail.getFromStorageLocationId());
-        warehouseManagementService.outbound(slipDetail.getItemId(), fromLocation, slipDetail.getQuantityChange(), note);
-        log.debug("出庫操作完成 - 明細ID: {}, 商品ID: {}, 位置: {}, 數量: {}", 
-                slipDetail.getId(), slipDetail.getItemId(), fromLocation, slipDetail.getQuantityChange());
-    }
-    
-    /**
-     * 處理轉庫類型的 SlipDetail
-     */
-    private void processTransferSlipDetail(SlipDetail slipDetail, String note) {
-        String fromLocation = getLocationCodeById(slipDetail.getFromStorageLocationId());
-        String toLocation = getLocationCodeById(slipDetail.getToStorageLocationId());
-        warehouseManagementService.transfer(slipDetail.getItemId(), fromLocation, toLocation, slipDetail.getQuantityChange(), note);
-        log.debug("轉庫操作完成 - 明細ID: {}, 商品ID: {}, 從 {} 轉至 {}, 數量: {}", 
-                slipDetail.getId(), slipDetail.getItemId(), fromLocation, toLocation, slipDetail.getQuantityChange());
-    }
-    
-    /**
-     * 處理凍結類型的 SlipDetail
-     */
-    private void processFreezeSlipDetail(SlipDetail slipDetail, String note) {
-        String fromLocation = getLocationCodeById(slipDetail.getFromStorageLocationId());
-        warehouseManagementService.freeze(slipDetail.getItemId(), fromLocation, slipDetail.getQuantityChange(), note);
-        log.debug("凍結操作完成 - 明細ID: {}, 商品ID: {}, 位置: {}, 數量: {}", 
-                slipDetail.getId(), slipDetail.getItemId(), fromLocation, slipDetail.getQuantityChange());
-    }
-    
-    /**
-     * 處理報廢類型的 SlipDetail
-     */
-    private void processScrapSlipDetail(SlipDetail slipDetail, String note) {
-        String fromLocation = getLocationCodeById(slipDetail.getFromStorageLocationId());
-        warehouseManagementService.scrap(slipDetail.getItemId(), fromLocation, slipDetail.getQuantityChange(), note);
-        log.debug("報廢操作完成 - 明細ID: {}, 商品ID: {}, 位置: {}, 數量: {}", 
-                slipDetail.getId(), slipDetail.getItemId(), fromLocation, slipDetail.getQuantityChange());
-    }
-    
-    /**
-     * 根據儲位ID獲取位置編號
+     * 查詢單據處理進度（依明細狀態分組統計）
      */
-    private String getLocationCodeById(Long storageLocationId) {
-        if (storageLocationId == null) {
-            throw new IllegalArgumentException("儲位ID不能為空");
-        }
-        
-        StorageLocation storageLocation = storageLocationRepository.findById(storageLocationId)
-                .orElseThrow(() -> new IllegalArgumentException("找不到指定的儲位: " + storageLocationId));
+    @Transactional(readOnly = true)
+    public SlipProgressDto getSlipProgress(Long id) {
+        Slip slip = slipRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("找不到指定的單據: " + id));
         
-        if (storageLocation.getCode() == null || storageLocation.getCode().trim().isEmpty()) {
-            throw new IllegalArgumentException("儲位編號不能為空 - 儲位ID: " + storageLocationId);
+        SlipProgressDto progress = new SlipProgressDto();
+        progress.setSlipId(slip.getId());
+        progress.setSlipStatus(SlipStatus.fromCode(slip.getStatus()).name());
+        
+        long total = 0;
+        for (Object[] row : slipDetailRepository.countGroupByStatusBySlipId(id)) {
+            SlipDetail.Status status = (SlipDetail.Status) row[0];
+            long count = (Long) row[1];
+            total += count;
+            if (status == null) {
+                continue;
+            }
+            switch (status) {
+                case PENDING -> progress.setPending(count);
+                case PROCESSED -> progress.setProcessed(count);
+                case FAILED -> progress.setFailed(count);
+                case DEAD_LETTER -> progress.setDeadLetter(count);
+                case CANCELLED -> progress.setCancelled(count);
+            }
         }
+        progress.setTotal(total);
+        progress.setFinished(slip.getStatus() == SlipStatus.COMPLETED.getCode()
+                && progress.getPending() == 0 && progress.getFailed() == 0);
         
-        return storageLocation.getCode();
+        return progress;
     }
 
     /**
      * 取消單據
+     * 成功時只執行一次條件式更新，僅在更新失敗時讀取單據以判斷原因
      */
-    public Slip cancelSlip(Long id) {
+    @Transactional
+    public void cancelSlip(Long id) {
         log.info("取消單據 - ID: {}", id);
         
-        Slip slip = slipRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("找不到指定的單據: " + id));
-        
-        if (slip.getStatus() == SlipStatus.CANCELLED.getCode()) {
+        // 以條件式更新轉換狀態，與並發的完成操作互斥
+        int updated = slipRepository.compareAndSetStatus(id, SlipStatus.DRAFT.getCode(), SlipStatus.CANCELLED.getCode());
+        if (updated == 0) {
+            Slip current = slipRepository.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("找不到指定的單據: " + id));
+            if (current.getStatus() == SlipStatus.COMPLETED.getCode()) {
+                throw new IllegalStateException("已完成的單據無法取消");
+            }
             throw new IllegalStateException("單據已經是取消狀態");
         }
         
-        if (slip.getStatus() == SlipStatus.COMPLETED.getCode()) {
-            throw new IllegalStateException("已完成的單據無法取消");
-        }
-        
-        slip.setStatus(SlipStatus.CANCELLED.getCode());
-        Slip cancelledSlip = slipRepository.save(slip);
-        
-        log.info("成功取消單據 - ID: {}", cancelledSlip.getId());
-        return cancelledSlip;
+        log.info("成功取消單據 - ID: {}", id);
     }
 
     //endregion
@@ -0,0 +1,222 @@
+package erp.core.service;
+
+import erp.core.dto.PageCursor;
+import erp.core.entity.StockMovement;
+import erp.core.repository.StockMovementRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 庫存異動記錄冷熱分層查詢
+ * stock_movements 依 created_at 按月分區，超過保留月數的分區由 StockMovementPartitionMaintainer
+ * 搬移至 stock_movements_archive，並將冷熱分界時間記錄於 key_values：早於分界的資料只在冷資料表，
+ * 不早於分界的資料只在熱資料表。查詢依分界時間決定資料來源，範圍完全落在分界之後時不讀取冷資料表。
+ * 分界時間於記憶體快取，TTL 到期或本機搬移後重新讀取
+ */
+@Component
+@Slf4j
+public class StockMovementArchive {
+
+    /**
+     * key_values 中記錄冷熱分界時間的配置名稱
+     */
+    public static final String BOUNDARY_KEY = "StockMovementArchiveBoundary";
+
+    /**
+     * 鍵集分頁的篩選欄位
+     */
+    public enum PageFilter {
+        ITEM,
+        STORAGE_LOCATION,
+        SOURCE_SLIP
+    }
+
+    /**
+     * 時間範圍 [from, to) 的一段，archived 表示位於冷資料表
+     */
+    public record Segment(boolean archived, LocalDateTime from, LocalDateTime to) {
+    }
+
+    private record CachedBoundary(LocalDateTime value, long loadedAtMillis) {
+    }
+
+    private static final CachedBoundary UNLOADED = new CachedBoundary(null, 0L);
+
+    private final StockMovementRepository stockMovementRepository;
+    private final EntityManager entityManager;
+    private final boolean enabled;
+    private final long ttlMillis;
+
+    private volatile CachedBoundary boundary = UNLOADED;
+
+    public StockMovementArchive(StockMovementRepository stockMovementRepository,
+                                EntityManager entityManager,
+                                @Value("${erp.stock-movement.archive.enabled:true}") boolean enabled,
+                                @Value("${erp.stock-movement.archive.boundary-ttl-seconds:60}") long ttlSeconds) {
+        this.stockMovementRepository = stockMovementRepository;
+        this.entityManager = entityManager;
+        this.enabled = enabled;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    //region 查詢
+    /**
+     * 鍵集分頁查詢異動記錄
+     * 游標早於分界時間時先讀冷資料表，不足一頁再自分界時間起讀熱資料表
+     * @param filter 篩選欄位
+     * @param filterId 篩選值（商品ID、儲位ID或單據ID）
+     * @param fetchSize 讀取筆數（頁大小 + 1）
+     * @return 依 (created_at, id) 排序的異動記錄
+     */
+    public List<StockMovement> findPage(PageFilter filter, Long filterId, PageCursor cursor, int fetchSize) {
+        LocalDateTime before = boundary();
+        if (before == null || !cursor.createdAt().isBefore(before)) {
+            return findHotPage(filter, filterId, cursor, fetchSize);
+        }
+
+        List<StockMovement> rows = new ArrayList<>(findArchivedPage(filter, filterId, cursor, before, fetchSize));
+        if (rows.size() < fetchSize) {
+            // (分界時間, Long.MIN_VALUE) 之後即 created_at >= 分界時間
+            rows.addAll(findHotPage(filter, filterId, new PageCursor(before, Long.MIN_VALUE), fetchSize - rows.size()));
+        }
+        return rows;
+    }
+
+    /**
+     * 將時間範圍 [from, to) 依分界時間切分為冷、熱兩段，依時間先後排列
+     * 串流查詢須逐段開啟並關閉，同一連線同時只能有一個串流結果集
+     */
+    public List<Segment> split(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime before = boundary();
+        if (before == null || !from.isBefore(before)) {
+            return List.of(new Segment(false, from, to));
+        }
+        if (!to.isAfter(before)) {
+            return List.of(new Segment(true, from, to));
+        }
+        return List.of(new Segment(true, from, before), new Segment(false, before, to));
+    }
+
+    /**
+     * 串流查詢一段時間範圍內的異動記錄，呼叫端須在事務中以 try-with-resources 關閉串流
+     * @param itemId 商品ID，可為 null
+     * @param storageLocationId 儲位ID，可為 null
+     */
+    public Stream<StockMovement> stream(Segment segment, Long itemId, Long storageLocationId) {
+        LocalDateTime from = segment.from();
+        LocalDateTime to = segment.to();
+        if (segment.archived()) {
+            if (itemId != null && storageLocationId != null) {
+                return stockMovementRepository.streamArchivedByItemIdAndStorageLocationIdAndCreatedAtRange(itemId, storageLocationId, from, to);
+            }
+            if (itemId != null) {
+                return stockMovementRepository.streamArchivedByItemIdAndCreatedAtRange(itemId, from, to);
+            }
+            if (storageLocationId != null) {
+                return stockMovementRepository.streamArchivedByStorageLocationIdAndCreatedAtRange(storageLocationId, from, to);
+            }
+            return stockMovementRepository.streamArchivedByCreatedAtRange(from, to);
+        }
+
+        if (itemId != null && storageLocationId != null) {
+            return stockMovementRepository.streamByItemIdAndStorageLocationIdAndCreatedAtRange(itemId, storageLocationId, from, to);
+        }
+        if (itemId != null) {
+            return stockMovementRepository.streamByItemIdAndCreatedAtRange(itemId, from, to);
+        }
+        if (storageLocationId != null) {
+            return stockMovementRepository.streamByStorageLocationIdAndCreatedAtRange(storageLocationId, from, to);
+        }
+        return stockMovementRepository.streamByCreatedAtRange(from, to);
+    }
+
+    private List<StockMovement> findHotPage(PageFilter filter, Long filterId, PageCursor cursor, int fetchSize) {
+        Limit limit = Limit.of(fetchSize);
+        return switch (filter) {
+            case ITEM -> stockMovementRepository.findPageByItemIdAfter(filterId, cursor.createdAt(), cursor.id(), limit);
+            case STORAGE_LOCATION -> stockMovementRepository.findPageByStorageLocationIdAfter(filterId, cursor.createdAt(), cursor.id(), limit);
+            case SOURCE_SLIP -> stockMovementRepository.findPageBySourceSlipIdAfter(filterId, cursor.createdAt(), cursor.id(), limit);
+        };
+    }
+
+    private List<StockMovement> findArchivedPage(PageFilter filter, Long filterId, PageCursor cursor,
+                                                 LocalDateTime before, int fetchSize) {
+        return switch (filter) {
+            case ITEM -> stockMovementRepository.findArchivedPageByItemIdAfter(
+                    filterId, cursor.createdAt(), cursor.id(), before, fetchSize);
+            case STORAGE_LOCATION -> stockMovementRepository.findArchivedPageByStorageLocationIdAfter(
+                    filterId, cursor.createdAt(), cursor.id(), before, fetchSize);
+            case SOURCE_SLIP -> stockMovementRepository.findArchivedPageBySourceSlipIdAfter(
+                    filterId, cursor.createdAt(), cursor.id(), before, fetchSize);
+        };
+    }
+    //endregion
+
+    //region 冷熱分界
+    /**
+     * 目前的冷熱分界時間
+     * @return 分界時間，尚未搬移任何資料或停用冷資料查詢時為 null
+     */
+    public LocalDateTime boundary() {
+        if (!enabled) {
+            return null;
+        }
+        CachedBoundary current = boundary;
+        if (System.currentTimeMillis() - current.loadedAtMillis() < ttlMillis) {
+            return current.value();
+        }
+        return reload();
+    }
+
+    /**
+     * 使快取的分界時間失效，下次查詢時重新讀取
+     */
+    public void refresh() {
+        boundary = UNLOADED;
+    }
+
+    private synchronized LocalDateTime reload() {
+        CachedBoundary current = boundary;
+        if (System.currentTimeMillis() - current.loadedAtMillis() < ttlMillis) {
+            return current.value();
+        }
+
+        LocalDateTime value;
+        try {
+            value = loadBoundary();
+        } catch (RuntimeException e) {
+            // 讀取失敗時沿用先前的分界時間；分界只會往後移動，且舊分區延後刪除，沿用期間查詢結果仍完整
+            if (current == UNLOADED) {
+                throw e;
+            }
+            log.warn("讀取庫存異動冷熱分界時間失敗，沿用先前的值 - 錯誤: {}", e.getMessage());
+            value = current.value();
+        }
+
+        boundary = new CachedBoundary(value, System.currentTimeMillis());
+        return value;
+    }
+
+    /**
+     * 自 key_values 讀取冷熱分界時間，尚未搬移任何資料時為 null
+     */
+    LocalDateTime loadBoundary() {
+        List<?> values = entityManager.createNativeQuery(
+                        "SELECT `value` FROM key_values WHERE `key` = :key ORDER BY id DESC LIMIT 1")
+                .setParameter("key", BOUNDARY_KEY)
+                .getResultList();
+        if (values.isEmpty() || values.get(0) == null) {
+            return null;
+        }
+        return LocalDateTime.parse(values.get(0).toString().trim());
+    }
+    //endregion
+}
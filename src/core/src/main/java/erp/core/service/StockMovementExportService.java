@@ -0,0 +1,98 @@
+package erp.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import erp.core.entity.StockMovement;
+import erp.core.service.StockMovementArchive.Segment;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * 庫存異動記錄串流匯出
+ * 以 MySQL 串流結果集逐列讀取，每列寫出一行 JSON（NDJSON）後即自持久化上下文移除，
+ * 記憶體用量與匯出範圍大小無關；範圍早於冷熱分界時間時先匯出冷資料表，再匯出熱資料表
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockMovementExportService {
+
+    /**
+     * 未指定起始時間時的預設值
+     */
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final StockMovementArchive stockMovementArchive;
+    private final StorageLocationResolver storageLocationResolver;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 匯出條件，時間範圍為 [from, to)
+     */
+    public record Criteria(Long itemId, Long storageLocationId, LocalDateTime from, LocalDateTime to) {
+    }
+
+    /**
+     * 驗證並建立匯出條件
+     * 應於開始輸出前呼叫，參數錯誤時仍可回應錯誤訊息
+     * @param itemId 商品ID，可為 null
+     * @param location 儲位編號，可為 null
+     * @param from 起始時間（含），null 表示不限
+     * @param to 結束時間（不含），null 表示至目前為止
+     */
+    public Criteria criteria(Long itemId, String location, LocalDateTime from, LocalDateTime to) {
+        Long storageLocationId = null;
+        if (location != null && !location.trim().isEmpty()) {
+            storageLocationId = storageLocationResolver.requireByCode(location.trim()).id();
+        }
+
+        LocalDateTime effectiveFrom = from != null ? from : EARLIEST;
+        LocalDateTime effectiveTo = to != null ? to : LocalDateTime.now();
+        if (!effectiveFrom.isBefore(effectiveTo)) {
+            throw new IllegalArgumentException("起始時間必須早於結束時間");
+        }
+        return new Criteria(itemId, storageLocationId, effectiveFrom, effectiveTo);
+    }
+
+    /**
+     * 將符合條件的異動記錄依 (created_at, id) 順序以 NDJSON 寫出
+     * 串流期間佔用一個資料庫連線，直到寫出完成
+     * @param out 輸出串流，不會被關閉
+     * @return 匯出筆數
+     */
+    @Transactional(readOnly = true)
+    public long export(Criteria criteria, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(StockMovement.class);
+        long count = 0;
+
+        // 同一連線同時只能有一個串流結果集，冷、熱兩段依序開啟
+        for (Segment segment : stockMovementArchive.split(criteria.from(), criteria.to())) {
+            try (Stream<StockMovement> movements = stockMovementArchive.stream(
+                    segment, criteria.itemId(), criteria.storageLocationId())) {
+                Iterator<StockMovement> iterator = movements.iterator();
+                while (iterator.hasNext()) {
+                    StockMovement movement = iterator.next();
+                    out.write(writer.writeValueAsBytes(movement));
+                    out.write('\n');
+                    // 已寫出的實體不再需要，避免持久化上下文隨匯出筆數成長
+                    entityManager.detach(movement);
+                    count++;
+                }
+            }
+        }
+
+        out.flush();
+        log.info("匯出庫存異動記錄完成 - 條件: {}, 筆數: {}", criteria, count);
+        return count;
+    }
+}
@@ -0,0 +1,399 @@
+package erp.core.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.query.NativeQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 庫存異動記錄分區維護
+ * stock_movements 依 created_at 按月 RANGE COLUMNS 分區，最後一個分區為 MAXVALUE。每日執行：
+ * 1. 由 MAXVALUE 分區切出未來月份的分區（分區為空，不搬移資料）
+ * 2. 刪除已搬移至冷資料表、且分界時間更新已超過寬限時間的分區
+ * 3. 將超過熱資料保留月數的分區依ID分批以 INSERT IGNORE 複製至 stock_movements_archive，再推進 key_values 中的冷熱分界時間；
+ *    每日彙總只讀取熱資料表，尚未定案（仍會重新彙總）的日期不搬移
+ * 複製與刪除分兩次執行，其他實例快取的舊分界時間到期前，熱資料表仍保有完整資料。
+ * 各步驟每次重新讀取 information_schema 的分區狀態，中斷或多實例同時執行時下次執行會補齊；
+ * 資料表未分區時略過。原生 SQL 皆標示影響的資料表，避免 Hibernate 清除整個二級快取
+ */
+@Component
+@ConditionalOnProperty(name = "erp.stock-movement.partition.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class StockMovementPartitionMaintainer {
+
+    private static final String TABLE = "stock_movements";
+    private static final String ARCHIVE_TABLE = "stock_movements_archive";
+    private static final String KEY_VALUES_TABLE = "key_values";
+    private static final String COLUMNS = "id, item_id, warehouse_id, storage_location_id, type, quantity_change, note, " +
+            "source_slip_id, source_slip_detail_id, created_at, updated_at";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final DateTimeFormatter PARTITION_BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 分區資訊
+     * @param name 分區名稱
+     * @param lowerBound 下界（含），第一個分區為 null
+     * @param upperBound 上界（不含），MAXVALUE 分區為 null
+     */
+    record PartitionInfo(String name, LocalDateTime lowerBound, LocalDateTime upperBound) {
+    }
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final StockMovementArchive stockMovementArchive;
+    private final StockMovementRollupService stockMovementRollupService;
+    private final int futureMonths;
+    private final int hotMonths;
+    private final int archiveChunkSize;
+    private final Duration dropGrace;
+
+    public StockMovementPartitionMaintainer(EntityManager entityManager,
+                                            PlatformTransactionManager transactionManager,
+                                            StockMovementArchive stockMovementArchive,
+                                            StockMovementRollupService stockMovementRollupService,
+                                            @Value("${erp.stock-movement.partition.future-months:3}") int futureMonths,
+                                            @Value("${erp.stock-movement.partition.hot-months:12}") int hotMonths,
+                                            @Value("${erp.stock-movement.partition.archive-chunk-size:10000}") int archiveChunkSize,
+                                            @Value("${erp.stock-movement.archive.boundary-ttl-seconds:60}") long boundaryTtlSeconds) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stockMovementArchive = stockMovementArchive;
+        this.stockMovementRollupService = stockMovementRollupService;
+        this.futureMonths = Math.max(1, futureMonths);
+        this.hotMonths = Math.max(1, hotMonths);
+        this.archiveChunkSize = Math.max(1, archiveChunkSize);
+        // 其他實例最晚於分界時間快取到期時改讀冷資料表，寬限取兩倍 TTL
+        this.dropGrace = Duration.ofSeconds(boundaryTtlSeconds * 2);
+    }
+
+    /**
+     * 啟動時確保當月與未來月份的分區存在
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensurePartitionsOnStartup() {
+        try {
+            ensureFuturePartitions();
+        } catch (RuntimeException e) {
+            log.error("建立庫存異動未來分區失敗 - 錯誤: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 每日分區維護
+     */
+    @Scheduled(cron = "${erp.stock-movement.partition.cron:0 15 2 * * *}")
+    public void maintain() {
+        try {
+            ensureFuturePartitions();
+            dropArchivedPartitions();
+            archiveExpiredPartitions();
+        } catch (RuntimeException e) {
+            log.error("庫存異動分區維護失敗 - 錯誤: {}", e.getMessage(), e);
+        }
+    }
+
+    //region 未來分區
+    /**
+     * 由 MAXVALUE 分區切出至 (當月 + future-months) 為止的月分區
+     */
+    void ensureFuturePartitions() {
+        List<PartitionInfo> partitions = loadPartitions();
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        PartitionInfo last = partitions.get(partitions.size() - 1);
+        LocalDateTime target = firstDayOfMonth(LocalDate.now()).plusMonths(futureMonths + 1L);
+        LocalDateTime next = last.upperBound() != null ? last.upperBound() : last.lowerBound();
+        if (next == null) {
+            // 只有 MAXVALUE 分區：由當月開始切分
+            next = firstDayOfMonth(LocalDate.now());
+        }
+
+        int created = 0;
+        while (next.isBefore(target)) {
+            LocalDateTime upper = next.plusMonths(1);
+            String partition = "PARTITION " + next.format(PARTITION_NAME) + " VALUES LESS THAN ('" + upper.format(PARTITION_BOUND) + "')";
+            if (last.upperBound() == null) {
+                executeDdl("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + last.name() + " INTO (" +
+                        partition + ", PARTITION " + last.name() + " VALUES LESS THAN (MAXVALUE))");
+            } else {
+                executeDdl("ALTER TABLE " + TABLE + " ADD PARTITION (" + partition + ")");
+            }
+            next = upper;
+            created++;
+        }
+
+        if (created > 0) {
+            log.info("已建立庫存異動未來分區 - 數量: {}, 涵蓋至: {}", created, target);
+        }
+    }
+    //endregion
+
+    //region 冷資料搬移
+    /**
+     * 將上界不晚於 (當月 - hot-months) 與每日彙總定案水位、且尚未搬移的分區複製至冷資料表，並推進冷熱分界時間
+     */
+    void archiveExpiredPartitions() {
+        List<PartitionInfo> partitions = loadPartitions();
+        if (partitions.isEmpty() || !archiveTableExists()) {
+            return;
+        }
+
+        LocalDateTime archiveBefore = firstDayOfMonth(LocalDate.now()).minusMonths(hotMonths);
+        LocalDate finalizedUntil = stockMovementRollupService.finalizedUntil();
+        if (finalizedUntil == null) {
+            log.warn("庫存異動尚未完成每日彙總，略過冷資料搬移");
+            return;
+        }
+        if (finalizedUntil.atStartOfDay().isBefore(archiveBefore)) {
+            archiveBefore = finalizedUntil.atStartOfDay();
+        }
+        LocalDateTime boundary = loadBoundary().value();
+        LocalDateTime newBoundary = boundary;
+        for (PartitionInfo partition : partitions) {
+            LocalDateTime upper = partition.upperBound();
+            if (upper == null || upper.isAfter(archiveBefore)) {
+                break;
+            }
+            if (boundary != null && !upper.isAfter(boundary)) {
+                continue;
+            }
+
+            int copied = copyToArchive(partition);
+            newBoundary = upper;
+            log.info("庫存異動分區已複製至冷資料表 - 分區: {}, 筆數: {}", partition.name(), copied);
+        }
+
+        if (newBoundary != null && !newBoundary.equals(boundary)) {
+            saveBoundary(newBoundary);
+            stockMovementArchive.refresh();
+            log.info("庫存異動冷熱分界時間已更新 - 由 {} 改為 {}", boundary, newBoundary);
+        }
+    }
+
+    /**
+     * 刪除已搬移至冷資料表的分區
+     * 分界時間更新後需經過寬限時間，刪除前確認冷資料表筆數不少於分區筆數，否則重新複製
+     */
+    void dropArchivedPartitions() {
+        List<PartitionInfo> partitions = loadPartitions();
+        if (partitions.isEmpty() || !archiveTableExists()) {
+            return;
+        }
+
+        BoundaryRecord boundary = loadBoundary();
+        if (boundary.value() == null || boundary.updatedAt() == null
+                || boundary.updatedAt().isAfter(LocalDateTime.now().minus(dropGrace))) {
+            return;
+        }
+
+        // 保留至少一個有上界的分區與 MAXVALUE 分區
+        for (int i = 0; i < partitions.size() - 2; i++) {
+            PartitionInfo partition = partitions.get(i);
+            if (partition.upperBound() == null || partition.upperBound().isAfter(boundary.value())) {
+                break;
+            }
+
+            long hotCount = countPartition(partition);
+            if (countArchived(partition) < hotCount) {
+                log.warn("冷資料表筆數少於分區筆數，重新複製 - 分區: {}", partition.name());
+                copyToArchive(partition);
+                if (countArchived(partition) < hotCount) {
+                    throw new IllegalStateException("庫存異動分區複製不完整，停止刪除: " + partition.name());
+                }
+            }
+
+            executeDdl("ALTER TABLE " + TABLE + " DROP PARTITION " + partition.name());
+            log.info("已刪除搬移至冷資料表的庫存異動分區 - 分區: {}, 筆數: {}", partition.name(), hotCount);
+        }
+    }
+
+    /**
+     * 依ID分批將分區複製至冷資料表，每批 archive-chunk-size 筆於獨立事務內執行，不以單一大事務複製整個分區
+     * @return 新寫入冷資料表的筆數（已存在的記錄由 INSERT IGNORE 略過）
+     */
+    int copyToArchive(PartitionInfo partition) {
+        int copied = 0;
+        long afterId = Long.MIN_VALUE;
+        Long upToId;
+        while ((upToId = lastIdOfChunk(partition, afterId)) != null) {
+            copied += copyChunk(partition, afterId, upToId);
+            afterId = upToId;
+            log.debug("庫存異動分區分批複製 - 分區: {}, 至ID: {}, 累計筆數: {}", partition.name(), upToId, copied);
+        }
+        return copied;
+    }
+
+    /**
+     * 於獨立事務內複製分區中ID位於 (afterId, upToId] 的記錄
+     */
+    int copyChunk(PartitionInfo partition, long afterId, long upToId) {
+        Integer copied = transactionTemplate.execute(status -> entityManager.createNativeQuery(
+                        "INSERT IGNORE INTO " + ARCHIVE_TABLE + " (" + COLUMNS + ") SELECT " + COLUMNS +
+                                " FROM " + TABLE + " PARTITION (" + partition.name() + ") WHERE id > :afterId AND id <= :upToId")
+                .setParameter("afterId", afterId)
+                .setParameter("upToId", upToId)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(ARCHIVE_TABLE)
+                .executeUpdate());
+        return copied != null ? copied : 0;
+    }
+
+    /**
+     * 分區中ID大於 afterId 的下一批最後一筆ID，沒有剩餘記錄時為 null（利用主鍵 (id, created_at)）
+     */
+    Long lastIdOfChunk(PartitionInfo partition, long afterId) {
+        Object lastId = entityManager.createNativeQuery(
+                        "SELECT MAX(id) FROM (SELECT id FROM " + TABLE + " PARTITION (" + partition.name() + ") " +
+                        "WHERE id > :afterId ORDER BY id LIMIT :limit) AS chunk")
+                .setParameter("afterId", afterId)
+                .setParameter("limit", archiveChunkSize)
+                .getSingleResult();
+        return lastId != null ? ((Number) lastId).longValue() : null;
+    }
+
+    long countPartition(PartitionInfo partition) {
+        Number count = (Number) entityManager.createNativeQuery(
+                "SELECT COUNT(*) FROM " + TABLE + " PARTITION (" + partition.name() + ")").getSingleResult();
+        return count.longValue();
+    }
+
+    long countArchived(PartitionInfo partition) {
+        String sql = "SELECT COUNT(*) FROM " + ARCHIVE_TABLE + " WHERE created_at < :upper" +
+                (partition.lowerBound() != null ? " AND created_at >= :lower" : "");
+        Query query = entityManager.createNativeQuery(sql).setParameter("upper", partition.upperBound());
+        if (partition.lowerBound() != null) {
+            query.setParameter("lower", partition.lowerBound());
+        }
+        return ((Number) query.getSingleResult()).longValue();
+    }
+    //endregion
+
+    //region 分界時間
+    record BoundaryRecord(LocalDateTime value, LocalDateTime updatedAt) {
+    }
+
+    BoundaryRecord loadBoundary() {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT `value`, updated_at FROM key_values WHERE `key` = :key ORDER BY id DESC LIMIT 1")
+                .setParameter("key", StockMovementArchive.BOUNDARY_KEY)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return new BoundaryRecord(null, null);
+        }
+        Object[] row = (Object[]) rows.get(0);
+        LocalDateTime value = row[0] != null ? LocalDateTime.parse(row[0].toString().trim()) : null;
+        return new BoundaryRecord(value, toLocalDateTime(row[1]));
+    }
+
+    void saveBoundary(LocalDateTime boundary) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int updated = entityManager.createNativeQuery(
+                            "UPDATE key_values SET `value` = :value WHERE `key` = :key")
+                    .setParameter("value", boundary.toString())
+                    .setParameter("key", StockMovementArchive.BOUNDARY_KEY)
+                    .unwrap(NativeQuery.class)
+                    .addSynchronizedQuerySpace(KEY_VALUES_TABLE)
+                    .executeUpdate();
+            if (updated == 0) {
+                entityManager.createNativeQuery(
+                                "INSERT INTO key_values (`key`, `value`, `description`) VALUES (:key, :value, :description)")
+                        .setParameter("key", StockMovementArchive.BOUNDARY_KEY)
+                        .setParameter("value", boundary.toString())
+                        .setParameter("description", "庫存異動冷熱分界時間，早於此時間的記錄位於 stock_movements_archive")
+                        .unwrap(NativeQuery.class)
+                        .addSynchronizedQuerySpace(KEY_VALUES_TABLE)
+                        .executeUpdate();
+            }
+        });
+    }
+    //endregion
+
+    //region 分區狀態
+    /**
+     * 依順序讀取 stock_movements 的分區，未分區時回傳空清單
+     */
+    List<PartitionInfo> loadPartitions() {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = :table ORDER BY PARTITION_ORDINAL_POSITION")
+                .setParameter("table", TABLE)
+                .getResultList();
+
+        List<PartitionInfo> partitions = new ArrayList<>();
+        LocalDateTime lower = null;
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            if (columns[0] == null) {
+                log.warn("{} 尚未分區，略過分區維護", TABLE);
+                return List.of();
+            }
+            LocalDateTime upper = parseBound(columns[1]);
+            partitions.add(new PartitionInfo(columns[0].toString(), lower, upper));
+            lower = upper;
+        }
+        return partitions;
+    }
+
+    boolean archiveTableExists() {
+        Number count = (Number) entityManager.createNativeQuery(
+                        "SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = :table")
+                .setParameter("table", ARCHIVE_TABLE)
+                .getSingleResult();
+        if (count.longValue() == 0) {
+            log.warn("{} 不存在，略過冷資料搬移", ARCHIVE_TABLE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 解析分區上界，格式為 '2026-11-01 00:00:00'，MAXVALUE 回傳 null
+     */
+    static LocalDateTime parseBound(Object description) {
+        String value = description != null ? description.toString().replace("'", "").trim() : "";
+        if (value.isEmpty() || "MAXVALUE".equalsIgnoreCase(value)) {
+            return null;
+        }
+        return LocalDateTime.parse(value.substring(0, Math.min(value.length(), 19)), PARTITION_BOUND);
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime localDateTime) {
+            return localDateTime;
+        }
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return null;
+    }
+
+    private static LocalDateTime firstDayOfMonth(LocalDate date) {
+        return date.withDayOfMonth(1).atStartOfDay();
+    }
+
+    void executeDdl(String sql) {
+        transactionTemplate.executeWithoutResult(status -> entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(TABLE)
+                .executeUpdate());
+    }
+    //endregion
+}
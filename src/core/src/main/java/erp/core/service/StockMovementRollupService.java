@@ -0,0 +1,226 @@
+package erp.core.service;
+
+import erp.core.dto.MovementTotalsDto;
+import erp.core.entity.StockMovement.MovementType;
+import erp.core.repository.StockMovementDailyRollupRepository;
+import erp.core.repository.StockMovementRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 庫存異動每日彙總
+ * 已結束的日期以 (日期, 商品, 倉庫, 儲位, 類型) 彙總至 stock_movement_daily_rollups，
+ * 合計查詢讀取彙總再加上尚未彙總的尾端異動，成本與天數成正比而非異動筆數。
+ * 彙總進度以最後已彙總的日期為水位，水位之前的日期皆已彙總；背景工作每次自水位起以整日為單位補齊，
+ * 每段於同一事務內先刪除再寫入，重複執行或多實例同時執行結果相同。
+ * 異動ID由各實例分段分配，提交順序與ID順序不一致，故以日期而非異動ID作為水位；
+ * 日期結束後需再經過緩衝時間才彙總，涵蓋跨越午夜提交的事務。
+ * 緩衝時間之後才提交的異動（長事務、重試）不會進入已彙總的日期，因此每次執行都重新彙總水位前最後幾天，
+ * 更早的日期視為定案，冷資料搬移只搬移定案的日期
+ */
+@Service
+@Slf4j
+public class StockMovementRollupService {
+
+    /**
+     * 尚未彙總任何日期時，尾端自此時間起
+     */
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final StockMovementRepository stockMovementRepository;
+    private final StockMovementDailyRollupRepository rollupRepository;
+    private final StorageLocationResolver storageLocationResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long settleMinutes;
+    private final int chunkDays;
+    private final int rerollDays;
+
+    public StockMovementRollupService(StockMovementRepository stockMovementRepository,
+                                      StockMovementDailyRollupRepository rollupRepository,
+                                      StorageLocationResolver storageLocationResolver,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${erp.stock-movement.rollup.enabled:true}") boolean enabled,
+                                      @Value("${erp.stock-movement.rollup.settle-minutes:10}") long settleMinutes,
+                                      @Value("${erp.stock-movement.rollup.chunk-days:31}") int chunkDays,
+                                      @Value("${erp.stock-movement.rollup.reroll-days:2}") int rerollDays) {
+        this.stockMovementRepository = stockMovementRepository;
+        this.rollupRepository = rollupRepository;
+        this.storageLocationResolver = storageLocationResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.settleMinutes = settleMinutes;
+        this.chunkDays = Math.max(1, chunkDays);
+        this.rerollDays = Math.max(0, rerollDays);
+    }
+
+    //region 彙總
+    /**
+     * 定期補齊已結束日期的彙總
+     */
+    @Scheduled(fixedDelayString = "${erp.stock-movement.rollup.poll-interval-ms:3600000}",
+               initialDelayString = "${erp.stock-movement.rollup.initial-delay-ms:60000}")
+    public void scheduledRollUp() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            rollUp();
+        } catch (RuntimeException e) {
+            log.error("庫存異動每日彙總失敗 - 錯誤: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 彙總至已結束且超過緩衝時間的日期為止
+     * @return 本次彙總的天數
+     */
+    public int rollUp() {
+        return rollUpBefore(LocalDateTime.now().minusMinutes(settleMinutes).toLocalDate());
+    }
+
+    /**
+     * 自水位前 reroll-days 天起彙總至指定日期之前（不含）
+     * @param until 彙總截止日期（不含），不可晚於今天
+     * @return 本次彙總的天數（含重新彙總的天數）
+     */
+    public int rollUpBefore(LocalDate until) {
+        if (until.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("彙總截止日期不可晚於今天");
+        }
+
+        LocalDate from = nextDateToRollUp();
+        if (from == null) {
+            return 0;
+        }
+
+        int days = 0;
+        while (from.isBefore(until)) {
+            LocalDate chunkFrom = from;
+            LocalDate chunkTo = from.plusDays(chunkDays).isBefore(until) ? from.plusDays(chunkDays) : until;
+            Integer rows = transactionTemplate.execute(status -> {
+                rollupRepository.deleteByMovementDateRange(chunkFrom, chunkTo);
+                return rollupRepository.insertFromMovements(chunkFrom.atStartOfDay(), chunkTo.atStartOfDay());
+            });
+            log.info("庫存異動每日彙總完成 - 日期: {} ~ {}, 彙總筆數: {}", chunkFrom, chunkTo.minusDays(1), rows);
+
+            days += (int) (chunkTo.toEpochDay() - chunkFrom.toEpochDay());
+            from = chunkTo;
+        }
+        return days;
+    }
+
+    /**
+     * 下一個待彙總的日期：水位往前 reroll-days 天，尚未彙總時為最早異動的日期，沒有任何異動時為 null
+     */
+    private LocalDate nextDateToRollUp() {
+        LocalDate last = rollupRepository.findLastMovementDate();
+        if (last != null) {
+            return last.plusDays(1).minusDays(rerollDays);
+        }
+        LocalDateTime earliest = stockMovementRepository.findEarliestCreatedAt();
+        return earliest != null ? earliest.toLocalDate() : null;
+    }
+
+    /**
+     * 彙總水位：此日期之前皆已彙總，尚未彙總時為 null
+     * 最後幾天沒有異動時水位可能落後，落後的天數由尾端查詢補足
+     */
+    public LocalDate rolledUpUntil() {
+        LocalDate last = rollupRepository.findLastMovementDate();
+        return last != null ? last.plusDays(1) : null;
+    }
+
+    /**
+     * 定案水位：此日期之前的彙總不再重新計算，尚未彙總時為 null
+     */
+    public LocalDate finalizedUntil() {
+        LocalDate until = rolledUpUntil();
+        return until != null ? until.minusDays(rerollDays) : null;
+    }
+    //endregion
+
+    //region 合計查詢
+    // 於同一唯讀事務內讀取水位、彙總與尾端，InnoDB 一致性快照確保彙總工作同時提交時不重複也不遺漏
+
+    /**
+     * 查詢商品的入出庫合計，指定儲位時另計算該儲位的淨異動量
+     * @param location 儲位編號，可為 null
+     */
+    @Transactional(readOnly = true)
+    public MovementTotalsDto getMovementTotals(Long itemId, String location) {
+        MovementTotalsDto totals = new MovementTotalsDto();
+        totals.setItemId(itemId);
+        totals.setInbound(getTotalInboundQuantity(itemId));
+        totals.setOutbound(getTotalOutboundQuantity(itemId));
+        if (location != null && !location.trim().isEmpty()) {
+            Long storageLocationId = storageLocationResolver.requireByCode(location.trim()).id();
+            totals.setStorageLocationId(storageLocationId);
+            totals.setLocationNet(getNetMovementByStorageLocation(itemId, storageLocationId));
+        }
+        totals.setRolledUpUntil(rolledUpUntil());
+        return totals;
+    }
+
+    /**
+     * 計算指定商品的總入庫量
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal getTotalInboundQuantity(Long itemId) {
+        LocalDate until = rolledUpUntil();
+        BigDecimal rolledUp = until != null
+                ? rollupRepository.sumQuantityByItemIdAndType(itemId, MovementType.INBOUND) : BigDecimal.ZERO;
+        return rolledUp.add(stockMovementRepository.getTotalInboundQuantityByItemIdSince(
+                itemId, MovementType.INBOUND, tailFrom(until)));
+    }
+
+    /**
+     * 計算指定商品的總出庫量
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal getTotalOutboundQuantity(Long itemId) {
+        LocalDate until = rolledUpUntil();
+        BigDecimal rolledUp = until != null
+                ? rollupRepository.sumQuantityByItemIdAndType(itemId, MovementType.OUTBOUND) : BigDecimal.ZERO;
+        return rolledUp.add(stockMovementRepository.getTotalOutboundQuantityByItemIdSince(
+                itemId, MovementType.OUTBOUND, tailFrom(until)));
+    }
+
+    /**
+     * 計算指定商品在指定倉庫的淨異動量（入庫 - 出庫）
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal getNetMovementByWarehouse(Long itemId, Long warehouseId) {
+        LocalDate until = rolledUpUntil();
+        BigDecimal rolledUp = until != null
+                ? rollupRepository.getNetMovementByItemIdAndWarehouseId(itemId, warehouseId, MovementType.INBOUND) : BigDecimal.ZERO;
+        return rolledUp.add(stockMovementRepository.getNetMovementByItemIdAndWarehouseIdSince(
+                itemId, warehouseId, MovementType.INBOUND, tailFrom(until)));
+    }
+
+    /**
+     * 計算指定商品在指定儲位的淨異動量（入庫 - 出庫）
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal getNetMovementByStorageLocation(Long itemId, Long storageLocationId) {
+        LocalDate until = rolledUpUntil();
+        BigDecimal rolledUp = until != null
+                ? rollupRepository.getNetMovementByItemIdAndStorageLocationId(itemId, storageLocationId, MovementType.INBOUND) : BigDecimal.ZERO;
+        return rolledUp.add(stockMovementRepository.getNetMovementByItemIdAndStorageLocationIdSince(
+                itemId, storageLocationId, MovementType.INBOUND, tailFrom(until)));
+    }
+
+    private static LocalDateTime tailFrom(LocalDate rolledUpUntil) {
+        return rolledUpUntil != null ? rolledUpUntil.atStartOfDay() : EARLIEST;
+    }
+    //endregion
+}
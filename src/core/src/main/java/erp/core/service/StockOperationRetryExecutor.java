@@ -0,0 +1,90 @@
+package erp.core.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 庫存操作重試執行器
+ * 以獨立事務執行整個庫存操作，遇到資料庫死鎖/鎖等待逾時等並發衝突時，
+ * 以帶隨機抖動的指數退避重新執行，超過最大次數後轉為可預期的業務錯誤
+ */
+@Component
+@Slf4j
+public class StockOperationRetryExecutor {
+
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public StockOperationRetryExecutor(PlatformTransactionManager transactionManager,
+                                       @Value("${erp.stock.retry.max-attempts:3}") int maxAttempts,
+                                       @Value("${erp.stock.retry.initial-backoff-ms:20}") long initialBackoffMs,
+                                       @Value("${erp.stock.retry.max-backoff-ms:200}") long maxBackoffMs) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * 執行無回傳值的庫存操作
+     */
+    public void execute(String operationName, Runnable operation) {
+        execute(operationName, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * 執行庫存操作
+     * 若呼叫端已在事務中，衝突會使外層事務被標記為回滾，無法在此重試，直接於外層事務內執行
+     */
+    public <T> T execute(String operationName, Supplier<T> operation) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return operation.get();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> operation.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("庫存操作並發衝突，已達最大重試次數 - 操作: {}, 次數: {}", operationName, attempt);
+                    throw new IllegalStateException("庫存並發衝突，請稍後重試", e);
+                }
+
+                long backoffMs = computeBackoff(attempt);
+                log.info("庫存操作並發衝突，準備重試 - 操作: {}, 第 {} 次, 等待 {}ms, 原因: {}",
+                        operationName, attempt, backoffMs, e.getClass().getSimpleName());
+                sleep(backoffMs);
+            }
+        }
+    }
+
+    /**
+     * 計算帶抖動的指數退避時間（full jitter）
+     */
+    private long computeBackoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long backoffMs) {
+        try {
+            Thread.sleep(backoffMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("庫存操作重試被中斷", e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package erp.core.service;
+
+import erp.core.entity.StorageLocation;
+import erp.core.repository.StorageLocationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 儲位解析器
+ * 儲位主檔極少異動卻位於每個庫存操作的熱路徑上，此元件在記憶體中保存
+ * 儲位編號 ↔ 儲位ID 的雙向對照（含所屬倉庫ID與狀態），以不可變快照整體原子替換，
+ * 讀取端不需加鎖。儲位異動時由 StorageLocationEntityListener 通知失效，
+ * 另以 TTL 與查無資料時重新載入涵蓋直接修改資料庫的情況。
+ * 快照以獨立的唯讀事務載入，只包含已提交的儲位；呼叫端事務內新增尚未提交的儲位，
+ * 於快照查無時改在呼叫端事務內直接查詢，結果不寫入快照。
+ * 重新載入同時只由一個執行緒執行，其他執行緒不等待而沿用目前的快照；尚無快照時才等待載入完成
+ */
+@Component
+@Slf4j
+public class StorageLocationResolver {
+
+    /**
+     * 儲位對照資料
+     */
+    public record LocationRef(Long id, String code, Long warehouseId, Byte status) {
+    }
+
+    /**
+     * 不可變快照
+     */
+    private record Snapshot(Map<String, LocationRef> byCode, Map<Long, LocationRef> byId,
+                            long generation, long loadedAtMillis) {
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), -1L, 0L);
+
+    private final StorageLocationRepository storageLocationRepository;
+    private final TransactionTemplate loadTransactionTemplate;
+    private final long ttlMillis;
+    private final long missReloadIntervalMillis;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(EMPTY);
+    private final AtomicLong generation = new AtomicLong();
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    public StorageLocationResolver(StorageLocationRepository storageLocationRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${erp.location-cache.ttl-seconds:300}") long ttlSeconds,
+                                   @Value("${erp.location-cache.miss-reload-interval-ms:1000}") long missReloadIntervalMillis) {
+        this.storageLocationRepository = storageLocationRepository;
+        this.loadTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.loadTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.loadTransactionTemplate.setReadOnly(true);
+        this.ttlMillis = ttlSeconds * 1000;
+        this.missReloadIntervalMillis = missReloadIntervalMillis;
+    }
+
+    //region 單筆解析
+    /**
+     * 根據儲位編號解析儲位
+     */
+    public Optional<LocationRef> findByCode(String code) {
+        if (code == null) {
+            return Optional.empty();
+        }
+        LocationRef ref = current().byCode().get(code);
+        if (ref == null) {
+            ref = reloadOnMiss().byCode().get(code);
+        }
+        if (ref == null) {
+            return findUncommittedByCode(code);
+        }
+        return Optional.of(ref);
+    }
+
+    /**
+     * 根據儲位ID解析儲位
+     */
+    public Optional<LocationRef> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        LocationRef ref = current().byId().get(id);
+        if (ref == null) {
+            ref = reloadOnMiss().byId().get(id);
+        }
+        if (ref == null) {
+            return findUncommittedById(id);
+        }
+        return Optional.of(ref);
+    }
+
+    /**
+     * 根據儲位編號解析儲位，不存在時拋出例外
+     */
+    public LocationRef requireByCode(String code) {
+        return findByCode(code)
+            .orElseThrow(() -> new IllegalArgumentException("儲位不存在: " + code));
+    }
+
+    /**
+     * 根據儲位ID解析儲位，不存在時拋出例外
+     */
+    public LocationRef requireById(Long id) {
+        return findById(id)
+            .orElseThrow(() -> new IllegalArgumentException("找不到指定的儲位: " + id));
+    }
+    //endregion
+
+    //region 批次解析
+    /**
+     * 批次根據儲位編號解析儲位，任一編號不存在時拋出例外
+     * @return 以輸入順序排列的 編號 → 儲位 對照
+     */
+    public Map<String, LocationRef> requireAllByCode(Collection<String> codes) {
+        Map<String, LocationRef> result = new LinkedHashMap<>();
+        Snapshot current = current();
+        boolean reloaded = false;
+        for (String code : codes) {
+            LocationRef ref = code != null ? current.byCode().get(code) : null;
+            if (ref == null && code != null && !reloaded) {
+                current = reloadOnMiss();
+                reloaded = true;
+                ref = current.byCode().get(code);
+            }
+            if (ref == null && code != null) {
+                ref = findUncommittedByCode(code).orElse(null);
+            }
+            if (ref == null) {
+                throw new IllegalArgumentException("儲位不存在: " + code);
+            }
+            result.put(code, ref);
+        }
+        return result;
+    }
+
+    /**
+     * 批次根據儲位ID解析儲位，任一ID不存在時拋出例外
+     * @return 以輸入順序排列的 ID → 儲位 對照
+     */
+    public Map<Long, LocationRef> requireAllById(Collection<Long> ids) {
+        Map<Long, LocationRef> result = new LinkedHashMap<>();
+        Snapshot current = current();
+        boolean reloaded = false;
+        for (Long id : ids) {
+            LocationRef ref = id != null ? current.byId().get(id) : null;
+            if (ref == null && id != null && !reloaded) {
+                current = reloadOnMiss();
+                reloaded = true;
+                ref = current.byId().get(id);
+            }
+            if (ref == null && id != null) {
+                ref = findUncommittedById(id).orElse(null);
+            }
+            if (ref == null) {
+                throw new IllegalArgumentException("找不到指定的儲位: " + id);
+            }
+            result.put(id, ref);
+        }
+        return result;
+    }
+    //endregion
+
+    //region 快照維護
+    /**
+     * 使目前快照失效，下次解析時重新載入
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        log.debug("儲位快照已失效");
+    }
+
+    /**
+     * 取得有效快照，失效或逾期時重新載入
+     */
+    private Snapshot current() {
+        Snapshot current = snapshot.get();
+        if (isFresh(current)) {
+            return current;
+        }
+        return reload(current, false);
+    }
+
+    /**
+     * 查無資料時重新載入，避免剛新增的儲位解析失敗；
+     * 以最小間隔限制，避免不存在的編號造成頻繁重新載入
+     */
+    private Snapshot reloadOnMiss() {
+        return reload(snapshot.get(), true);
+    }
+
+    /**
+     * 重新載入快照
+     * 呼叫端多在事務中並持有連線，載入又需另一條連線；若所有執行緒都等待載入，TTL 到期或失效時可能耗盡連線池。
+     * 因此已有快照時以 tryLock 只讓一個執行緒載入，其他執行緒直接沿用目前的快照
+     * @param stale 呼叫端讀到的快照
+     */
+    private Snapshot reload(Snapshot stale, boolean onMiss) {
+        if (stale == EMPTY) {
+            reloadLock.lock();
+        } else if (!reloadLock.tryLock()) {
+            return stale;
+        }
+        try {
+            return load(onMiss);
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private Snapshot load(boolean onMiss) {
+        Snapshot current = snapshot.get();
+        long now = System.currentTimeMillis();
+        if (isFresh(current) && (!onMiss || now - current.loadedAtMillis() < missReloadIntervalMillis)) {
+            return current;
+        }
+
+        // 先取得世代再載入，載入期間若有失效通知，下次解析會再重新載入
+        long loadGeneration = generation.get();
+        // 以獨立唯讀事務載入，不受呼叫端事務的快照與未提交資料影響
+        List<StorageLocation> locations = loadTransactionTemplate.execute(status -> storageLocationRepository.findAll());
+
+        Map<String, LocationRef> byCode = new HashMap<>();
+        Map<Long, LocationRef> byId = new HashMap<>();
+        for (StorageLocation location : locations) {
+            LocationRef ref = toRef(location);
+            byId.put(ref.id(), ref);
+            if (ref.code() != null) {
+                byCode.put(ref.code(), ref);
+            }
+        }
+
+        Snapshot loaded = new Snapshot(Map.copyOf(byCode), Map.copyOf(byId), loadGeneration, now);
+        snapshot.set(loaded);
+        log.debug("儲位快照已重新載入 - 筆數: {}", byId.size());
+        return loaded;
+    }
+
+    /**
+     * 快照查無時，於呼叫端事務內查詢其尚未提交的儲位；不在事務中時快照已涵蓋所有已提交資料
+     */
+    private Optional<LocationRef> findUncommittedByCode(String code) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Optional.empty();
+        }
+        return storageLocationRepository.findByCode(code).map(StorageLocationResolver::toRef);
+    }
+
+    private Optional<LocationRef> findUncommittedById(Long id) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Optional.empty();
+        }
+        return storageLocationRepository.findById(id).map(StorageLocationResolver::toRef);
+    }
+
+    private static LocationRef toRef(StorageLocation location) {
+        return new LocationRef(location.getId(), location.getCode(), location.getWarehouseId(), location.getStatus());
+    }
+
+    private boolean isFresh(Snapshot current) {
+        return current.generation() == generation.get()
+            && System.currentTimeMillis() - current.loadedAtMillis() < ttlMillis;
+    }
+    //endregion
+}
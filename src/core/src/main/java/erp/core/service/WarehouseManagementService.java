@@ -1,23 +1,39 @@
 package erp.core.service;
 
+import erp.core.constant.ErrorCode;
+import erp.core.dto.BatchOperationResult;
+import erp.core.dto.CursorPage;
+import erp.core.dto.PageCursor;
+import erp.core.dto.StockOperationLineDto;
 import erp.core.entity.Item;
 import erp.core.entity.Stock;
 import erp.core.entity.StockMovement;
 import erp.core.entity.StockMovement.MovementType;
-import erp.core.entity.StorageLocation;
 import erp.core.repository.ItemRepository;
 import erp.core.repository.StockRepository;
 import erp.core.repository.StockMovementRepository;
-import erp.core.repository.StorageLocationRepository;
+import erp.core.service.StorageLocationResolver.LocationRef;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * 倉儲管理服務類
@@ -42,7 +58,8 @@ public class WarehouseManagementService {
         OUTBOUND("出庫"),
         TRANSFER("轉庫"),
         FREEZE("凍結"),
-        SCRAP("報廢");
+        SCRAP("報廢"),
+        UNFREEZE("解凍");
         
         private final String description;
         
@@ -51,13 +68,48 @@ public class WarehouseManagementService {
         }
 
     }
+    
+    /**
+     * 批次操作執行模式
+     */
+    public enum BatchMode {
+        /**
+         * 任一行失敗則整批回滾
+         */
+        ALL_OR_NOTHING,
+        /**
+         * 逐行回報結果，失敗行不影響其他行
+         */
+        PER_LINE
+    }
     //endregion
     
     //region 依賴注入
     private final ItemRepository itemRepository;
     private final StockRepository stockRepository;
     private final StockMovementRepository stockMovementRepository;
-    private final StorageLocationRepository storageLocationRepository;
+    private final StorageLocationResolver storageLocationResolver;
+    private final StockOperationRetryExecutor stockOperationRetryExecutor;
+    private final ItemSearchIndex itemSearchIndex;
+    private final StockMovementArchive stockMovementArchive;
+    
+    @Value("${erp.stock.batch.max-lines:1000}")
+    private int batchMaxLines;
+    
+    @Value("${erp.pagination.default-limit:100}")
+    private int defaultPageLimit;
+    
+    @Value("${erp.pagination.max-limit:1000}")
+    private int maxPageLimit;
+    
+    @Value("${erp.item-search.default-limit:20}")
+    private int defaultSearchLimit;
+    
+    @Value("${erp.item-search.max-limit:100}")
+    private int maxSearchLimit;
+    
+    @Value("${erp.item-search.suggest-limit:10}")
+    private int defaultSuggestLimit;
     //endregion
     
     //region 商品管理 (CRUD)
@@ -96,7 +148,8 @@ public class WarehouseManagementService {
         item.setName(name);
         item.setUnit(unit);
         
-        Item updatedItem = itemRepository.save(item);
+        // 立即寫入，商品搜尋索引（ItemEntityListener）隨即更新
+        Item updatedItem = itemRepository.saveAndFlush(item);
         log.info("更新商品成功: {}", updatedItem);
         return updatedItem;
     }
@@ -117,6 +170,7 @@ public class WarehouseManagementService {
         }
         
         itemRepository.deleteById(itemId);
+        itemRepository.flush();
         log.info("刪除商品成功: {}", itemId);
     }
     
@@ -128,42 +182,73 @@ public class WarehouseManagementService {
     }
     
     /**
-     * 查詢所有商品
+     * 分頁查詢所有商品
+     * @param cursor 上一頁回傳的游標，第一頁傳 PageCursor.FIRST
+     * @param limit 每頁筆數，null 時使用預設值
      */
-    public List<Item> getAllItems() {
-        return itemRepository.findAll();
+    public CursorPage<Item> getAllItems(PageCursor cursor, Integer limit) {
+        int pageSize = resolvePageLimit(limit);
+        List<Item> rows = itemRepository.findPageAfter(cursor.createdAt(), cursor.id(), Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, Item::getCreatedAt, Item::getId);
     }
     
     /**
-     * 根據名稱模糊查詢商品
+     * 根據名稱搜尋商品，依相關度排序（記憶體 n-gram 索引，不掃描商品表）
+     * 結果不提供游標，hasMore 表示超過 limit 筆，需以更精確的關鍵字搜尋
+     * @param limit 最多回傳筆數，null 時使用預設值
      */
-    public List<Item> searchItemsByName(String name) {
-        return itemRepository.findByNameContainingIgnoreCase(name);
+    public CursorPage<Item> searchItemsByName(String name, Integer limit) {
+        int maxResults = CursorPage.resolveLimit(limit, defaultSearchLimit, maxSearchLimit);
+        List<ItemSearchIndex.Hit> hits = itemSearchIndex.search(name, maxResults + 1);
+        boolean hasMore = hits.size() > maxResults;
+        List<Long> itemIds = hits.stream().limit(maxResults).map(ItemSearchIndex.Hit::itemId).toList();
+        
+        // 依索引排序輸出，索引中殘留但已不存在的商品略過
+        Map<Long, Item> itemsById = new LinkedHashMap<>();
+        for (Item item : itemRepository.findAllById(itemIds)) {
+            itemsById.put(item.getId(), item);
+        }
+        List<Item> items = itemIds.stream().map(itemsById::get).filter(Objects::nonNull).toList();
+        return new CursorPage<>(items, null, hasMore);
+    }
+    
+    /**
+     * 商品名稱前綴自動完成（僅讀取記憶體索引，不查詢資料庫，索引重建期間沿用目前索引）
+     * @param limit 最多回傳筆數，null 時使用預設值
+     */
+    public List<ItemSearchIndex.Suggestion> suggestItems(String prefix, Integer limit) {
+        int maxResults = CursorPage.resolveLimit(limit, defaultSuggestLimit, maxSearchLimit);
+        return itemSearchIndex.suggest(prefix, maxResults);
     }
     //endregion
     
     //region 庫存查詢
     /**
-     * 查詢指定商品的所有庫存
+     * 分頁查詢指定商品的庫存
      */
-    public List<Stock> getStocksByItem(Long itemId) {
-        return stockRepository.findByItemId(itemId);
+    public CursorPage<Stock> getStocksByItem(Long itemId, PageCursor cursor, Integer limit) {
+        int pageSize = resolvePageLimit(limit);
+        List<Stock> rows = stockRepository.findPageByItemIdAfter(itemId, cursor.createdAt(), cursor.id(), Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, Stock::getCreatedAt, Stock::getId);
     }
     
     /**
-     * 查詢指定位置的所有庫存
+     * 分頁查詢指定位置的庫存
      */
-    public List<Stock> getStocksByLocation(String location) {
-        StorageLocation storageLocation = getStorageLocationByCode(location);
-        return stockRepository.findByStorageLocationId(storageLocation.getId());
+    public CursorPage<Stock> getStocksByLocation(String location, PageCursor cursor, Integer limit) {
+        LocationRef storageLocation = getStorageLocationByCode(location);
+        int pageSize = resolvePageLimit(limit);
+        List<Stock> rows = stockRepository.findPageByStorageLocationIdAfter(
+                storageLocation.id(), cursor.createdAt(), cursor.id(), Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, Stock::getCreatedAt, Stock::getId);
     }
     
     /**
      * 查詢指定商品在指定位置的庫存
      */
     public Optional<Stock> getStock(Long itemId, String location) {
-        StorageLocation storageLocation = getStorageLocationByCode(location);
-        return stockRepository.findByItemIdAndStorageLocationId(itemId, storageLocation.getId());
+        LocationRef storageLocation = getStorageLocationByCode(location);
+        return stockRepository.findByItemIdAndStorageLocationId(itemId, storageLocation.id());
     }
     
     /**
@@ -181,21 +266,31 @@ public class WarehouseManagementService {
     }
     
     /**
-     * 查詢低庫存商品
+     * 分頁查詢低庫存商品
      */
-    public List<Stock> getLowStocks(BigDecimal threshold) {
-        return stockRepository.findByQuantityLessThan(threshold);
+    public CursorPage<Stock> getLowStocks(BigDecimal threshold, PageCursor cursor, Integer limit) {
+        int pageSize = resolvePageLimit(limit);
+        List<Stock> rows = stockRepository.findPageByQuantityLessThanAfter(
+                threshold, cursor.createdAt(), cursor.id(), Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, Stock::getCreatedAt, Stock::getId);
     }
     
     /**
-     * 查詢零庫存商品
+     * 分頁查詢零庫存商品
      */
-    public List<Stock> getZeroStocks() {
-        return stockRepository.findZeroStocks();
+    public CursorPage<Stock> getZeroStocks(PageCursor cursor, Integer limit) {
+        int pageSize = resolvePageLimit(limit);
+        List<Stock> rows = stockRepository.findZeroStocksPageAfter(cursor.createdAt(), cursor.id(), Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, Stock::getCreatedAt, Stock::getId);
+    }
+    
+    private int resolvePageLimit(Integer limit) {
+        return CursorPage.resolveLimit(limit, defaultPageLimit, maxPageLimit);
     }
     //endregion
     
     //region 庫存操作
+    // 各庫存操作由 StockOperationRetryExecutor 包裝事務，版本衝突或死鎖時整體重新執行
     /**
      * 入庫操作
      * @param itemId 商品ID
@@ -203,16 +298,17 @@ public class WarehouseManagementService {
      * @param quantity 數量
      * @param note 備註
      */
-    @Transactional
     public void inbound(Long itemId, String location, BigDecimal quantity, String note) {
         if (quantity.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("入庫數量必須大於0");
         }
         
-        validateItemExists(itemId);
-        
-        // 執行入庫操作
-        performStockOperation(itemId, location, MovementType.INBOUND, quantity, note);
+        stockOperationRetryExecutor.execute("入庫", () -> {
+            validateItemExists(itemId);
+            
+            // 執行入庫操作
+            performStockOperation(itemId, location, MovementType.INBOUND, quantity, note, null);
+        });
         
         log.info("入庫操作完成 - 商品ID: {}, 位置: {}, 數量: {}", itemId, location, quantity);
     }
@@ -224,22 +320,17 @@ public class WarehouseManagementService {
      * @param quantity 數量
      * @param note 備註
      */
-    @Transactional
     public void outbound(Long itemId, String location, BigDecimal quantity, String note) {
         if (quantity.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("出庫數量必須大於0");
         }
         
-        validateItemExists(itemId);
-        
-        // 檢查庫存是否足夠
-        Optional<Stock> stockOpt = getStock(itemId, location);
-        if (stockOpt.isEmpty() || stockOpt.get().getQuantity().compareTo(quantity) < 0) {
-            throw new IllegalStateException("庫存不足，無法出庫");
-        }
-        
-        // 執行出庫操作
-        performStockOperation(itemId, location, MovementType.OUTBOUND, quantity, note);
+        stockOperationRetryExecutor.execute("出庫", () -> {
+            validateItemExists(itemId);
+            
+            // 執行出庫操作
+            performStockOperation(itemId, location, MovementType.OUTBOUND, quantity, note, "庫存不足，無法出庫");
+        });
         
         log.info("出庫操作完成 - 商品ID: {}, 位置: {}, 數量: {}", itemId, location, quantity);
     }
@@ -252,7 +343,6 @@ public class WarehouseManagementService {
      * @param quantity 數量
      * @param note 備註
      */
-    @Transactional
     public void transfer(Long itemId, String fromLocation, String toLocation, BigDecimal quantity, String note) {
         if (quantity.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("轉庫數量必須大於0");
@@ -262,19 +352,14 @@ public class WarehouseManagementService {
             throw new IllegalArgumentException("來源位置和目標位置不能相同");
         }
         
-        validateItemExists(itemId);
-        
-        // 檢查來源庫存是否足夠
-        Optional<Stock> fromStockOpt = getStock(itemId, fromLocation);
-        if (fromStockOpt.isEmpty() || fromStockOpt.get().getQuantity().compareTo(quantity) < 0) {
-            throw new IllegalStateException("來源位置庫存不足，無法轉庫");
-        }
-        
-        String transferNote = String.format("轉庫: %s -> %s, %s", fromLocation, toLocation, note != null ? note : "");
-        
-        // 執行轉庫操作：先出庫，再入庫
-        performStockOperation(itemId, fromLocation, MovementType.OUTBOUND, quantity, transferNote);
-        performStockOperation(itemId, toLocation, MovementType.INBOUND, quantity, transferNote);
+        stockOperationRetryExecutor.execute("轉庫", () -> {
+            validateItemExists(itemId);
+            
+            String transferNote = String.format("轉庫: %s -> %s, %s", fromLocation, toLocation, note != null ? note : "");
+            
+            // 執行轉庫操作：同時鎖定來源與目標庫存，來源出庫、目標入庫
+            performTwoRowStockOperation(itemId, fromLocation, toLocation, quantity, transferNote, "來源位置庫存不足，無法轉庫");
+        });
         
         log.info("轉庫操作完成 - 商品ID: {}, 從 {} 轉至 {}, 數量: {}", itemId, fromLocation, toLocation, quantity);
     }
@@ -286,25 +371,19 @@ public class WarehouseManagementService {
      * @param quantity 數量
      * @param note 備註
      */
-    @Transactional
     public void freeze(Long itemId, String fromLocation, BigDecimal quantity, String note) {
         if (quantity.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("凍結數量必須大於0");
         }
         
-        validateItemExists(itemId);
-        
-        // 檢查來源庫存是否足夠
-        Optional<Stock> fromStockOpt = getStock(itemId, fromLocation);
-        if (fromStockOpt.isEmpty() || fromStockOpt.get().getQuantity().compareTo(quantity) < 0) {
-            throw new IllegalStateException("來源位置庫存不足，無法凍結");
-        }
-        
-        String freezeNote = String.format("凍結: %s -> %s, %s", fromLocation, FREEZE_WAREHOUSE, note != null ? note : "");
-        
-        // 執行凍結操作：從來源位置出庫，入庫到凍結倉
-        performStockOperation(itemId, fromLocation, MovementType.OUTBOUND, quantity, freezeNote);
-        performStockOperation(itemId, FREEZE_WAREHOUSE, MovementType.INBOUND, quantity, freezeNote);
+        stockOperationRetryExecutor.execute("凍結", () -> {
+            validateItemExists(itemId);
+            
+            String freezeNote = String.format("凍結: %s -> %s, %s", fromLocation, FREEZE_WAREHOUSE, note != null ? note : "");
+            
+            // 執行凍結操作：從來源位置出庫，入庫到凍結倉
+            performTwoRowStockOperation(itemId, fromLocation, FREEZE_WAREHOUSE, quantity, freezeNote, "來源位置庫存不足，無法凍結");
+        });
         
         log.info("凍結操作完成 - 商品ID: {}, 從 {} 凍結至 {}, 數量: {}", itemId, fromLocation, FREEZE_WAREHOUSE, quantity);
     }
@@ -316,25 +395,19 @@ public class WarehouseManagementService {
      * @param quantity 數量
      * @param note 備註
      */
-    @Transactional
     public void scrap(Long itemId, String fromLocation, BigDecimal quantity, String note) {
         if (quantity.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("報廢數量必須大於0");
         }
         
-        validateItemExists(itemId);
-        
-        // 檢查來源庫存是否足夠
-        Optional<Stock> fromStockOpt = getStock(itemId, fromLocation);
-        if (fromStockOpt.isEmpty() || fromStockOpt.get().getQuantity().compareTo(quantity) < 0) {
-            throw new IllegalStateException("來源位置庫存不足，無法報廢");
-        }
-        
-        String scrapNote = String.format("報廢: %s -> %s, %s", fromLocation, SCRAP_WAREHOUSE, note != null ? note : "");
-        
-        // 執行報廢操作：從來源位置出庫，入庫到報廢倉
-        performStockOperation(itemId, fromLocation, MovementType.OUTBOUND, quantity, scrapNote);
-        performStockOperation(itemId, SCRAP_WAREHOUSE, MovementType.INBOUND, quantity, scrapNote);
+        stockOperationRetryExecutor.execute("報廢", () -> {
+            validateItemExists(itemId);
+            
+            String scrapNote = String.format("報廢: %s -> %s, %s", fromLocation, SCRAP_WAREHOUSE, note != null ? note : "");
+            
+            // 執行報廢操作：從來源位置出庫，入庫到報廢倉
+            performTwoRowStockOperation(itemId, fromLocation, SCRAP_WAREHOUSE, quantity, scrapNote, "來源位置庫存不足，無法報廢");
+        });
         
         log.info("報廢操作完成 - 商品ID: {}, 從 {} 報廢至 {}, 數量: {}", itemId, fromLocation, SCRAP_WAREHOUSE, quantity);
     }
@@ -346,27 +419,281 @@ public class WarehouseManagementService {
      * @param quantity 數量
      * @param note 備註
      */
-    @Transactional
     public void unfreeze(Long itemId, String toLocation, BigDecimal quantity, String note) {
         if (quantity.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("解凍數量必須大於0");
         }
         
-        validateItemExists(itemId);
+        stockOperationRetryExecutor.execute("解凍", () -> {
+            validateItemExists(itemId);
+            
+            String unfreezeNote = String.format("解凍: %s -> %s, %s", FREEZE_WAREHOUSE, toLocation, note != null ? note : "");
+            
+            // 執行解凍操作：從凍結倉出庫，入庫到目標位置
+            performTwoRowStockOperation(itemId, FREEZE_WAREHOUSE, toLocation, quantity, unfreezeNote, "凍結倉庫存不足，無法解凍");
+        });
         
-        // 檢查凍結倉庫存是否足夠
-        Optional<Stock> freezeStockOpt = getStock(itemId, FREEZE_WAREHOUSE);
-        if (freezeStockOpt.isEmpty() || freezeStockOpt.get().getQuantity().compareTo(quantity) < 0) {
-            throw new IllegalStateException("凍結倉庫存不足，無法解凍");
+        log.info("解凍操作完成 - 商品ID: {}, 從 {} 解凍至 {}, 數量: {}", itemId, FREEZE_WAREHOUSE, toLocation, quantity);
+    }
+    //endregion
+    
+    //region 批次庫存操作
+    /**
+     * 批次庫存操作
+     * 整批於單一事務內執行：商品以一次查詢驗證、儲位由記憶體快照解析、
+     * 目標庫存依 (商品, 儲位) 順序補建後，僅鎖定各行實際涉及的庫存（每個商品一次 SELECT ... FOR UPDATE），
+     * 於記憶體中依序套用各行異動後一次寫回，異動記錄批次寫入
+     * @param lines 操作明細
+     * @param mode 執行模式
+     * @return 各行執行結果
+     */
+    public BatchOperationResult batchOperation(List<StockOperationLineDto> lines, BatchMode mode) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("批次操作明細不能為空");
         }
         
-        String unfreezeNote = String.format("解凍: %s -> %s, %s", FREEZE_WAREHOUSE, toLocation, note != null ? note : "");
+        if (lines.size() > batchMaxLines) {
+            throw new IllegalArgumentException("批次操作筆數超過上限: " + batchMaxLines);
+        }
         
-        // 執行解凍操作：從凍結倉出庫，入庫到目標位置
-        performStockOperation(itemId, FREEZE_WAREHOUSE, MovementType.OUTBOUND, quantity, unfreezeNote);
-        performStockOperation(itemId, toLocation, MovementType.INBOUND, quantity, unfreezeNote);
+        BatchOperationResult result = stockOperationRetryExecutor.execute("批次操作", () -> applyBatch(lines, mode));
         
-        log.info("解凍操作完成 - 商品ID: {}, 從 {} 解凍至 {}, 數量: {}", itemId, FREEZE_WAREHOUSE, toLocation, quantity);
+        log.info("批次庫存操作完成 - 模式: {}, 總筆數: {}, 成功: {}, 失敗: {}",
+                mode, result.getTotal(), result.getSucceeded(), result.getFailed());
+        return result;
+    }
+    
+    /**
+     * 已驗證的批次明細，from 為空表示僅入庫、to 為空表示僅出庫
+     */
+    private record BatchLine(int lineNumber, Long itemId, LocationRef from, LocationRef to,
+                             BigDecimal quantity, String note, String insufficientMessage,
+                             Long sourceSlipId, Long sourceSlipDetailId) {
+    }
+    
+    /**
+     * 庫存鍵（商品 + 儲位）
+     */
+    private record StockKey(Long itemId, Long storageLocationId) {
+    }
+    
+    /**
+     * 庫存鍵的加鎖順序，與轉庫及其他批次一致
+     */
+    private static final Comparator<StockKey> STOCK_KEY_ORDER =
+            Comparator.comparing(StockKey::itemId).thenComparing(StockKey::storageLocationId);
+    
+    /**
+     * 批次處理中的庫存餘額（已鎖定的庫存記錄與套用異動後的數量）
+     */
+    private static class BatchBalance {
+        private final Stock stock;
+        private BigDecimal quantity;
+        
+        private BatchBalance(Stock stock) {
+            this.stock = stock;
+            this.quantity = stock.getQuantity();
+        }
+    }
+    
+    private BatchOperationResult applyBatch(List<StockOperationLineDto> lines, BatchMode mode) {
+        BatchOperationResult.LineResult[] lineResults = new BatchOperationResult.LineResult[lines.size()];
+        
+        // 1. 一次查詢驗證商品，逐行解析儲位並驗證參數
+        Set<Long> requestedItemIds = new HashSet<>();
+        for (StockOperationLineDto line : lines) {
+            if (line != null && line.getItemId() != null) {
+                requestedItemIds.add(line.getItemId());
+            }
+        }
+        Set<Long> existingItemIds = new HashSet<>();
+        for (Item item : itemRepository.findAllById(requestedItemIds)) {
+            existingItemIds.add(item.getId());
+        }
+        
+        List<BatchLine> plannedLines = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                plannedLines.add(planBatchLine(i + 1, lines.get(i), existingItemIds));
+            } catch (IllegalArgumentException e) {
+                lineResults[i] = failBatchLine(i + 1, e, mode);
+            }
+        }
+        
+        // 2. 依 (商品, 儲位) 順序補建不存在的目標庫存記錄，使鎖定讀取只落在既有記錄上（同轉庫），
+        //    再逐商品依儲位順序鎖定各行實際涉及的庫存，不鎖定未使用的商品與儲位組合
+        Map<Long, Set<Long>> storageLocationIdsByItem = new TreeMap<>();
+        Map<StockKey, Long> destinations = new TreeMap<>(STOCK_KEY_ORDER);
+        for (BatchLine line : plannedLines) {
+            Set<Long> storageLocationIds = storageLocationIdsByItem.computeIfAbsent(line.itemId(), itemId -> new TreeSet<>());
+            if (line.from() != null) {
+                storageLocationIds.add(line.from().id());
+            }
+            if (line.to() != null) {
+                storageLocationIds.add(line.to().id());
+                destinations.put(new StockKey(line.itemId(), line.to().id()), line.to().warehouseId());
+            }
+        }
+        for (Map.Entry<StockKey, Long> destination : destinations.entrySet()) {
+            StockKey key = destination.getKey();
+            stockRepository.insertIfAbsent(key.itemId(), destination.getValue(), key.storageLocationId());
+        }
+        
+        Map<StockKey, BatchBalance> balances = new LinkedHashMap<>();
+        for (Map.Entry<Long, Set<Long>> entry : storageLocationIdsByItem.entrySet()) {
+            for (Stock stock : stockRepository.lockByItemIdAndStorageLocationIds(entry.getKey(), entry.getValue())) {
+                balances.put(new StockKey(stock.getItemId(), stock.getStorageLocationId()), new BatchBalance(stock));
+            }
+        }
+        
+        // 3. 於記憶體中依請求順序套用各行異動
+        Set<StockKey> touchedKeys = new LinkedHashSet<>();
+        List<StockMovement> movements = new ArrayList<>();
+        for (BatchLine line : plannedLines) {
+            int index = line.lineNumber() - 1;
+            
+            if (line.from() != null) {
+                BatchBalance fromBalance = balances.get(new StockKey(line.itemId(), line.from().id()));
+                if (fromBalance == null || fromBalance.quantity.compareTo(line.quantity()) < 0) {
+                    lineResults[index] = failBatchLine(line.lineNumber(),
+                            new IllegalStateException(line.insufficientMessage()), mode);
+                    continue;
+                }
+                fromBalance.quantity = fromBalance.quantity.subtract(line.quantity());
+                touchedKeys.add(new StockKey(line.itemId(), line.from().id()));
+                movements.add(newMovement(line.itemId(), line.from().warehouseId(), line.from().id(),
+                        MovementType.OUTBOUND, line.quantity(), line.note(), line.sourceSlipId(), line.sourceSlipDetailId()));
+            }
+            
+            if (line.to() != null) {
+                StockKey toKey = new StockKey(line.itemId(), line.to().id());
+                BatchBalance toBalance = balances.get(toKey);
+                if (toBalance == null) {
+                    // 目標庫存已於加鎖前補建，找不到表示同時被刪除，整批重新執行
+                    throw new IllegalStateException("目標庫存記錄不存在: 商品 " + line.itemId() + ", 儲位 " + line.to().id());
+                }
+                toBalance.quantity = toBalance.quantity.add(line.quantity());
+                touchedKeys.add(toKey);
+                movements.add(newMovement(line.itemId(), line.to().warehouseId(), line.to().id(),
+                        MovementType.INBOUND, line.quantity(), line.note(), line.sourceSlipId(), line.sourceSlipDetailId()));
+            }
+            
+            lineResults[index] = new BatchOperationResult.LineResult(line.lineNumber(), true, null, null);
+        }
+        
+        // 4. 寫回庫存：所有異動皆套用於已鎖定的記錄
+        for (StockKey key : touchedKeys) {
+            BatchBalance balance = balances.get(key);
+            balance.stock.setQuantity(balance.quantity);
+        }
+        
+        // 5. 批次寫入庫存異動記錄
+        stockMovementRepository.saveAll(movements);
+        
+        int succeeded = 0;
+        for (BatchOperationResult.LineResult lineResult : lineResults) {
+            if (lineResult.isSuccess()) {
+                succeeded++;
+            }
+        }
+        return new BatchOperationResult(mode.name(), lines.size(), succeeded, lines.size() - succeeded, List.of(lineResults));
+    }
+    
+    /**
+     * 驗證並解析單行批次明細
+     */
+    private BatchLine planBatchLine(int lineNumber, StockOperationLineDto line, Set<Long> existingItemIds) {
+        if (line == null || line.getAction() == null) {
+            throw new IllegalArgumentException("操作類型不能為空");
+        }
+        
+        if (line.getItemId() == null) {
+            throw new IllegalArgumentException("商品ID不能為空");
+        }
+        
+        if (line.getQuantity() == null || line.getQuantity().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("數量必須大於0");
+        }
+        
+        if (!existingItemIds.contains(line.getItemId())) {
+            throw new IllegalArgumentException("商品不存在: " + line.getItemId());
+        }
+        
+        String note = line.getNote();
+        String suffix = note != null ? note : "";
+        // 單據完成觸發的異動以來源欄位記錄出處，不另組合說明文字
+        boolean describe = line.getSourceSlipId() == null;
+        Long sourceSlipId = line.getSourceSlipId();
+        Long sourceSlipDetailId = line.getSourceSlipDetailId();
+        return switch (line.getAction()) {
+            case "inbound" -> new BatchLine(lineNumber, line.getItemId(), null,
+                    resolveBatchLocation(line.getLocation(), "位置"), line.getQuantity(), note, null,
+                    sourceSlipId, sourceSlipDetailId);
+            case "outbound" -> new BatchLine(lineNumber, line.getItemId(),
+                    resolveBatchLocation(line.getLocation(), "位置"), null, line.getQuantity(), note, "庫存不足，無法出庫",
+                    sourceSlipId, sourceSlipDetailId);
+            case "transfer" -> {
+                LocationRef from = resolveBatchLocation(line.getFromLocation(), "來源位置");
+                LocationRef to = resolveBatchLocation(line.getToLocation(), "目標位置");
+                if (from.id().equals(to.id())) {
+                    throw new IllegalArgumentException("來源位置和目標位置不能相同");
+                }
+                yield new BatchLine(lineNumber, line.getItemId(), from, to, line.getQuantity(),
+                        describe ? String.format("轉庫: %s -> %s, %s", from.code(), to.code(), suffix) : note,
+                        "來源位置庫存不足，無法轉庫", sourceSlipId, sourceSlipDetailId);
+            }
+            case "freeze" -> {
+                LocationRef from = resolveBatchLocation(line.getFromLocation(), "來源位置");
+                yield new BatchLine(lineNumber, line.getItemId(), from, getStorageLocationByCode(FREEZE_WAREHOUSE), line.getQuantity(),
+                        describe ? String.format("凍結: %s -> %s, %s", from.code(), FREEZE_WAREHOUSE, suffix) : note,
+                        "來源位置庫存不足，無法凍結", sourceSlipId, sourceSlipDetailId);
+            }
+            case "scrap" -> {
+                LocationRef from = resolveBatchLocation(line.getFromLocation(), "來源位置");
+                yield new BatchLine(lineNumber, line.getItemId(), from, getStorageLocationByCode(SCRAP_WAREHOUSE), line.getQuantity(),
+                        describe ? String.format("報廢: %s -> %s, %s", from.code(), SCRAP_WAREHOUSE, suffix) : note,
+                        "來源位置庫存不足，無法報廢", sourceSlipId, sourceSlipDetailId);
+            }
+            case "unfreeze" -> {
+                LocationRef to = resolveBatchLocation(line.getToLocation(), "目標位置");
+                yield new BatchLine(lineNumber, line.getItemId(), getStorageLocationByCode(FREEZE_WAREHOUSE), to, line.getQuantity(),
+                        describe ? String.format("解凍: %s -> %s, %s", FREEZE_WAREHOUSE, to.code(), suffix) : note,
+                        "凍結倉庫存不足，無法解凍", sourceSlipId, sourceSlipDetailId);
+            }
+            default -> throw new IllegalArgumentException("不支援的操作類型: " + line.getAction());
+        };
+    }
+    
+    private LocationRef resolveBatchLocation(String locationCode, String fieldName) {
+        if (locationCode == null || locationCode.trim().isEmpty()) {
+            throw new IllegalArgumentException(fieldName + "不能為空");
+        }
+        return getStorageLocationByCode(locationCode.trim());
+    }
+    
+    /**
+     * 處理失敗行：整批模式直接拋出例外使事務回滾，逐行模式記錄失敗結果
+     */
+    private BatchOperationResult.LineResult failBatchLine(int lineNumber, RuntimeException e, BatchMode mode) {
+        String message = "第 " + lineNumber + " 行: " + e.getMessage();
+        if (mode == BatchMode.ALL_OR_NOTHING) {
+            if (e instanceof IllegalStateException) {
+                throw new IllegalStateException(message, e);
+            }
+            throw new IllegalArgumentException(message, e);
+        }
+        
+        String errorCode;
+        if (e instanceof IllegalStateException) {
+            errorCode = e.getMessage().contains("庫存不足") ? ErrorCode.INSUFFICIENT_STOCK : ErrorCode.INTERNAL_ERROR;
+        } else if (e.getMessage().contains("商品不存在")) {
+            errorCode = ErrorCode.ITEM_NOT_FOUND;
+        } else if (e.getMessage().contains("不支援的操作類型")) {
+            errorCode = ErrorCode.UNSUPPORTED_ACTION;
+        } else {
+            errorCode = ErrorCode.INVALID_ARGUMENT;
+        }
+        return new BatchOperationResult.LineResult(lineNumber, false, message, errorCode);
     }
     //endregion
     
@@ -374,45 +701,107 @@ public class WarehouseManagementService {
     /**
      * 執行庫存操作的核心方法
      * 按照事務要求：1. 開始事務 2. 查詢&更新庫存 3. 寫入異動記錄 4. 提交或回滾
+     * 出庫以條件式 UPDATE 扣減，由受影響筆數判斷庫存是否足夠，避免讀取-修改-寫回的更新遺失，
+     * 呼叫端不需再預先查詢庫存
+     * 入庫以 upsert 累加，首次入庫不需先查詢，並發首次入庫也不會產生重複記錄
+     * @param insufficientMessage 出庫庫存不足時的錯誤訊息
      */
     private void performStockOperation(Long itemId, String location, MovementType movementType, 
-                                     BigDecimal quantity, String note) {
+                                     BigDecimal quantity, String note, String insufficientMessage) {
         
         // 獲取儲位信息
-        StorageLocation storageLocation = getStorageLocationByCode(location);
-        Long warehouseId = storageLocation.getWarehouseId();
-        Long storageLocationId = storageLocation.getId();
+        LocationRef storageLocation = getStorageLocationByCode(location);
+        Long warehouseId = storageLocation.warehouseId();
+        Long storageLocationId = storageLocation.id();
+        
+        // 1&2. 查詢並更新庫存
+        if (movementType == MovementType.OUTBOUND) {
+            int updatedRows = stockRepository.decreaseQuantityIfSufficient(itemId, storageLocationId, quantity);
+            if (updatedRows == 0) {
+                throw new IllegalStateException(insufficientMessage);
+            }
+        } else { // INBOUND
+            stockRepository.increaseQuantityOrInsert(itemId, warehouseId, storageLocationId, quantity);
+        }
         
-        // 1. 查詢現有庫存
-        Optional<Stock> stockOpt = stockRepository.findByItemIdAndStorageLocationId(itemId, storageLocationId);
-        Stock stock;
+        // 3. 寫入庫存異動記錄
+        recordMovement(itemId, warehouseId, storageLocationId, movementType, quantity, note);
         
-        if (stockOpt.isPresent()) {
-            stock = stockOpt.get();
-        } else {
-            // 如果庫存記錄不存在，創建新記錄
-            stock = new Stock();
-            stock.setItemId(itemId);
-            stock.setWarehouseId(warehouseId);
-            stock.setStorageLocationId(storageLocationId);
-            stock.setQuantity(BigDecimal.ZERO);
-        }
-        
-        // 2. 更新庫存數量
-        BigDecimal newQuantity;
-        if (movementType == MovementType.INBOUND) {
-            newQuantity = stock.getQuantity().add(quantity);
-        } else { // OUTBOUND
-            newQuantity = stock.getQuantity().subtract(quantity);
-            if (newQuantity.compareTo(BigDecimal.ZERO) < 0) {
-                throw new IllegalStateException("庫存不足，操作後庫存將為負數");
+        log.debug("庫存操作完成 - 商品ID: {}, 位置: {}, 類型: {}, 數量: {}", 
+                 itemId, location, movementType, quantity);
+    }
+    
+    /**
+     * 執行雙筆庫存異動的核心方法（來源出庫、目標入庫）
+     * 先依 storage_location_id 順序補建不存在的庫存記錄，再一次 SELECT ... FOR UPDATE 鎖定兩筆庫存，
+     * 鎖定讀取只落在既有記錄上而不產生間隙鎖，並發的反向轉庫以相同順序取得鎖，不會互相等待造成死鎖
+     * 來源庫存不足時整個事務回滾，補建的零數量記錄一併撤銷
+     * 來源庫存是否足夠在同一次鎖定讀取中檢查，呼叫端不需再預先查詢庫存
+     * @param insufficientMessage 來源庫存不足時的錯誤訊息
+     */
+    private void performTwoRowStockOperation(Long itemId, String fromLocation, String toLocation,
+                                             BigDecimal quantity, String note, String insufficientMessage) {
+        
+        // 獲取儲位信息
+        LocationRef fromStorageLocation = getStorageLocationByCode(fromLocation);
+        LocationRef toStorageLocation = getStorageLocationByCode(toLocation);
+        Long fromStorageLocationId = fromStorageLocation.id();
+        Long toStorageLocationId = toStorageLocation.id();
+        
+        if (fromStorageLocationId.equals(toStorageLocationId)) {
+            throw new IllegalArgumentException("來源位置和目標位置不能相同");
+        }
+        
+        // 1. 依儲位順序補建不存在的庫存記錄，再依序鎖定來源與目標庫存
+        List<LocationRef> orderedLocations = fromStorageLocationId < toStorageLocationId
+                ? List.of(fromStorageLocation, toStorageLocation)
+                : List.of(toStorageLocation, fromStorageLocation);
+        for (LocationRef storageLocation : orderedLocations) {
+            stockRepository.insertIfAbsent(itemId, storageLocation.warehouseId(), storageLocation.id());
+        }
+        List<Stock> lockedStocks = stockRepository.lockByItemIdAndStorageLocationIds(
+            itemId, List.of(fromStorageLocationId, toStorageLocationId));
+        Stock fromStock = null;
+        Stock toStock = null;
+        for (Stock stock : lockedStocks) {
+            if (stock.getStorageLocationId().equals(fromStorageLocationId)) {
+                fromStock = stock;
+            } else {
+                toStock = stock;
             }
         }
         
-        stock.setQuantity(newQuantity);
-        stockRepository.save(stock);
+        // 2. 套用雙邊異動
+        if (fromStock == null || fromStock.getQuantity().compareTo(quantity) < 0) {
+            throw new IllegalStateException(insufficientMessage);
+        }
+        fromStock.setQuantity(fromStock.getQuantity().subtract(quantity));
+        
+        toStock.setQuantity(toStock.getQuantity().add(quantity));
         
         // 3. 寫入庫存異動記錄
+        recordMovement(itemId, fromStorageLocation.warehouseId(), fromStorageLocationId, MovementType.OUTBOUND, quantity, note);
+        recordMovement(itemId, toStorageLocation.warehouseId(), toStorageLocationId, MovementType.INBOUND, quantity, note);
+        
+        log.debug("雙筆庫存操作完成 - 商品ID: {}, 從 {} 至 {}, 數量: {}", itemId, fromLocation, toLocation, quantity);
+    }
+    
+    /**
+     * 寫入庫存異動記錄
+     */
+    private void recordMovement(Long itemId, Long warehouseId, Long storageLocationId,
+                                MovementType movementType, BigDecimal quantity, String note) {
+        stockMovementRepository.save(newMovement(itemId, warehouseId, storageLocationId, movementType, quantity, note, null, null));
+    }
+    
+    /**
+     * 建立庫存異動記錄（未儲存）
+     * @param sourceSlipId 來源單據ID，非單據觸發時為 null
+     * @param sourceSlipDetailId 來源單據明細ID，非單據觸發時為 null
+     */
+    private StockMovement newMovement(Long itemId, Long warehouseId, Long storageLocationId,
+                                      MovementType movementType, BigDecimal quantity, String note,
+                                      Long sourceSlipId, Long sourceSlipDetailId) {
         StockMovement movement = new StockMovement();
         movement.setItemId(itemId);
         movement.setWarehouseId(warehouseId);
@@ -420,18 +809,17 @@ public class WarehouseManagementService {
         movement.setType(movementType);
         movement.setQuantityChange(quantity);
         movement.setNote(note);
-        
-        stockMovementRepository.save(movement);
-        
-        log.debug("庫存操作完成 - 商品ID: {}, 位置: {}, 類型: {}, 數量: {}, 新庫存: {}", 
-                 itemId, location, movementType, quantity, newQuantity);
+        movement.setSourceSlipId(sourceSlipId);
+        movement.setSourceSlipDetailId(sourceSlipDetailId);
+        return movement;
     }
     
     /**
      * 驗證商品是否存在
      */
     private void validateItemExists(Long itemId) {
-        if (!itemRepository.existsById(itemId)) {
+        // 以 findById 查詢可命中二級快取，existsById 會固定發出 COUNT 查詢
+        if (itemRepository.findById(itemId).isEmpty()) {
             throw new IllegalArgumentException("商品不存在: " + itemId);
         }
     }
@@ -439,28 +827,44 @@ public class WarehouseManagementService {
     /**
      * 根據位置編號獲取儲位信息
      * @param locationCode 位置編號 (如 "A001")
-     * @return StorageLocation 儲位信息
+     * 由 StorageLocationResolver 的記憶體快照解析，不需查詢資料庫
+     * @return LocationRef 儲位信息
      */
-    private StorageLocation getStorageLocationByCode(String locationCode) {
-        return storageLocationRepository.findByCode(locationCode)
-            .orElseThrow(() -> new IllegalArgumentException("儲位不存在: " + locationCode));
+    private LocationRef getStorageLocationByCode(String locationCode) {
+        return storageLocationResolver.requireByCode(locationCode);
     }
     //endregion
     
     //region 庫存異動記錄查詢
     /**
-     * 查詢指定商品的庫存異動記錄
+     * 分頁查詢指定商品的庫存異動記錄
+     */
+    public CursorPage<StockMovement> getStockMovements(Long itemId, PageCursor cursor, Integer limit) {
+        int pageSize = resolvePageLimit(limit);
+        List<StockMovement> rows = stockMovementArchive.findPage(
+                StockMovementArchive.PageFilter.ITEM, itemId, cursor, pageSize + 1);
+        return CursorPage.of(rows, pageSize, StockMovement::getCreatedAt, StockMovement::getId);
+    }
+    
+    /**
+     * 分頁查詢指定位置的庫存異動記錄
      */
-    public List<StockMovement> getStockMovements(Long itemId) {
-        return stockMovementRepository.findByItemId(itemId);
+    public CursorPage<StockMovement> getStockMovementsByLocation(String location, PageCursor cursor, Integer limit) {
+        LocationRef storageLocation = getStorageLocationByCode(location);
+        int pageSize = resolvePageLimit(limit);
+        List<StockMovement> rows = stockMovementArchive.findPage(
+                StockMovementArchive.PageFilter.STORAGE_LOCATION, storageLocation.id(), cursor, pageSize + 1);
+        return CursorPage.of(rows, pageSize, StockMovement::getCreatedAt, StockMovement::getId);
     }
     
     /**
-     * 查詢指定位置的庫存異動記錄
+     * 分頁查詢指定單據完成時產生的庫存異動記錄
      */
-    public List<StockMovement> getStockMovementsByLocation(String location) {
-        StorageLocation storageLocation = getStorageLocationByCode(location);
-        return stockMovementRepository.findByStorageLocationId(storageLocation.getId());
+    public CursorPage<StockMovement> getStockMovementsBySlip(Long slipId, PageCursor cursor, Integer limit) {
+        int pageSize = resolvePageLimit(limit);
+        List<StockMovement> rows = stockMovementArchive.findPage(
+                StockMovementArchive.PageFilter.SOURCE_SLIP, slipId, cursor, pageSize + 1);
+        return CursorPage.of(rows, pageSize, StockMovement::getCreatedAt, StockMovement::getId);
     }
     
     /**
@@ -155,7 +155,7 @@ public class ApiIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.message").value("查詢成功"))
-                .andExpect(jsonPath("$.data").isArray())
+                .andExpect(jsonPath("$.data.items").isArray())
                 .andExpect(jsonPath("$.errorCode").isEmpty());
     }
     
@@ -173,10 +173,31 @@ public class ApiIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.message").value("搜尋成功"))
-                .andExpect(jsonPath("$.data").isArray())
+                .andExpect(jsonPath("$.data.items").isArray())
                 .andExpect(jsonPath("$.errorCode").isEmpty());
     }
-    
+
+    @Test
+    void testItemSuggest() throws Exception {
+        warehouseService.createItem("自動完成測試商品B", "個");
+        warehouseService.createItem("自動完成測試商品A", "個");
+        warehouseService.createItem("其他商品", "個");
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("prefix", "自動完成測試");
+        data.put("limit", 5);
+
+        mockMvc.perform(post("/api/warehouse/item/suggest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(data)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.data.length()").value(2))
+                .andExpect(jsonPath("$.data[0].name").value("自動完成測試商品A"))
+                .andExpect(jsonPath("$.data[0].itemId").isNumber())
+                .andExpect(jsonPath("$.errorCode").isEmpty());
+    }
+
     @Test
     void testUnsupportedAction() throws Exception {
         // This test is no longer relevant since we don't have action-based endpoints
@@ -197,7 +218,7 @@ public class ApiIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.message").value("查詢零庫存成功"))
-                .andExpect(jsonPath("$.data").isArray())
+                .andExpect(jsonPath("$.data.items").isArray())
                 .andExpect(jsonPath("$.errorCode").isEmpty());
     }
     
@@ -212,7 +233,7 @@ public class ApiIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.message").value("查詢低庫存成功"))
-                .andExpect(jsonPath("$.data").isArray())
+                .andExpect(jsonPath("$.data.items").isArray())
                 .andExpect(jsonPath("$.errorCode").isEmpty());
     }
     
@@ -364,7 +385,7 @@ public class ApiIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.message").value("查詢成功"))
-                .andExpect(jsonPath("$.data").isArray())
+                .andExpect(jsonPath("$.data.items").isArray())
                 .andExpect(jsonPath("$.errorCode").isEmpty());
     }
     
@@ -379,7 +400,7 @@ public class ApiIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.message").value("查詢成功"))
-                .andExpect(jsonPath("$.data").isArray())
+                .andExpect(jsonPath("$.data.items").isArray())
                 .andExpect(jsonPath("$.errorCode").isEmpty());
     }
     
@@ -1,7 +1,10 @@
 package erp.core.repository.tests;
 
+import erp.core.entity.Slip;
 import erp.core.entity.SlipDetail;
 import erp.core.repository.SlipDetailRepository;
+import erp.core.service.SlipService.SlipStatus;
+import erp.core.service.SlipService.SlipType;
 import lombok.Setter;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +14,7 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -205,4 +209,80 @@ public class SlipDetailRepositoryTest {
         Integer nullMaxLineNumber = slipDetailRepository.findMaxLineNumberBySlipId(999L);
         assertThat(nullMaxLineNumber).isNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLockRetryCandidates() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minusSeconds(600);
+
+        Slip completedSlip = createSlip(SlipStatus.COMPLETED);
+        Slip draftSlip = createSlip(SlipStatus.DRAFT);
+
+        SlipDetail dueFailed = createDetail(completedSlip, 1, SlipDetail.Status.FAILED, now.minusMinutes(1));
+        SlipDetail notDueFailed = createDetail(completedSlip, 2, SlipDetail.Status.FAILED, now.plusMinutes(10));
+        SlipDetail stalePending = createDetail(completedSlip, 3, SlipDetail.Status.PENDING, null);
+        SlipDetail freshPending = createDetail(completedSlip, 4, SlipDetail.Status.PENDING, null);
+        SlipDetail staleProcessed = createDetail(completedSlip, 5, SlipDetail.Status.PROCESSED, null);
+        SlipDetail draftDueFailed = createDetail(draftSlip, 1, SlipDetail.Status.FAILED, now.minusMinutes(1));
+        entityManager.flush();
+
+        // 滯留判斷依據 updated_at，以原生語句將單據與部分明細的更新時間改為一小時前
+        LocalDateTime longAgo = now.minusHours(1);
+        entityManager.getEntityManager()
+                .createNativeQuery("UPDATE slips SET updated_at = :updatedAt WHERE id IN (:ids)")
+                .setParameter("updatedAt", longAgo)
+                .setParameter("ids", List.of(completedSlip.getId(), draftSlip.getId()))
+                .executeUpdate();
+        entityManager.getEntityManager()
+                .createNativeQuery("UPDATE slip_details SET updated_at = :updatedAt WHERE id IN (:ids)")
+                .setParameter("updatedAt", longAgo)
+                .setParameter("ids", List.of(stalePending.getId(), staleProcessed.getId()))
+                .executeUpdate();
+        entityManager.clear();
+
+        List<Long> myIds = List.of(dueFailed.getId(), notDueFailed.getId(), stalePending.getId(),
+                freshPending.getId(), staleProcessed.getId(), draftDueFailed.getId());
+        List<Object[]> rows = slipDetailRepository.lockRetryCandidates(
+                SlipStatus.COMPLETED.getCode(),
+                SlipDetail.Status.FAILED.getCode(),
+                SlipDetail.Status.PENDING.getCode(),
+                now,
+                staleBefore,
+                1000);
+        List<Long> candidateIds = rows.stream()
+                .map(row -> ((Number) row[0]).longValue())
+                .filter(myIds::contains)
+                .toList();
+
+        // 只領取已完成單據中到期的失敗明細及滯留的待處理明細
+        assertThat(candidateIds).containsExactly(dueFailed.getId(), stalePending.getId());
+        Object[] dueFailedRow = rows.stream()
+                .filter(row -> ((Number) row[0]).longValue() == dueFailed.getId())
+                .findFirst()
+                .orElseThrow();
+        assertThat(((Number) dueFailedRow[1]).byteValue()).isEqualTo(SlipType.OUTBOUND.getCode());
+
+        System.out.println("[DEBUG_LOG] 重試候選明細: " + candidateIds);
+    }
+
+    private Slip createSlip(SlipStatus status) {
+        Slip slip = new Slip();
+        slip.setSlipsType(SlipType.OUTBOUND.getCode());
+        slip.setCreatedBy(1L);
+        slip.setStatus(status.getCode());
+        return entityManager.persist(slip);
+    }
+
+    private SlipDetail createDetail(Slip slip, int lineNumber, SlipDetail.Status status, LocalDateTime nextAttemptAt) {
+        SlipDetail detail = new SlipDetail();
+        detail.setSlipId(slip.getId());
+        detail.setLineNumber(lineNumber);
+        detail.setItemId(1L);
+        detail.setFromWarehouseId(1L);
+        detail.setFromStorageLocationId(1L);
+        detail.setQuantityChange(BigDecimal.ONE);
+        detail.setStatus(status);
+        detail.setNextAttemptAt(nextAttemptAt);
+        return slipDetailRepository.save(detail);
+    }
+}
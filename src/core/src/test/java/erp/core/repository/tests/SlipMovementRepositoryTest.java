@@ -71,11 +71,6 @@ public class SlipMovementRepositoryTest {
         List<SlipMovement> slipMovementsByStockMovementId = slipMovementRepository.findByStockMovementId(savedMovement.getId());
         assertThat(slipMovementsByStockMovementId).hasSize(1);
         
-        // 測試根據單據ID查找庫存異動記錄
-        List<StockMovement> stockMovementsBySlipId = slipMovementRepository.findStockMovementsBySlipId(1L);
-        assertThat(stockMovementsBySlipId).hasSize(1);
-        assertThat(stockMovementsBySlipId.get(0).getId()).isEqualTo(savedMovement.getId());
-        
         // 測試根據庫存異動ID查找單據ID
         List<Long> slipIdsByStockMovementId = slipMovementRepository.findSlipIdsByStockMovementId(savedMovement.getId());
         assertThat(slipIdsByStockMovementId).hasSize(1);
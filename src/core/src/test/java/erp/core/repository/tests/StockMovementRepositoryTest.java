@@ -10,9 +10,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -55,6 +57,7 @@ public class StockMovementRepositoryTest {
         movement.setType(MovementType.INBOUND); // 入庫
         movement.setQuantityChange(new BigDecimal("50.00"));
         movement.setNote("測試入庫");
+        movement.setSourceSlipId(1L);
         
         // 保存並刷新
         StockMovement savedMovement = stockMovementRepository.save(movement);
@@ -72,32 +75,28 @@ public class StockMovementRepositoryTest {
         assertThat(foundMovement).isPresent();
         assertThat(foundMovement.get().getType()).isEqualTo(MovementType.INBOUND);
         
-        // 測試按商品ID查找
-        List<StockMovement> movementsByItemId = stockMovementRepository.findByItemId(1L);
+        // 測試按商品ID鍵集分頁查找（游標自最早時間起）
+        LocalDateTime start = LocalDateTime.of(1970, 1, 1, 0, 0);
+        List<StockMovement> movementsByItemId = stockMovementRepository.findPageByItemIdAfter(1L, start, 0L, Limit.of(10));
         assertThat(movementsByItemId).hasSize(1);
+        assertThat(movementsByItemId.get(0).getWarehouseId()).isEqualTo(1L);
+        assertThat(movementsByItemId.get(0).getType()).isEqualTo(MovementType.INBOUND);
         
-        // 測試按倉庫ID查找
-        List<StockMovement> movementsByWarehouseId = stockMovementRepository.findByWarehouseId(1L);
-        assertThat(movementsByWarehouseId).hasSize(1);
-        
-        // 測試按儲位ID查找
-        List<StockMovement> movementsByStorageLocationId = stockMovementRepository.findByStorageLocationId(1L);
+        // 測試按儲位ID鍵集分頁查找
+        List<StockMovement> movementsByStorageLocationId = stockMovementRepository.findPageByStorageLocationIdAfter(1L, start, 0L, Limit.of(10));
         assertThat(movementsByStorageLocationId).hasSize(1);
         
-        // 測試按單據ID查找（通過新的關聯表）
-        List<StockMovement> movementsBySlipId = slipMovementRepository.findStockMovementsBySlipId(1L);
+        // 測試按來源單據ID鍵集分頁查找
+        List<StockMovement> movementsBySlipId = stockMovementRepository.findPageBySourceSlipIdAfter(1L, start, 0L, Limit.of(10));
         assertThat(movementsBySlipId).hasSize(1);
         
-        // 測試按類型查找
-        List<StockMovement> inboundMovements = stockMovementRepository.findByType(MovementType.INBOUND);
-        assertThat(inboundMovements).hasSize(1);
-        
-        // 測試入庫記錄查詢
-        List<StockMovement> inboundByItemId = stockMovementRepository.findInboundMovementsByItemId(1L, MovementType.INBOUND);
-        assertThat(inboundByItemId).hasSize(1);
+        // 測試游標位於最後一筆之後時不再回傳
+        StockMovement last = movementsByItemId.get(0);
+        assertThat(stockMovementRepository.findPageByItemIdAfter(1L, last.getCreatedAt(), last.getId(), Limit.of(10))).isEmpty();
         
-        // 測試總入庫量計算
-        BigDecimal totalInbound = stockMovementRepository.getTotalInboundQuantityByItemId(1L, MovementType.INBOUND);
+        // 測試總入庫量計算（未彙總的尾端自最早時間起）
+        BigDecimal totalInbound = stockMovementRepository.getTotalInboundQuantityByItemIdSince(
+                1L, MovementType.INBOUND, start);
         assertThat(totalInbound).isEqualByComparingTo(new BigDecimal("50.00"));
     }
 }
\ No newline at end of file
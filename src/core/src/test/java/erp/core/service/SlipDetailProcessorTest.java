@@ -0,0 +1,169 @@
+package erp.core.service;
+
+import erp.core.dto.PageCursor;
+import erp.core.entity.Item;
+import erp.core.entity.SlipDetail;
+import erp.core.entity.Stock;
+import erp.core.entity.StockMovement;
+import erp.core.entity.StorageLocation;
+import erp.core.repository.SlipDetailRepository;
+import erp.core.repository.StorageLocationRepository;
+import erp.core.service.SlipService.SlipType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class SlipDetailProcessorTest {
+
+    @Autowired
+    private SlipDetailProcessor slipDetailProcessor;
+
+    @Autowired
+    private WarehouseManagementService warehouseService;
+
+    @Autowired
+    private SlipDetailRepository slipDetailRepository;
+
+    @Autowired
+    private StorageLocationRepository storageLocationRepository;
+
+    private Item testItem;
+    private StorageLocation location;
+
+    @BeforeEach
+    void setUp() {
+        location = new StorageLocation();
+        location.setWarehouseId(1L);
+        location.setCode("SLIP_PROC_A");
+        location.setStatus((byte) 1);
+        location = storageLocationRepository.save(location);
+
+        testItem = warehouseService.createItem("單據處理測試商品", "個");
+    }
+
+    private SlipDetail createPendingInboundDetail(BigDecimal quantity) {
+        return createPendingDetail(1, null, location.getId(), quantity);
+    }
+
+    private SlipDetail createPendingDetail(int lineNumber, Long fromStorageLocationId, Long toStorageLocationId, BigDecimal quantity) {
+        SlipDetail detail = new SlipDetail();
+        detail.setSlipId(1L);
+        detail.setLineNumber(lineNumber);
+        detail.setItemId(testItem.getId());
+        if (fromStorageLocationId != null) {
+            detail.setFromWarehouseId(location.getWarehouseId());
+            detail.setFromStorageLocationId(fromStorageLocationId);
+        }
+        if (toStorageLocationId != null) {
+            detail.setToWarehouseId(location.getWarehouseId());
+            detail.setToStorageLocationId(toStorageLocationId);
+        }
+        detail.setQuantityChange(quantity);
+        detail.setStatus(SlipDetail.Status.PENDING);
+        return slipDetailRepository.saveAndFlush(detail);
+    }
+
+    @Test
+    void testProcessInboundDetailOnlyOnce() {
+        SlipDetail detail = createPendingInboundDetail(BigDecimal.valueOf(25));
+
+        assertTrue(slipDetailProcessor.process(detail.getId(), SlipType.INBOUND));
+        // 已處理的明細再次送出時不會重複異動庫存
+        assertFalse(slipDetailProcessor.process(detail.getId(), SlipType.INBOUND));
+
+        Optional<Stock> stock = warehouseService.getStock(testItem.getId(), "SLIP_PROC_A");
+        assertTrue(stock.isPresent());
+        assertEquals(0, BigDecimal.valueOf(25).compareTo(stock.get().getQuantity()));
+        assertEquals(SlipDetail.Status.PROCESSED, slipDetailRepository.findById(detail.getId()).orElseThrow().getStatus());
+
+        System.out.println("[DEBUG_LOG] 單據明細搶佔處理測試通過");
+    }
+
+    @Test
+    void testProcessNettedWritesOneMovementPerLine() {
+        List<SlipDetail> details = List.of(
+                createPendingDetail(1, null, location.getId(), BigDecimal.valueOf(10)),
+                createPendingDetail(2, null, location.getId(), BigDecimal.valueOf(20)),
+                createPendingDetail(3, null, location.getId(), BigDecimal.valueOf(30)));
+
+        assertEquals(3, slipDetailProcessor.processNetted(details, SlipType.INBOUND));
+
+        Optional<Stock> stock = warehouseService.getStock(testItem.getId(), "SLIP_PROC_A");
+        assertTrue(stock.isPresent());
+        assertEquals(0, BigDecimal.valueOf(60).compareTo(stock.get().getQuantity()));
+        assertEquals(3, warehouseService.getStockMovements(testItem.getId(), PageCursor.FIRST, null).getItems().size());
+        // 異動記錄以來源欄位對應單據明細
+        List<StockMovement> movements = warehouseService.getStockMovementsBySlip(1L, PageCursor.FIRST, null).getItems().stream()
+                .filter(movement -> movement.getItemId().equals(testItem.getId()))
+                .toList();
+        assertEquals(3, movements.size());
+        for (int i = 0; i < details.size(); i++) {
+            assertEquals(details.get(i).getId(), movements.get(i).getSourceSlipDetailId());
+        }
+        for (SlipDetail detail : details) {
+            assertEquals(SlipDetail.Status.PROCESSED, slipDetailRepository.findById(detail.getId()).orElseThrow().getStatus());
+        }
+
+        System.out.println("[DEBUG_LOG] 合併處理明細測試通過，庫存: " + stock.get().getQuantity());
+    }
+
+    @Test
+    void testRecordFailedAttemptBacksOffThenDeadLetters() {
+        SlipDetail detail = createPendingInboundDetail(BigDecimal.valueOf(5));
+        RuntimeException cause = new IllegalStateException("庫存不足");
+
+        // 預設重試上限 5 次：前 4 次轉為失敗並排定 30 * 2^(n-1) 秒後重試
+        for (int attempt = 1; attempt < 5; attempt++) {
+            LocalDateTime before = LocalDateTime.now();
+            slipDetailProcessor.recordFailedAttempt(detail.getId(), cause);
+            LocalDateTime after = LocalDateTime.now();
+
+            SlipDetail failed = slipDetailRepository.findById(detail.getId()).orElseThrow();
+            long expectedBackoff = 30L << (attempt - 1);
+            assertEquals(SlipDetail.Status.FAILED, failed.getStatus());
+            assertEquals(attempt, failed.getAttempts());
+            assertEquals("庫存不足", failed.getLastError());
+            assertTrue(failed.getNextAttemptAt().isAfter(before.plusSeconds(expectedBackoff).minusSeconds(1)));
+            assertTrue(failed.getNextAttemptAt().isBefore(after.plusSeconds(expectedBackoff).plusSeconds(1)));
+
+            // 重試工作者領取時轉回待處理
+            slipDetailRepository.leaseForRetry(List.of(detail.getId()),
+                    List.of(SlipDetail.Status.FAILED), SlipDetail.Status.PENDING);
+        }
+
+        // 第 5 次失敗轉為無法處理，不再排定重試
+        slipDetailProcessor.recordFailedAttempt(detail.getId(), cause);
+        SlipDetail deadLetter = slipDetailRepository.findById(detail.getId()).orElseThrow();
+        assertEquals(SlipDetail.Status.DEAD_LETTER, deadLetter.getStatus());
+        assertEquals(5, deadLetter.getAttempts());
+        assertNull(deadLetter.getNextAttemptAt());
+
+        System.out.println("[DEBUG_LOG] 明細失敗退避與無法處理轉換測試通過");
+    }
+
+    @Test
+    void testBackoffSecondsIsCapped() {
+        assertEquals(30, slipDetailProcessor.backoffSeconds(1));
+        assertEquals(60, slipDetailProcessor.backoffSeconds(2));
+        assertEquals(1920, slipDetailProcessor.backoffSeconds(7));
+        // 30 * 2^7 = 3840 超過上限 3600
+        assertEquals(3600, slipDetailProcessor.backoffSeconds(8));
+        // 位移次數上限避免溢位
+        assertEquals(3600, slipDetailProcessor.backoffSeconds(100));
+
+        System.out.println("[DEBUG_LOG] 明細重試間隔上限測試通過");
+    }
+}
@@ -0,0 +1,52 @@
+package erp.core.service;
+
+import erp.core.entity.SlipDetail;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlipLanePartitionerTest {
+
+    private SlipDetail detail(int lineNumber, Long itemId, Long fromStorageLocationId, Long toStorageLocationId) {
+        SlipDetail detail = new SlipDetail();
+        detail.setLineNumber(lineNumber);
+        detail.setItemId(itemId);
+        detail.setFromStorageLocationId(fromStorageLocationId);
+        detail.setToStorageLocationId(toStorageLocationId);
+        return detail;
+    }
+
+    @Test
+    void testTransfersSharingStockRowShareLane() {
+        // 1: 商品1 A->B, 2: 商品2 A->B, 3: 商品1 B->C（與第1行共用 商品1@B）
+        SlipDetail first = detail(1, 1L, 10L, 20L);
+        SlipDetail second = detail(2, 2L, 10L, 20L);
+        SlipDetail third = detail(3, 1L, 20L, 30L);
+
+        List<List<SlipDetail>> lanes = SlipLanePartitioner.partition(List.of(first, second, third),
+                d -> List.of(d.getFromStorageLocationId(), d.getToStorageLocationId()));
+
+        assertEquals(2, lanes.size());
+        assertEquals(List.of(first, third), lanes.get(0));
+        assertEquals(List.of(second), lanes.get(1));
+
+        System.out.println("[DEBUG_LOG] 調撥明細分道測試通過，處理道數: " + lanes.size());
+    }
+
+    @Test
+    void testLaneKeepsLineOrder() {
+        SlipDetail first = detail(1, 1L, 10L, null);
+        SlipDetail second = detail(2, 1L, 10L, null);
+        SlipDetail third = detail(3, 1L, 10L, null);
+
+        List<List<SlipDetail>> lanes = SlipLanePartitioner.partition(List.of(first, second, third),
+                d -> List.of(d.getFromStorageLocationId()));
+
+        assertEquals(1, lanes.size());
+        assertEquals(List.of(first, second, third), lanes.get(0));
+
+        System.out.println("[DEBUG_LOG] 同鍵明細維持順序測試通過");
+    }
+}
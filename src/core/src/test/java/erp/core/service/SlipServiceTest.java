@@ -0,0 +1,157 @@
+package erp.core.service;
+
+import erp.core.dto.SlipLineDto;
+import erp.core.dto.SlipReadDto;
+import erp.core.entity.Item;
+import erp.core.entity.OutboxEvent;
+import erp.core.entity.Slip;
+import erp.core.entity.SlipDetail;
+import erp.core.entity.StorageLocation;
+import erp.core.repository.OutboxEventRepository;
+import erp.core.repository.SlipDetailRepository;
+import erp.core.repository.SlipRepository;
+import erp.core.repository.StorageLocationRepository;
+import erp.core.service.SlipService.SlipStatus;
+import erp.core.service.SlipService.SlipType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class SlipServiceTest {
+
+    @Autowired
+    private SlipService slipService;
+
+    @Autowired
+    private WarehouseManagementService warehouseService;
+
+    @Autowired
+    private SlipRepository slipRepository;
+
+    @Autowired
+    private SlipDetailRepository slipDetailRepository;
+
+    @Autowired
+    private StorageLocationRepository storageLocationRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    private Item testItem;
+    private StorageLocation location;
+
+    @BeforeEach
+    void setUp() {
+        location = new StorageLocation();
+        location.setWarehouseId(1L);
+        location.setCode("SLIP_SVC_A");
+        location.setStatus((byte) 1);
+        location = storageLocationRepository.save(location);
+
+        testItem = warehouseService.createItem("單據服務測試商品", "個");
+    }
+
+    private void addOutboundDetail(Slip slip, int lineNumber, BigDecimal quantity) {
+        SlipDetail detail = new SlipDetail();
+        detail.setSlipId(slip.getId());
+        detail.setLineNumber(lineNumber);
+        detail.setItemId(testItem.getId());
+        detail.setFromWarehouseId(location.getWarehouseId());
+        detail.setFromStorageLocationId(location.getId());
+        detail.setQuantityChange(quantity);
+        detail.setStatus(SlipDetail.Status.PENDING);
+        slipDetailRepository.saveAndFlush(detail);
+    }
+
+    @Test
+    void testCompleteSlipRejectsWhenAggregatedQuantityExceedsStock() {
+        warehouseService.inbound(testItem.getId(), "SLIP_SVC_A", BigDecimal.valueOf(15), "測試期初");
+
+        // 各行皆小於庫存，但加總 20 超過庫存 15
+        Slip slip = slipService.createSlip(SlipType.OUTBOUND, 1L);
+        addOutboundDetail(slip, 1, BigDecimal.valueOf(10));
+        addOutboundDetail(slip, 2, BigDecimal.valueOf(10));
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> slipService.completeSlip(slip.getId()));
+        assertTrue(exception.getMessage().contains("庫存不足"));
+        assertTrue(exception.getMessage().contains("SLIP_SVC_A"));
+        assertEquals(SlipStatus.DRAFT.getCode(), slipRepository.findById(slip.getId()).orElseThrow().getStatus());
+        assertEquals(0, BigDecimal.valueOf(15).compareTo(
+                warehouseService.getStock(testItem.getId(), "SLIP_SVC_A").orElseThrow().getQuantity()));
+
+        System.out.println("[DEBUG_LOG] 單據出庫前檢查測試通過: " + exception.getMessage());
+    }
+
+    @Test
+    void testCompleteSlipOnlyOnce() {
+        Slip slip = slipService.createSlip(SlipType.INBOUND, 1L);
+
+        Slip completed = slipService.completeSlip(slip.getId());
+        assertEquals(SlipStatus.COMPLETED.getCode(), completed.getStatus());
+
+        // 重複完成時條件式更新不會成功
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> slipService.completeSlip(slip.getId()));
+        assertEquals("單據已經是完成狀態", exception.getMessage());
+        assertThrows(IllegalStateException.class, () -> slipService.cancelSlip(slip.getId()));
+        assertEquals(SlipStatus.COMPLETED.getCode(), slipRepository.findById(slip.getId()).orElseThrow().getStatus());
+
+        System.out.println("[DEBUG_LOG] 單據狀態條件式轉換測試通過");
+    }
+
+    @Test
+    void testCompleteSlipWritesOutboxEvent() {
+        warehouseService.inbound(testItem.getId(), "SLIP_SVC_A", BigDecimal.valueOf(15), "測試期初");
+
+        Slip slip = slipService.createSlip(SlipType.OUTBOUND, 1L);
+        addOutboundDetail(slip, 1, BigDecimal.valueOf(10));
+        slipService.completeSlip(slip.getId());
+
+        // 單據完成事件與狀態轉換同一事務寫入
+        List<OutboxEvent> slipEvents = outboxEventRepository.findByAggregateTypeAndAggregateIdOrderById(
+                OutboxService.AGGREGATE_SLIP, slip.getId());
+        assertEquals(1, slipEvents.size());
+        assertEquals(OutboxEvent.EventType.SLIP_COMPLETED, slipEvents.get(0).getEventType());
+        assertTrue(slipEvents.get(0).getPayload().contains("\"pendingDetails\":1"));
+        assertNull(slipEvents.get(0).getPublishedAt());
+
+        // 庫存異動沒有訂閱者，期初入庫不寫入發件匣事件
+        List<OutboxEvent> stockEvents = outboxEventRepository.findByAggregateTypeAndAggregateIdOrderById(
+                "stock", testItem.getId());
+        assertTrue(stockEvents.isEmpty());
+
+        System.out.println("[DEBUG_LOG] 發件匣事件寫入測試通過: " + slipEvents.get(0).getPayload());
+    }
+
+    @Test
+    void testReadSlipReturnsLinesWithReferences() {
+        Slip slip = slipService.createSlip(SlipType.OUTBOUND, 1L);
+        addOutboundDetail(slip, 1, BigDecimal.valueOf(10));
+        addOutboundDetail(slip, 2, BigDecimal.valueOf(5));
+
+        SlipReadDto read = slipService.readSlip(slip.getId());
+        assertEquals(slip.getId(), read.getSlip().getId());
+        assertEquals(2, read.getLines().size());
+        SlipLineDto line = read.getLines().get(0);
+        assertEquals(1, line.getLineNumber());
+        assertEquals("單據服務測試商品", line.getItemName());
+        assertEquals("SLIP_SVC_A", line.getFromStorageLocationCode());
+        assertNull(line.getToStorageLocationCode());
+
+        assertThrows(IllegalArgumentException.class, () -> slipService.readSlip(-1L));
+
+        System.out.println("[DEBUG_LOG] 單據讀取測試通過: " + line);
+    }
+}
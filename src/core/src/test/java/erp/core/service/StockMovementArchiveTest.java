@@ -0,0 +1,172 @@
+package erp.core.service;
+
+import erp.core.dto.PageCursor;
+import erp.core.entity.StockMovement;
+import erp.core.repository.StockMovementRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StockMovementArchiveTest {
+
+    private static final LocalDateTime BOUNDARY = LocalDateTime.of(2025, 11, 1, 0, 0);
+
+    private StockMovementRepository stockMovementRepository;
+
+    @BeforeEach
+    void setUp() {
+        stockMovementRepository = mock(StockMovementRepository.class);
+    }
+
+    /**
+     * 以固定分界時間取代 key_values 查詢，TTL 為 0 時每次查詢皆重新讀取
+     */
+    private StockMovementArchive archive(boolean enabled, long ttlSeconds, List<LocalDateTime> boundaries) {
+        AtomicInteger loads = new AtomicInteger();
+        return new StockMovementArchive(stockMovementRepository, mock(EntityManager.class), enabled, ttlSeconds) {
+            @Override
+            LocalDateTime loadBoundary() {
+                LocalDateTime value = boundaries.get(Math.min(loads.getAndIncrement(), boundaries.size() - 1));
+                if (value == null) {
+                    throw new IllegalStateException("key_values 無法讀取");
+                }
+                return value;
+            }
+        };
+    }
+
+    private StockMovementArchive archive(LocalDateTime boundary) {
+        return new StockMovementArchive(stockMovementRepository, mock(EntityManager.class), true, 60) {
+            @Override
+            LocalDateTime loadBoundary() {
+                return boundary;
+            }
+        };
+    }
+
+    private StockMovement movement(long id, LocalDateTime createdAt) {
+        StockMovement movement = new StockMovement();
+        movement.setId(id);
+        movement.setCreatedAt(createdAt);
+        return movement;
+    }
+
+    @Test
+    void testSplitByBoundary() {
+        StockMovementArchive archive = archive(BOUNDARY);
+        LocalDateTime before = BOUNDARY.minusMonths(2);
+        LocalDateTime after = BOUNDARY.plusMonths(2);
+
+        // 範圍跨越分界：切為冷、熱兩段，依時間先後排列
+        assertEquals(List.of(new StockMovementArchive.Segment(true, before, BOUNDARY),
+                        new StockMovementArchive.Segment(false, BOUNDARY, after)),
+                archive.split(before, after));
+        // 範圍完全早於分界（含結束時間等於分界）：只讀冷資料表
+        assertEquals(List.of(new StockMovementArchive.Segment(true, before, BOUNDARY)),
+                archive.split(before, BOUNDARY));
+        // 範圍自分界起：只讀熱資料表
+        assertEquals(List.of(new StockMovementArchive.Segment(false, BOUNDARY, after)),
+                archive.split(BOUNDARY, after));
+
+        System.out.println("[DEBUG_LOG] 冷熱分段測試通過");
+    }
+
+    @Test
+    void testSplitWithoutBoundaryReadsHotOnly() {
+        LocalDateTime from = BOUNDARY.minusYears(5);
+        LocalDateTime to = BOUNDARY.plusYears(5);
+
+        // 尚未搬移任何資料
+        assertEquals(List.of(new StockMovementArchive.Segment(false, from, to)),
+                archive(null).split(from, to));
+        // 停用冷資料查詢時不讀取分界時間
+        StockMovementArchive disabled = archive(false, 60, List.of(BOUNDARY));
+        assertNull(disabled.boundary());
+        assertEquals(List.of(new StockMovementArchive.Segment(false, from, to)), disabled.split(from, to));
+
+        System.out.println("[DEBUG_LOG] 無分界時間分段測試通過");
+    }
+
+    @Test
+    void testFindPageAfterBoundaryReadsHotOnly() {
+        StockMovementArchive archive = archive(BOUNDARY);
+        PageCursor cursor = new PageCursor(BOUNDARY, 5L);
+        List<StockMovement> hot = List.of(movement(6L, BOUNDARY.plusDays(1)));
+        when(stockMovementRepository.findPageByItemIdAfter(1L, BOUNDARY, 5L, Limit.of(3))).thenReturn(hot);
+
+        assertEquals(hot, archive.findPage(StockMovementArchive.PageFilter.ITEM, 1L, cursor, 3));
+        verify(stockMovementRepository, never())
+                .findArchivedPageByItemIdAfter(anyLong(), any(), anyLong(), any(), anyInt());
+
+        System.out.println("[DEBUG_LOG] 分界之後分頁只讀熱資料表測試通過");
+    }
+
+    @Test
+    void testFindPageFillsFromHotWhenArchiveIsShort() {
+        StockMovementArchive archive = archive(BOUNDARY);
+        LocalDateTime cold = BOUNDARY.minusDays(3);
+        StockMovement archived = movement(1L, cold);
+        StockMovement first = movement(7L, BOUNDARY);
+        StockMovement second = movement(8L, BOUNDARY.plusDays(1));
+        when(stockMovementRepository.findArchivedPageByStorageLocationIdAfter(2L, PageCursor.FIRST.createdAt(), 0L, BOUNDARY, 3))
+                .thenReturn(List.of(archived));
+        // 冷資料表不足一頁時，自分界時間起讀取剩餘筆數
+        when(stockMovementRepository.findPageByStorageLocationIdAfter(2L, BOUNDARY, Long.MIN_VALUE, Limit.of(2)))
+                .thenReturn(List.of(first, second));
+
+        List<StockMovement> rows = archive.findPage(StockMovementArchive.PageFilter.STORAGE_LOCATION, 2L, PageCursor.FIRST, 3);
+
+        assertEquals(List.of(archived, first, second), rows);
+
+        System.out.println("[DEBUG_LOG] 冷資料不足一頁時合併熱資料測試通過");
+    }
+
+    @Test
+    void testFindPageFullArchivePageSkipsHot() {
+        StockMovementArchive archive = archive(BOUNDARY);
+        PageCursor cursor = new PageCursor(BOUNDARY.minusMonths(1), 10L);
+        List<StockMovement> archived = List.of(movement(11L, BOUNDARY.minusDays(20)), movement(12L, BOUNDARY.minusDays(10)));
+        when(stockMovementRepository.findArchivedPageBySourceSlipIdAfter(3L, cursor.createdAt(), 10L, BOUNDARY, 2))
+                .thenReturn(archived);
+
+        assertEquals(archived, archive.findPage(StockMovementArchive.PageFilter.SOURCE_SLIP, 3L, cursor, 2));
+        verify(stockMovementRepository, never()).findPageBySourceSlipIdAfter(eq(3L), any(), any(), any());
+
+        System.out.println("[DEBUG_LOG] 冷資料已滿一頁時不讀熱資料表測試通過");
+    }
+
+    @Test
+    void testReloadFailureKeepsPreviousBoundary() {
+        // 第一次讀取成功，之後讀取失敗
+        List<LocalDateTime> boundaries = new ArrayList<>();
+        boundaries.add(BOUNDARY);
+        boundaries.add(null);
+        StockMovementArchive archive = archive(true, 0, boundaries);
+
+        assertEquals(BOUNDARY, archive.boundary());
+        assertEquals(BOUNDARY, archive.boundary());
+
+        // 尚未讀取成功過時不沿用，直接拋出
+        StockMovementArchive unloaded = archive(true, 0, Collections.singletonList(null));
+        assertThrows(IllegalStateException.class, unloaded::boundary);
+
+        System.out.println("[DEBUG_LOG] 分界時間讀取失敗沿用先前值測試通過");
+    }
+}
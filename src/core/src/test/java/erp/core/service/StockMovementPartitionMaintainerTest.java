@@ -0,0 +1,307 @@
+package erp.core.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StockMovementPartitionMaintainerTest {
+
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private final LocalDateTime currentMonth = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+
+    private StockMovementArchive stockMovementArchive;
+    private StockMovementRollupService stockMovementRollupService;
+    private StubMaintainer maintainer;
+
+    /**
+     * 以記憶體中的分區狀態取代 information_schema 與 DDL
+     */
+    private static class StubMaintainer extends StockMovementPartitionMaintainer {
+
+        private final List<PartitionInfo> partitions = new ArrayList<>();
+        private final List<String> ddl = new ArrayList<>();
+        private final List<String> copied = new ArrayList<>();
+        private final Map<String, Long> hotCounts = new HashMap<>();
+        private final Map<String, Deque<Long>> archivedCounts = new HashMap<>();
+        private BoundaryRecord boundary = new BoundaryRecord(null, null);
+        private LocalDateTime savedBoundary;
+
+        StubMaintainer(StockMovementArchive archive, StockMovementRollupService rollupService) {
+            super(mock(EntityManager.class), mock(PlatformTransactionManager.class), archive, rollupService, 3, 12, 10000, 60);
+        }
+
+        @Override
+        List<PartitionInfo> loadPartitions() {
+            return partitions;
+        }
+
+        @Override
+        boolean archiveTableExists() {
+            return true;
+        }
+
+        @Override
+        void executeDdl(String sql) {
+            ddl.add(sql);
+        }
+
+        @Override
+        int copyToArchive(PartitionInfo partition) {
+            copied.add(partition.name());
+            return hotCounts.getOrDefault(partition.name(), 0L).intValue();
+        }
+
+        @Override
+        long countPartition(PartitionInfo partition) {
+            return hotCounts.getOrDefault(partition.name(), 0L);
+        }
+
+        @Override
+        long countArchived(PartitionInfo partition) {
+            // 依序回傳設定的筆數，最後一個值重複使用
+            Deque<Long> counts = archivedCounts.get(partition.name());
+            return counts.size() > 1 ? counts.pollFirst() : counts.peekFirst();
+        }
+
+        @Override
+        BoundaryRecord loadBoundary() {
+            return boundary;
+        }
+
+        @Override
+        void saveBoundary(LocalDateTime value) {
+            savedBoundary = value;
+            boundary = new BoundaryRecord(value, LocalDateTime.now());
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        stockMovementArchive = mock(StockMovementArchive.class);
+        stockMovementRollupService = mock(StockMovementRollupService.class);
+        maintainer = new StubMaintainer(stockMovementArchive, stockMovementRollupService);
+    }
+
+    /**
+     * 建立自 from 起連續的月分區，第一個分區無下界，最後加上 MAXVALUE 分區
+     */
+    private void monthlyPartitions(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = null;
+        for (LocalDateTime month = from; month.isBefore(to); month = month.plusMonths(1)) {
+            maintainer.partitions.add(new StockMovementPartitionMaintainer.PartitionInfo(
+                    month.format(NAME), lower, month.plusMonths(1)));
+            lower = month.plusMonths(1);
+        }
+        maintainer.partitions.add(new StockMovementPartitionMaintainer.PartitionInfo("pmax", lower, null));
+    }
+
+    private String name(LocalDateTime month) {
+        return month.format(NAME);
+    }
+
+    @Test
+    void testParseBound() {
+        assertEquals(LocalDateTime.of(2026, 11, 1, 0, 0), StockMovementPartitionMaintainer.parseBound("'2026-11-01 00:00:00'"));
+        assertEquals(LocalDateTime.of(2026, 11, 1, 0, 0), StockMovementPartitionMaintainer.parseBound("'2026-11-01 00:00:00.000'"));
+        assertNull(StockMovementPartitionMaintainer.parseBound("MAXVALUE"));
+        assertNull(StockMovementPartitionMaintainer.parseBound(null));
+
+        System.out.println("[DEBUG_LOG] 分區上界解析測試通過");
+    }
+
+    @Test
+    void testEnsureFuturePartitionsSplitsMaxValuePartition() {
+        // 只有 MAXVALUE 分區：由當月切出至當月 + 3 個月
+        maintainer.partitions.add(new StockMovementPartitionMaintainer.PartitionInfo("pmax", null, null));
+
+        maintainer.ensureFuturePartitions();
+
+        assertEquals(4, maintainer.ddl.size());
+        for (int i = 0; i < 4; i++) {
+            LocalDateTime month = currentMonth.plusMonths(i);
+            assertEquals("ALTER TABLE stock_movements REORGANIZE PARTITION pmax INTO (PARTITION " + name(month) +
+                            " VALUES LESS THAN ('" + month.plusMonths(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) +
+                            "'), PARTITION pmax VALUES LESS THAN (MAXVALUE))",
+                    maintainer.ddl.get(i));
+        }
+
+        System.out.println("[DEBUG_LOG] 切分 MAXVALUE 分區測試通過");
+    }
+
+    @Test
+    void testEnsureFuturePartitionsOnlyAddsMissingMonths() {
+        // 已有至下個月的分區：只補上之後兩個月
+        monthlyPartitions(currentMonth.minusMonths(1), currentMonth.plusMonths(2));
+
+        maintainer.ensureFuturePartitions();
+
+        assertEquals(2, maintainer.ddl.size());
+        assertTrue(maintainer.ddl.get(0).contains("PARTITION " + name(currentMonth.plusMonths(2)) + " VALUES"));
+        assertTrue(maintainer.ddl.get(1).contains("PARTITION " + name(currentMonth.plusMonths(3)) + " VALUES"));
+
+        // 已涵蓋全部未來月份時不再執行 DDL
+        maintainer.ddl.clear();
+        maintainer.partitions.clear();
+        monthlyPartitions(currentMonth.minusMonths(1), currentMonth.plusMonths(4));
+        maintainer.ensureFuturePartitions();
+        assertTrue(maintainer.ddl.isEmpty());
+
+        // 沒有 MAXVALUE 分區時以 ADD PARTITION 新增
+        maintainer.partitions.remove(maintainer.partitions.size() - 1);
+        maintainer.partitions.remove(maintainer.partitions.size() - 1);
+        maintainer.ensureFuturePartitions();
+        assertEquals(List.of("ALTER TABLE stock_movements ADD PARTITION (PARTITION " + name(currentMonth.plusMonths(3)) +
+                        " VALUES LESS THAN ('" + currentMonth.plusMonths(4).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "'))"),
+                maintainer.ddl);
+
+        System.out.println("[DEBUG_LOG] 補齊未來分區測試通過");
+    }
+
+    @Test
+    void testArchiveStopsAtFinalizedRollup() {
+        // 熱資料保留 12 個月，但每日彙總只定案至 14 個月前的第 10 天：只搬移上界不晚於定案水位的分區
+        monthlyPartitions(currentMonth.minusMonths(16), currentMonth.plusMonths(1));
+        when(stockMovementRollupService.finalizedUntil()).thenReturn(currentMonth.minusMonths(14).toLocalDate().plusDays(9));
+
+        maintainer.archiveExpiredPartitions();
+
+        assertEquals(List.of(name(currentMonth.minusMonths(16)), name(currentMonth.minusMonths(15))), maintainer.copied);
+        assertEquals(currentMonth.minusMonths(14), maintainer.savedBoundary);
+        verify(stockMovementArchive).refresh();
+
+        System.out.println("[DEBUG_LOG] 冷資料搬移不超過彙總定案水位測試通過");
+    }
+
+    @Test
+    void testArchiveSkipsAlreadyArchivedPartitions() {
+        monthlyPartitions(currentMonth.minusMonths(16), currentMonth.plusMonths(1));
+        when(stockMovementRollupService.finalizedUntil()).thenReturn(currentMonth.toLocalDate());
+        maintainer.boundary = new StockMovementPartitionMaintainer.BoundaryRecord(currentMonth.minusMonths(14), LocalDateTime.now());
+
+        maintainer.archiveExpiredPartitions();
+
+        // 分界之前的分區已搬移，只複製分界至 (當月 - 12 個月) 之間的分區
+        assertEquals(List.of(name(currentMonth.minusMonths(14)), name(currentMonth.minusMonths(13))), maintainer.copied);
+        assertEquals(currentMonth.minusMonths(12), maintainer.savedBoundary);
+
+        System.out.println("[DEBUG_LOG] 略過已搬移分區測試通過");
+    }
+
+    @Test
+    void testArchiveWaitsForRollup() {
+        monthlyPartitions(currentMonth.minusMonths(16), currentMonth.plusMonths(1));
+        when(stockMovementRollupService.finalizedUntil()).thenReturn(null);
+
+        maintainer.archiveExpiredPartitions();
+
+        assertTrue(maintainer.copied.isEmpty());
+        assertNull(maintainer.savedBoundary);
+        verify(stockMovementArchive, never()).refresh();
+
+        System.out.println("[DEBUG_LOG] 尚未彙總時不搬移測試通過");
+    }
+
+    @Test
+    void testDropWaitsForBoundaryGrace() {
+        monthlyPartitions(currentMonth.minusMonths(16), currentMonth.plusMonths(1));
+        // 分界時間剛更新，其他實例可能仍快取舊分界
+        maintainer.boundary = new StockMovementPartitionMaintainer.BoundaryRecord(currentMonth.minusMonths(14), LocalDateTime.now());
+
+        maintainer.dropArchivedPartitions();
+
+        assertTrue(maintainer.ddl.isEmpty());
+
+        System.out.println("[DEBUG_LOG] 寬限時間內不刪除分區測試通過");
+    }
+
+    @Test
+    void testDropRecopiesShortArchiveBeforeDropping() {
+        monthlyPartitions(currentMonth.minusMonths(16), currentMonth.plusMonths(1));
+        maintainer.boundary = new StockMovementPartitionMaintainer.BoundaryRecord(
+                currentMonth.minusMonths(14), LocalDateTime.now().minusHours(1));
+        String oldest = name(currentMonth.minusMonths(16));
+        String second = name(currentMonth.minusMonths(15));
+        maintainer.hotCounts.put(oldest, 10L);
+        maintainer.hotCounts.put(second, 10L);
+        maintainer.archivedCounts.put(oldest, new ArrayDeque<>(List.of(10L)));
+        // 冷資料表筆數不足：重新複製後筆數相符才刪除
+        maintainer.archivedCounts.put(second, new ArrayDeque<>(List.of(4L, 10L)));
+
+        maintainer.dropArchivedPartitions();
+
+        assertEquals(List.of(second), maintainer.copied);
+        assertEquals(List.of("ALTER TABLE stock_movements DROP PARTITION " + oldest,
+                "ALTER TABLE stock_movements DROP PARTITION " + second), maintainer.ddl);
+
+        System.out.println("[DEBUG_LOG] 刪除前重新複製不足的分區測試通過");
+    }
+
+    @Test
+    void testDropStopsWhenArchiveStaysShort() {
+        monthlyPartitions(currentMonth.minusMonths(16), currentMonth.plusMonths(1));
+        maintainer.boundary = new StockMovementPartitionMaintainer.BoundaryRecord(
+                currentMonth.minusMonths(14), LocalDateTime.now().minusHours(1));
+        String oldest = name(currentMonth.minusMonths(16));
+        String second = name(currentMonth.minusMonths(15));
+        maintainer.hotCounts.put(oldest, 10L);
+        maintainer.hotCounts.put(second, 10L);
+        maintainer.archivedCounts.put(oldest, new ArrayDeque<>(List.of(10L)));
+        maintainer.archivedCounts.put(second, new ArrayDeque<>(List.of(4L)));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, maintainer::dropArchivedPartitions);
+
+        assertTrue(e.getMessage().contains(second));
+        // 只刪除筆數相符的分區
+        assertEquals(List.of("ALTER TABLE stock_movements DROP PARTITION " + oldest), maintainer.ddl);
+
+        System.out.println("[DEBUG_LOG] 複製不完整時停止刪除測試通過");
+    }
+
+    @Test
+    void testCopyToArchiveCopiesInIdChunks() {
+        // 分區內 ID 1..25，每批 10 筆：以 (afterId, upToId] 分三個事務複製
+        List<long[]> chunks = new ArrayList<>();
+        StockMovementPartitionMaintainer chunked = new StockMovementPartitionMaintainer(mock(EntityManager.class),
+                mock(PlatformTransactionManager.class), stockMovementArchive, stockMovementRollupService, 3, 12, 10, 60) {
+            @Override
+            Long lastIdOfChunk(PartitionInfo partition, long afterId) {
+                long next = afterId == Long.MIN_VALUE ? 10 : afterId + 10;
+                return afterId >= 25 ? null : Math.min(next, 25);
+            }
+
+            @Override
+            int copyChunk(PartitionInfo partition, long afterId, long upToId) {
+                chunks.add(new long[]{afterId, upToId});
+                return (int) (upToId - Math.max(afterId, 0));
+            }
+        };
+
+        int copied = chunked.copyToArchive(new StockMovementPartitionMaintainer.PartitionInfo("p202401", null, currentMonth));
+
+        assertEquals(25, copied);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 10}, chunks.get(0));
+        assertArrayEquals(new long[]{10, 20}, chunks.get(1));
+        assertArrayEquals(new long[]{20, 25}, chunks.get(2));
+
+        System.out.println("[DEBUG_LOG] 冷資料分批複製測試通過");
+    }
+}
@@ -0,0 +1,72 @@
+package erp.core.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class StockOperationRetryExecutorTest {
+
+    private StockOperationRetryExecutor retryExecutor;
+
+    @BeforeEach
+    void setUp() {
+        retryExecutor = new StockOperationRetryExecutor(mock(PlatformTransactionManager.class), 3, 1, 5);
+    }
+
+    @Test
+    void testRetryOnVersionConflictThenSucceed() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = retryExecutor.execute("測試", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("Stock", 1L);
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+
+        System.out.println("[DEBUG_LOG] 版本衝突重試測試通過，嘗試次數: " + attempts.get());
+    }
+
+    @Test
+    void testGiveUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+            retryExecutor.execute("測試", () -> {
+                attempts.incrementAndGet();
+                throw new CannotAcquireLockException("Deadlock found");
+            });
+        });
+
+        assertTrue(e.getMessage().contains("並發衝突"));
+        assertEquals(3, attempts.get());
+
+        System.out.println("[DEBUG_LOG] 死鎖重試上限測試通過");
+    }
+
+    @Test
+    void testBusinessErrorIsNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> {
+            retryExecutor.execute("測試", () -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("庫存不足");
+            });
+        });
+
+        assertEquals(1, attempts.get());
+
+        System.out.println("[DEBUG_LOG] 業務錯誤不重試測試通過");
+    }
+}
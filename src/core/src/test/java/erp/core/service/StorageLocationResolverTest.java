@@ -0,0 +1,90 @@
+package erp.core.service;
+
+import erp.core.entity.StorageLocation;
+import erp.core.repository.StorageLocationRepository;
+import erp.core.service.StorageLocationResolver.LocationRef;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class StorageLocationResolverTest {
+
+    @Autowired
+    private StorageLocationResolver storageLocationResolver;
+
+    @Autowired
+    private StorageLocationRepository storageLocationRepository;
+
+    private StorageLocation locationA;
+    private StorageLocation locationB;
+
+    @BeforeEach
+    void setUp() {
+        locationA = createStorageLocation("RES_A", 1L);
+        locationB = createStorageLocation("RES_B", 2L);
+    }
+
+    private StorageLocation createStorageLocation(String code, Long warehouseId) {
+        StorageLocation location = new StorageLocation();
+        location.setWarehouseId(warehouseId);
+        location.setCode(code);
+        location.setStatus((byte) 1);
+        return storageLocationRepository.save(location);
+    }
+
+    @Test
+    void testResolveByCodeAndId() {
+        LocationRef byCode = storageLocationResolver.requireByCode("RES_A");
+        assertEquals(locationA.getId(), byCode.id());
+        assertEquals(1L, byCode.warehouseId());
+        assertEquals((byte) 1, byCode.status());
+
+        LocationRef byId = storageLocationResolver.requireById(locationB.getId());
+        assertEquals("RES_B", byId.code());
+
+        System.out.println("[DEBUG_LOG] 儲位雙向解析測試通過");
+    }
+
+    @Test
+    void testResolveAllByCode() {
+        Map<String, LocationRef> refs = storageLocationResolver.requireAllByCode(List.of("RES_B", "RES_A"));
+
+        assertEquals(List.of("RES_B", "RES_A"), List.copyOf(refs.keySet()));
+        assertEquals(locationA.getId(), refs.get("RES_A").id());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> storageLocationResolver.requireAllByCode(List.of("RES_A", "RES_NOT_EXIST")));
+        assertTrue(e.getMessage().contains("RES_NOT_EXIST"));
+
+        System.out.println("[DEBUG_LOG] 儲位批次解析測試通過");
+    }
+
+    @Test
+    void testInvalidatedOnLocationChange() {
+        assertTrue(storageLocationResolver.findByCode("RES_A").isPresent());
+
+        locationA.setCode("RES_A2");
+        storageLocationRepository.saveAndFlush(locationA);
+
+        assertTrue(storageLocationResolver.findByCode("RES_A2").isPresent());
+        assertEquals("RES_A2", storageLocationResolver.requireById(locationA.getId()).code());
+
+        storageLocationRepository.delete(locationB);
+        storageLocationRepository.flush();
+
+        assertTrue(storageLocationResolver.findById(locationB.getId()).isEmpty());
+
+        System.out.println("[DEBUG_LOG] 儲位異動失效測試通過");
+    }
+}
@@ -1,14 +1,24 @@
 package erp.core.service;
 
+import erp.core.constant.ErrorCode;
+import erp.core.dto.BatchOperationResult;
+import erp.core.dto.CursorPage;
+import erp.core.dto.MovementTotalsDto;
+import erp.core.dto.PageCursor;
+import erp.core.dto.StockOperationLineDto;
 import erp.core.entity.Item;
 import erp.core.entity.Stock;
 import erp.core.entity.StockMovement;
 import erp.core.entity.StockMovement.MovementType;
+import erp.core.entity.StockMovementDailyRollup;
 import erp.core.entity.StorageLocation;
 import erp.core.repository.ItemRepository;
 import erp.core.repository.StockRepository;
+import erp.core.repository.StockMovementDailyRollupRepository;
 import erp.core.repository.StockMovementRepository;
 import erp.core.repository.StorageLocationRepository;
+import erp.core.service.StockMovementExportService.Criteria;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,7 +26,11 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,6 +57,21 @@ class WarehouseManagementServiceTest {
     @Autowired
     private StorageLocationRepository storageLocationRepository;
     
+    @Autowired
+    private StockMovementExportService exportService;
+    
+    @Autowired
+    private StockMovementRollupService rollupService;
+    
+    @Autowired
+    private StockMovementDailyRollupRepository rollupRepository;
+    
+    @Autowired
+    private EntityManager entityManager;
+    
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+    
     private Item testItem;
     private final String TEST_LOCATION_A = "WH_A";
     private final String TEST_LOCATION_B = "WH_B";
@@ -139,6 +168,76 @@ class WarehouseManagementServiceTest {
         
         System.out.println("[DEBUG_LOG] 刪除有庫存商品測試通過");
     }
+
+    @Test
+    void testGetAllItemsPaging() {
+        warehouseService.createItem("分頁商品1", "個");
+        warehouseService.createItem("分頁商品2", "個");
+        warehouseService.createItem("分頁商品3", "個");
+
+        // 共 4 筆（含 setUp 建立的測試商品）
+        CursorPage<Item> firstPage = warehouseService.getAllItems(PageCursor.FIRST, 3);
+        assertEquals(3, firstPage.getItems().size());
+        assertTrue(firstPage.isHasMore());
+        assertNotNull(firstPage.getNextCursor());
+
+        CursorPage<Item> secondPage = warehouseService.getAllItems(PageCursor.decode(firstPage.getNextCursor()), 3);
+        assertEquals(1, secondPage.getItems().size());
+        assertFalse(secondPage.isHasMore());
+        assertNull(secondPage.getNextCursor());
+        assertEquals("分頁商品3", secondPage.getItems().get(0).getName());
+
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not-a-cursor"));
+
+        System.out.println("[DEBUG_LOG] 商品分頁查詢測試通過");
+    }
+
+    @Test
+    void testSearchItemsByNameRanking() {
+        warehouseService.createItem("不鏽鋼螺絲", "個");
+        warehouseService.createItem("螺絲起子", "支");
+        warehouseService.createItem("木螺絲釘", "個");
+        Item plate = warehouseService.createItem("不鏽鋼板", "片");
+
+        // 開頭相符優先，其次依名稱長度
+        List<Item> items = warehouseService.searchItemsByName("螺絲", null).getItems();
+        assertEquals(List.of("螺絲起子", "木螺絲釘", "不鏽鋼螺絲"), items.stream().map(Item::getName).toList());
+
+        // 完全相同者排第一；部分相符的「不鏽鋼板」排在後面
+        items = warehouseService.searchItemsByName("不鏽鋼螺絲", null).getItems();
+        assertEquals("不鏽鋼螺絲", items.get(0).getName());
+        assertTrue(items.stream().anyMatch(item -> item.getName().equals("不鏽鋼板")));
+
+        CursorPage<Item> limited = warehouseService.searchItemsByName("螺絲", 2);
+        assertEquals(2, limited.getItems().size());
+        assertTrue(limited.isHasMore());
+
+        // 商品異動即時反映於索引
+        warehouseService.updateItem(plate.getId(), "鋁板", "片");
+        assertTrue(warehouseService.searchItemsByName("不鏽鋼板", null).getItems().stream()
+                .noneMatch(item -> item.getId().equals(plate.getId())));
+        assertEquals(plate.getId(), warehouseService.searchItemsByName("鋁板", null).getItems().get(0).getId());
+        warehouseService.deleteItem(plate.getId());
+        assertTrue(warehouseService.searchItemsByName("鋁板", null).getItems().isEmpty());
+
+        System.out.println("[DEBUG_LOG] 商品搜尋排序測試通過");
+    }
+    
+    @Test
+    void testSuggestItemsServesCurrentIndexWhileRebuilding() {
+        Item nut = warehouseService.createItem("六角螺帽", "個");
+        Item wrench = warehouseService.createItem("六角扳手", "支");
+        
+        // 索引失效後自動完成仍立即回傳目前索引；若同步重建，獨立事務看不到本測試未提交的商品
+        itemSearchIndex.invalidate();
+        List<Long> suggestedIds = warehouseService.suggestItems("六角", null).stream()
+                .map(ItemSearchIndex.Suggestion::itemId)
+                .filter(id -> id.equals(nut.getId()) || id.equals(wrench.getId()))
+                .toList();
+        assertEquals(List.of(wrench.getId(), nut.getId()), suggestedIds);
+        
+        System.out.println("[DEBUG_LOG] 自動完成於索引重建期間沿用目前索引測試通過");
+    }
     //endregion
     
     //region 庫存操作測試
@@ -154,13 +253,26 @@ class WarehouseManagementServiceTest {
         assertEquals(0, quantity.compareTo(stock.get().getQuantity()));
         
         // 檢查異動記錄
-        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId());
+        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId(), PageCursor.FIRST, null).getItems();
         assertEquals(1, movements.size());
         assertEquals(MovementType.INBOUND, movements.get(0).getType());
         
         System.out.println("[DEBUG_LOG] 入庫測試通過，庫存: " + stock.get().getQuantity());
     }
     
+    @Test
+    void testInboundUpsertAccumulates() {
+        warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(40), "首次入庫");
+        warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(60), "再次入庫");
+
+        // 同一商品同一儲位只應存在一筆庫存記錄
+        List<Stock> stocks = warehouseService.getStocksByItem(testItem.getId(), PageCursor.FIRST, null).getItems();
+        assertEquals(1, stocks.size());
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(stocks.get(0).getQuantity()));
+
+        System.out.println("[DEBUG_LOG] 入庫 upsert 累加測試通過");
+    }
+
     @Test
     void testOutbound() {
         // 先入庫
@@ -177,7 +289,7 @@ class WarehouseManagementServiceTest {
         assertEquals(0, BigDecimal.valueOf(70).compareTo(stock.get().getQuantity()));
         
         // 檢查異動記錄
-        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId());
+        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId(), PageCursor.FIRST, null).getItems();
         assertEquals(2, movements.size());
         
         System.out.println("[DEBUG_LOG] 出庫測試通過，剩餘庫存: " + stock.get().getQuantity());
@@ -195,7 +307,28 @@ class WarehouseManagementServiceTest {
         
         System.out.println("[DEBUG_LOG] 庫存不足出庫測試通過");
     }
-    
+
+    @Test
+    void testOutboundGuardedDecrement() {
+        warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(10), "測試入庫");
+
+        // 剛好扣至零應成功
+        warehouseService.outbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(10), "測試出庫");
+
+        Optional<Stock> stock = warehouseService.getStock(testItem.getId(), TEST_LOCATION_A);
+        assertTrue(stock.isPresent());
+        assertEquals(0, BigDecimal.ZERO.compareTo(stock.get().getQuantity()));
+
+        // 條件式扣減不應使庫存成為負數
+        assertEquals(0, stockRepository.decreaseQuantityIfSufficient(
+                testItem.getId(), stock.get().getStorageLocationId(), BigDecimal.ONE));
+        assertThrows(IllegalStateException.class, () -> {
+            warehouseService.outbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.ONE, "測試出庫");
+        });
+
+        System.out.println("[DEBUG_LOG] 條件式扣減出庫測試通過");
+    }
+
     @Test
     void testTransfer() {
         // 先在位置A入庫
@@ -217,7 +350,7 @@ class WarehouseManagementServiceTest {
         assertEquals(0, transferQty.compareTo(stockB.get().getQuantity()));
         
         // 檢查異動記錄（應該有3筆：1筆入庫，2筆轉庫）
-        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId());
+        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId(), PageCursor.FIRST, null).getItems();
         assertEquals(3, movements.size());
         
         System.out.println("[DEBUG_LOG] 轉庫測試通過，位置A庫存: " + stockA.get().getQuantity() + 
@@ -320,7 +453,7 @@ class WarehouseManagementServiceTest {
         warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(100), "測試入庫A");
         warehouseService.inbound(testItem.getId(), TEST_LOCATION_B, BigDecimal.valueOf(50), "測試入庫B");
         
-        List<Stock> stocks = warehouseService.getStocksByItem(testItem.getId());
+        List<Stock> stocks = warehouseService.getStocksByItem(testItem.getId(), PageCursor.FIRST, null).getItems();
         assertEquals(2, stocks.size());
         
         System.out.println("[DEBUG_LOG] 商品庫存查詢測試通過，庫存記錄數: " + stocks.size());
@@ -333,11 +466,128 @@ class WarehouseManagementServiceTest {
         warehouseService.outbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(20), "測試出庫");
         warehouseService.transfer(testItem.getId(), TEST_LOCATION_A, TEST_LOCATION_B, BigDecimal.valueOf(30), "測試轉庫");
         
-        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId());
+        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId(), PageCursor.FIRST, null).getItems();
         assertEquals(4, movements.size()); // 1入庫 + 1出庫 + 2轉庫
         
         System.out.println("[DEBUG_LOG] 庫存異動記錄查詢測試通過，異動記錄數: " + movements.size());
     }
+    
+    @Test
+    void testExportStockMovements() throws Exception {
+        warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(100), "測試入庫");
+        warehouseService.transfer(testItem.getId(), TEST_LOCATION_A, TEST_LOCATION_B, BigDecimal.valueOf(30), "測試轉庫");
+        LocalDateTime to = LocalDateTime.now().plusMinutes(1);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, exportService.export(exportService.criteria(testItem.getId(), null, null, to), out));
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("\"itemId\":" + testItem.getId()));
+        
+        // 商品 + 位置：只有轉入 WH_B 的一筆
+        Criteria criteria = exportService.criteria(testItem.getId(), TEST_LOCATION_B, null, to);
+        assertEquals(1, exportService.export(criteria, new ByteArrayOutputStream()));
+        
+        assertThrows(IllegalArgumentException.class, () -> exportService.criteria(null, null, to, to));
+        
+        System.out.println("[DEBUG_LOG] 庫存異動記錄匯出測試通過");
+    }
+    
+    @Test
+    void testMovementTotalsFromDailyRollups() {
+        warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(100), "測試入庫");
+        warehouseService.transfer(testItem.getId(), TEST_LOCATION_A, TEST_LOCATION_B, BigDecimal.valueOf(30), "測試轉庫");
+        warehouseService.outbound(testItem.getId(), TEST_LOCATION_B, BigDecimal.valueOf(10), "測試出庫");
+        
+        // 將上述異動移至昨天，彙總至今天之前
+        entityManager.createNativeQuery("UPDATE stock_movements SET created_at = :day WHERE item_id = :itemId")
+                .setParameter("day", LocalDate.now().minusDays(1).atTime(12, 0))
+                .setParameter("itemId", testItem.getId())
+                .executeUpdate();
+        entityManager.clear();
+        rollupService.rollUpBefore(LocalDate.now());
+        assertEquals(LocalDate.now(), rollupService.rolledUpUntil());
+        assertEquals(LocalDate.now().minusDays(2), rollupService.finalizedUntil());
+        
+        // 彙總後才提交的昨日異動：再次執行時重新彙總水位前 2 天
+        warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(20), "遲到入庫");
+        entityManager.createNativeQuery("UPDATE stock_movements SET created_at = :day WHERE item_id = :itemId AND note = :note")
+                .setParameter("day", LocalDate.now().minusDays(1).atTime(23, 59))
+                .setParameter("itemId", testItem.getId())
+                .setParameter("note", "遲到入庫")
+                .executeUpdate();
+        entityManager.clear();
+        assertEquals(2, rollupService.rollUpBefore(LocalDate.now()));
+        
+        // 每個 (日期, 倉庫, 儲位, 類型) 一筆：WH_A 入/出、WH_B 入/出，重新彙總不重複寫入
+        List<StockMovementDailyRollup> rollups = rollupRepository.findByItemIdOrderByMovementDate(testItem.getId());
+        assertEquals(4, rollups.size());
+        
+        // 今天的異動屬於尚未彙總的尾端
+        warehouseService.inbound(testItem.getId(), TEST_LOCATION_A, BigDecimal.valueOf(5), "今日入庫");
+        
+        MovementTotalsDto totals = rollupService.getMovementTotals(testItem.getId(), TEST_LOCATION_A);
+        assertEquals(0, BigDecimal.valueOf(155).compareTo(totals.getInbound()));
+        assertEquals(0, BigDecimal.valueOf(40).compareTo(totals.getOutbound()));
+        assertEquals(0, BigDecimal.valueOf(95).compareTo(totals.getLocationNet()));
+        assertEquals(LocalDate.now(), totals.getRolledUpUntil());
+        
+        assertThrows(IllegalArgumentException.class, () -> rollupService.rollUpBefore(LocalDate.now().plusDays(1)));
+        
+        System.out.println("[DEBUG_LOG] 庫存異動每日彙總合計測試通過");
+    }
+    //endregion
+    
+    //region 批次操作測試
+    
+    @Test
+    void testBatchOperationPerLine() {
+        List<StockOperationLineDto> lines = List.of(
+            new StockOperationLineDto("inbound", testItem.getId(), TEST_LOCATION_A, null, null, BigDecimal.valueOf(100), "批次入庫"),
+            new StockOperationLineDto("outbound", testItem.getId(), TEST_LOCATION_A, null, null, BigDecimal.valueOf(30), "批次出庫"),
+            new StockOperationLineDto("outbound", testItem.getId(), TEST_LOCATION_B, null, null, BigDecimal.valueOf(10), "庫存不足"),
+            new StockOperationLineDto("transfer", testItem.getId(), null, TEST_LOCATION_A, TEST_LOCATION_B, BigDecimal.valueOf(20), "批次轉庫"),
+            new StockOperationLineDto("unknown", testItem.getId(), TEST_LOCATION_A, null, null, BigDecimal.valueOf(1), null)
+        );
+        
+        BatchOperationResult result = warehouseService.batchOperation(lines, WarehouseManagementService.BatchMode.PER_LINE);
+        
+        assertEquals(5, result.getTotal());
+        assertEquals(3, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+        assertFalse(result.getLines().get(2).isSuccess());
+        assertEquals(ErrorCode.INSUFFICIENT_STOCK, result.getLines().get(2).getErrorCode());
+        assertEquals(ErrorCode.UNSUPPORTED_ACTION, result.getLines().get(4).getErrorCode());
+        
+        Optional<Stock> stockA = warehouseService.getStock(testItem.getId(), TEST_LOCATION_A);
+        Optional<Stock> stockB = warehouseService.getStock(testItem.getId(), TEST_LOCATION_B);
+        assertTrue(stockA.isPresent());
+        assertTrue(stockB.isPresent());
+        assertEquals(0, BigDecimal.valueOf(50).compareTo(stockA.get().getQuantity()));
+        assertEquals(0, BigDecimal.valueOf(20).compareTo(stockB.get().getQuantity()));
+        
+        List<StockMovement> movements = warehouseService.getStockMovements(testItem.getId(), PageCursor.FIRST, null).getItems();
+        assertEquals(4, movements.size());
+        
+        System.out.println("[DEBUG_LOG] 批次逐行模式測試通過: " + result);
+    }
+    
+    @Test
+    void testBatchOperationAllOrNothing() {
+        List<StockOperationLineDto> lines = List.of(
+            new StockOperationLineDto("inbound", testItem.getId(), TEST_LOCATION_A, null, null, BigDecimal.valueOf(50), "批次入庫"),
+            new StockOperationLineDto("outbound", testItem.getId(), TEST_LOCATION_B, null, null, BigDecimal.valueOf(10), "庫存不足")
+        );
+        
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+            warehouseService.batchOperation(lines, WarehouseManagementService.BatchMode.ALL_OR_NOTHING);
+        });
+        
+        assertTrue(e.getMessage().contains("第 2 行"));
+        assertTrue(warehouseService.getStock(testItem.getId(), TEST_LOCATION_A).isEmpty());
+        
+        System.out.println("[DEBUG_LOG] 批次整批模式測試通過: " + e.getMessage());
+    }
     //endregion
     
     //region 邊界條件測試